@@ -97,6 +97,14 @@ public interface SimlifeDefaults {
             int expiration = 300; // 5 minutes
             boolean useBinaryProtocol = true;
         }
+
+        interface TokenCache {
+
+            boolean enabled = false;
+            int timeToLiveSeconds = 60; // 1 minute
+            int maxEntries = 10000;
+            String cacheName = "tokens";
+        }
     }
 
     interface Mail {
@@ -207,6 +207,8 @@ public class SimlifeProperties {
 
         private final Memcached memcached = new Memcached();
 
+        private final TokenCache tokenCache = new TokenCache();
+
         public Hazelcast getHazelcast() {
             return hazelcast;
         }
@@ -223,6 +225,10 @@ public class SimlifeProperties {
             return memcached;
         }
 
+        public TokenCache getTokenCache() {
+            return tokenCache;
+        }
+
         public static class Hazelcast {
 
             private int timeToLiveSeconds = SimlifeDefaults.Cache.Hazelcast.timeToLiveSeconds;
@@ -476,6 +482,56 @@ public class SimlifeProperties {
                 this.useBinaryProtocol = useBinaryProtocol;
             }
         }
+
+        public static class TokenCache {
+
+            private boolean enabled = SimlifeDefaults.Cache.TokenCache.enabled;
+
+            /**
+             * Time to live of the tokens in the local cache of each node, which bounds how long a node may use a
+             * token updated or removed by another one.
+             */
+            private int timeToLiveSeconds = SimlifeDefaults.Cache.TokenCache.timeToLiveSeconds;
+
+            private int maxEntries = SimlifeDefaults.Cache.TokenCache.maxEntries;
+
+            /**
+             * Name of the distributed JCache cache, which must be configured in the cache manager.
+             */
+            private String cacheName = SimlifeDefaults.Cache.TokenCache.cacheName;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public int getMaxEntries() {
+                return maxEntries;
+            }
+
+            public void setMaxEntries(int maxEntries) {
+                this.maxEntries = maxEntries;
+            }
+
+            public String getCacheName() {
+                return cacheName;
+            }
+
+            public void setCacheName(String cacheName) {
+                this.cacheName = cacheName;
+            }
+        }
     }
 
     public static class Mail {
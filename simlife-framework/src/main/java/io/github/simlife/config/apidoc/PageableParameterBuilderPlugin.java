@@ -21,6 +21,7 @@ package io.github.simlife.config.apidoc;
 
 import com.fasterxml.classmate.ResolvedType;
 import com.fasterxml.classmate.TypeResolver;
+import io.github.simlife.service.KeysetCursor;
 import org.springframework.data.domain.Pageable;
 import springfox.documentation.builders.ParameterBuilder;
 import springfox.documentation.schema.ModelReference;
@@ -41,7 +42,8 @@ import static springfox.documentation.schema.ResolvedTypes.modelRefFactory;
 import static springfox.documentation.spi.schema.contexts.ModelContext.inputParam;
 
 /**
- * The Springfox Plugin to resolve {@link Pageable} parameter into plain fields.
+ * The Springfox Plugin to resolve {@link Pageable} parameter into plain fields, and to document
+ * {@link KeysetCursor} parameters as plain opaque strings.
  */
 public class PageableParameterBuilderPlugin implements OperationBuilderPlugin {
 
@@ -59,14 +61,21 @@ public class PageableParameterBuilderPlugin implements OperationBuilderPlugin {
         + "Default sort order is ascending. "
         + "Multiple sort criteria are supported.";
 
+    public static final String DEFAULT_CURSOR_NAME = "cursor";
+    public static final String CURSOR_TYPE = "query";
+    public static final String CURSOR_DESCRIPTION = "Opaque cursor returned with the previous slice. "
+        + "Omit it to fetch the first slice.";
+
     private final TypeNameExtractor nameExtractor;
     private final TypeResolver resolver;
     private final ResolvedType pageableType;
+    private final ResolvedType cursorType;
 
     public PageableParameterBuilderPlugin(TypeNameExtractor nameExtractor, TypeResolver resolver) {
         this.nameExtractor = nameExtractor;
         this.resolver = resolver;
         this.pageableType = resolver.resolve(Pageable.class);
+        this.cursorType = resolver.resolve(KeysetCursor.class);
     }
 
     @Override
@@ -91,6 +100,16 @@ public class PageableParameterBuilderPlugin implements OperationBuilderPlugin {
                 parameters.add(createSizeParameter(parameterContext));
                 parameters.add(createSortParameter(parameterContext));
 
+                context.operationBuilder().parameters(parameters);
+            } else if (cursorType.equals(resolvedType)) {
+                ParameterContext parameterContext = new ParameterContext(methodParameter,
+                    new ParameterBuilder(),
+                    context.getDocumentationContext(),
+                    context.getGenericsNamingStrategy(),
+                    context);
+
+                parameters.add(createCursorParameter(parameterContext));
+
                 context.operationBuilder().parameters(parameters);
             }
         }
@@ -126,6 +145,15 @@ public class PageableParameterBuilderPlugin implements OperationBuilderPlugin {
         return DEFAULT_SORT_NAME;
     }
 
+    /**
+     * Cursor name may be varied, it should match the name of the request parameter bound to the {@link KeysetCursor}.
+     *
+     * @return The cursor parameter name
+     */
+    protected String getCursorName() {
+        return DEFAULT_CURSOR_NAME;
+    }
+
     /**
      * Create a page parameter.
      * Override it if needed. Set a default value for example.
@@ -178,6 +206,24 @@ public class PageableParameterBuilderPlugin implements OperationBuilderPlugin {
             .build();
     }
 
+    /**
+     * Create a cursor parameter.
+     * Override it if needed. Set a further description for example.
+     *
+     * @param context {@link KeysetCursor} parameter context
+     * @return The cursor parameter
+     */
+    protected Parameter createCursorParameter(ParameterContext context) {
+        ModelReference stringModel = createModelRefFactory(context).apply(resolver.resolve(String.class));
+        return new ParameterBuilder()
+            .name(getCursorName())
+            .parameterType(CURSOR_TYPE)
+            .modelRef(stringModel)
+            .required(false)
+            .description(CURSOR_DESCRIPTION)
+            .build();
+    }
+
     protected Function<ResolvedType, ? extends ModelReference> createModelRefFactory(ParameterContext context) {
         ModelContext modelContext = inputParam(
             context.getGroupName(),
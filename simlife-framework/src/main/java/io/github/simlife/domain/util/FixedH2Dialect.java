@@ -22,11 +22,15 @@ package io.github.simlife.domain.util;
 import java.sql.Types;
 
 import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
 
 public class FixedH2Dialect extends H2Dialect {
 
     public FixedH2Dialect() {
         super();
         registerColumnType(Types.FLOAT, "real");
+        registerFunction(FixedPostgreSQL82Dialect.ILIKE_FUNCTION,
+            new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(?1 ilike ?2)"));
     }
 }
@@ -22,14 +22,42 @@ package io.github.simlife.domain.util;
 import java.sql.Types;
 
 import org.hibernate.dialect.PostgreSQL82Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
 import org.hibernate.type.descriptor.sql.BinaryTypeDescriptor;
 import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
 
 public class FixedPostgreSQL82Dialect extends PostgreSQL82Dialect {
 
+    /**
+     * Prefix of the functions matching a column against a single array parameter, bound as an array literal like
+     * <code>{1,2,3}</code>: <code>simlife_any_bigint(col, ?)</code> renders <code>col = any(cast(? as bigint[]))</code>.
+     * Unlike an <code>IN</code> list, the statement is the same whatever the number of values.
+     */
+    public static final String ARRAY_ANY_FUNCTION_PREFIX = "simlife_any_";
+
+    /**
+     * Case insensitive <code>like</code>: <code>simlife_ilike(col, ?)</code> renders <code>col ilike ?</code>.
+     */
+    public static final String ILIKE_FUNCTION = "simlife_ilike";
+
+    /**
+     * Trigram similarity of the <code>pg_trgm</code> extension: <code>simlife_similar(col, ?)</code> renders
+     * <code>col % ?</code>.
+     */
+    public static final String SIMILAR_FUNCTION = "simlife_similar";
+
+    static final String[] ARRAY_ANY_TYPES = {"bigint", "int", "smallint", "numeric", "text", "uuid"};
+
     public FixedPostgreSQL82Dialect() {
         super();
         registerColumnType(Types.BLOB, "bytea");
+        for (String type : ARRAY_ANY_TYPES) {
+            registerFunction(ARRAY_ANY_FUNCTION_PREFIX + type,
+                new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(?1 = any(cast(?2 as " + type + "[])))"));
+        }
+        registerFunction(ILIKE_FUNCTION, new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(?1 ilike ?2)"));
+        registerFunction(SIMILAR_FUNCTION, new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(?1 % ?2)"));
     }
 
     @Override
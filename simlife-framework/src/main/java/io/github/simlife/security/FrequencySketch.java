@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch estimating how often the keys of a cache are used, with 4-bit counters (up to 15) and 4 hash
+ * functions, in about 8 bytes per cached entry. The counters are halved after every sample of 10 times the maximum
+ * size of the cache, so the estimates follow the recent popularity of the keys. It is updated without locking, with
+ * compare-and-set, and the estimates may be slightly stale while the counters are halved.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final int MAX_COUNT = 15;
+
+    private final AtomicLongArray table;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * @param maximumSize the maximum number of entries of the cache.
+     */
+    FrequencySketch(int maximumSize) {
+        int length = maximumSize >= 1 << 30 ? 1 << 30 : Math.max(Integer.highestOneBit(maximumSize - 1) << 1, 8);
+        this.table = new AtomicLongArray(length);
+        this.mask = length - 1;
+        this.sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param key the key.
+     * @return the estimated number of recent uses of the key, from 0 to 15.
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            long seeded = seeded(hash, depth);
+            frequency = Math.min(frequency, (int) (table.get(indexOf(seeded)) >>> shiftOf(seeded)) & MAX_COUNT);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record a use of a key, and halve all the counters at the end of a sample.
+     *
+     * @param key the key.
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            long seeded = seeded(hash, depth);
+            added |= incrementAt(indexOf(seeded), shiftOf(seeded));
+        }
+        if (added && additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int shift) {
+        while (true) {
+            long word = table.get(index);
+            if (((word >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                return false;
+            } else if (table.compareAndSet(index, word, word + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    private void reset() {
+        for (int index = 0; index < table.length(); index++) {
+            long word;
+            do {
+                word = table.get(index);
+            } while (!table.compareAndSet(index, word, (word >>> 1) & RESET_MASK));
+        }
+        additions.addAndGet(-sampleSize / 2);
+    }
+
+    private long seeded(int hash, int depth) {
+        long seeded = (hash + SEEDS[depth]) * SEEDS[depth];
+        return seeded + (seeded >>> 32);
+    }
+
+    private int indexOf(long seeded) {
+        return (int) seeded & mask;
+    }
+
+    /**
+     * Select one of the 16 counters of the word.
+     */
+    private int shiftOf(long seeded) {
+        return ((int) (seeded >>> 40) & 15) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -19,20 +19,111 @@
 
 package io.github.simlife.security;
 
-import java.util.*;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 
 /**
  * Simple time-limited cache for login tokens, necessary to avoid concurrent
- * requests invalidating one another. It uses a {@link java.util.LinkedHashMap}
- * to keep the tokens in order of expiration. During access any entries which
- * have expired are automatically purged.
+ * requests invalidating one another. It is thread-safe without locking: the
+ * tokens are kept in a {@link ConcurrentHashMap}, and the expired entries are
+ * purged by a background sweeper rather than on the request path. A single
+ * daemon sweeper thread is shared by all the caches, which stop being swept when
+ * they are destroyed, or garbage collected.
+ * <p>
+ * The cache can be bounded to a maximum number of tokens. The new tokens are
+ * always admitted in a small window, of 1% of the maximum size; when they leave
+ * it, they are only kept if they were used more often recently than the oldest
+ * token of the cache, which is evicted instead (a W-TinyLFU policy, with the
+ * frequencies estimated by a {@link FrequencySketch}). This keeps the tokens in
+ * use from being flushed by a burst of new ones. {@link #put} only queues the
+ * new tokens in a buffer, which is drained into the eviction policy by whichever
+ * thread gets its lock, so concurrent writers do not wait for each other, and
+ * {@link #get} stays lock-free. The cache may exceed its maximum size by the
+ * tokens of the puts in progress, until the buffer is drained.
+ * <p>
+ * The missing tokens can be loaded with {@link #get(String, Function)}, which
+ * runs the loader at most once per key at a time, the concurrent callers for the
+ * same key waiting for its result. With {@link #setRefreshAhead}, the tokens used
+ * shortly before they expire are reloaded in the background, so the tokens in use
+ * never expire.
+ * <p>
+ * The hits, misses, loads, evictions and expirations are counted, to size the
+ * cache from production data, see {@link PersistentTokenCacheCollector}.
  */
-public class PersistentTokenCache<T> {
+public class PersistentTokenCache<T> implements DisposableBean {
+
+    private static final long MIN_SWEEP_INTERVAL_MILLIS = 1_000L;
+
+    private static final long MAX_SWEEP_INTERVAL_MILLIS = 60_000L;
 
     private final long expireMillis;
 
+    private final int maximumSize;
+
     private final Map<String, Value> map;
-    private long latestWriteTime;
+
+    private final FrequencySketch sketch;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * The inserted tokens not yet added to the window.
+     */
+    private final Queue<Value> writeBuffer = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The recently inserted tokens, oldest first, guarded by the eviction lock.
+     */
+    private final ArrayDeque<Value> window = new ArrayDeque<>();
+
+    /**
+     * The tokens admitted from the window, oldest first, guarded by the eviction lock.
+     */
+    private final ArrayDeque<Value> main = new ArrayDeque<>();
+
+    private final int windowSize;
+
+    /**
+     * The loads in progress, so there is at most one per key.
+     */
+    private final Map<String, CompletableFuture<T>> loading = new ConcurrentHashMap<>();
+
+    private volatile long refreshAheadMillis;
+
+    private volatile Executor refreshExecutor;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder loadFailures = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final ScheduledFuture<?> sweeper;
 
     /**
      * Construct a new TokenCache.
@@ -41,13 +132,33 @@ public class PersistentTokenCache<T> {
      * @throws IllegalArgumentException if expireMillis is non-positive.
      */
     public PersistentTokenCache(long expireMillis) {
-        if (expireMillis <= 0l) {
+        this(expireMillis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Construct a new TokenCache holding at most the given number of tokens.
+     *
+     * @param expireMillis Delay until tokens expire, in millis.
+     * @param maximumSize  Maximum number of tokens, or {@link Integer#MAX_VALUE} for no limit.
+     * @throws IllegalArgumentException if expireMillis or maximumSize is non-positive.
+     */
+    public PersistentTokenCache(long expireMillis, int maximumSize) {
+        if (expireMillis <= 0l || maximumSize <= 0) {
             throw new IllegalArgumentException();
         }
         this.expireMillis = expireMillis;
+        this.maximumSize = maximumSize;
 
-        map = new LinkedHashMap<>(64, 0.75f);
-        latestWriteTime = System.currentTimeMillis();
+        map = new ConcurrentHashMap<>(64, 0.75f);
+        if (isBounded()) {
+            sketch = new FrequencySketch(maximumSize);
+            windowSize = Math.max(1, maximumSize / 100);
+        } else {
+            sketch = null;
+            windowSize = 0;
+        }
+        sweeper = Sweeper.schedule(this,
+            Math.min(Math.max(expireMillis, MIN_SWEEP_INTERVAL_MILLIS), MAX_SWEEP_INTERVAL_MILLIS));
     }
 
     /**
@@ -57,10 +168,132 @@ public class PersistentTokenCache<T> {
      * @return The token, if present and not yet expired, or null otherwise.
      */
     public T get(String key) {
-        purge();
+        final Value val = getValue(key);
+        return val != null ? val.token : null;
+    }
+
+    /**
+     * Get a token from the cache, or load it if it is absent or expired. The
+     * loader runs at most once per key at a time: the concurrent callers for the
+     * same key wait for the token it returns, or the exception it throws. A null
+     * token is returned as is, but not cached. If the token is within the
+     * {@link #setRefreshAhead refresh-ahead} window, it is returned, and reloaded
+     * in the background.
+     * <p>
+     * The loader must not access the same key of this cache.
+     *
+     * @param key    The key to look for.
+     * @param loader The function loading the token of a key.
+     * @return The token, or null if the loader returned null.
+     */
+    public T get(String key, Function<String, ? extends T> loader) {
+        Value val = getValue(key);
+        if (val != null) {
+            Executor executor = refreshExecutor;
+            if (executor != null && System.currentTimeMillis() >= val.expire - refreshAheadMillis) {
+                refresh(key, loader, val, executor);
+            }
+            return val.token;
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> inProgress = loading.putIfAbsent(key, future);
+        if (inProgress != null) {
+            return await(inProgress);
+        }
+        // Another caller may have loaded the token in the meantime
+        val = map.get(key);
+        if (val != null && System.currentTimeMillis() < val.expire) {
+            loading.remove(key, future);
+            future.complete(val.token);
+            return val.token;
+        }
+        load(key, loader, future, val);
+        return await(future);
+    }
+
+    /**
+     * Reload the tokens used shortly before they expire, in the background.
+     *
+     * @param refreshAheadMillis Delay before the expiration of the tokens during
+     *                           which they are reloaded, in millis, or 0 to disable
+     *                           the refresh.
+     * @param executor           The executor running the loads, may be null if
+     *                           the refresh is disabled.
+     * @throws IllegalArgumentException if refreshAheadMillis is negative or not
+     *                                  less than the expiration delay, or if the
+     *                                  executor is missing.
+     */
+    public void setRefreshAhead(long refreshAheadMillis, Executor executor) {
+        if (refreshAheadMillis < 0l || refreshAheadMillis >= expireMillis
+            || refreshAheadMillis > 0l && executor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.refreshAheadMillis = refreshAheadMillis;
+        this.refreshExecutor = refreshAheadMillis > 0l ? executor : null;
+    }
+
+    private Value getValue(String key) {
+        if (sketch != null) {
+            sketch.increment(key);
+        }
         final Value val = map.get(key);
-        final long time = System.currentTimeMillis();
-        return val != null && time < val.expire ? val.token : null;
+        if (val != null && System.currentTimeMillis() < val.expire) {
+            hits.increment();
+            return val;
+        }
+        misses.increment();
+        return null;
+    }
+
+    private void refresh(String key, Function<String, ? extends T> loader, Value previous, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> load(key, loader, future, previous));
+        } catch (RejectedExecutionException e) {
+            // The current token is still valid, it will be loaded again once expired
+            loading.remove(key, future);
+            future.complete(previous.token);
+        }
+    }
+
+    /**
+     * Run the loader, cache the token, and complete the future of the load.
+     *
+     * @param previous The token replaced, removed if the loader returns null.
+     */
+    private void load(String key, Function<String, ? extends T> loader, CompletableFuture<T> future,
+                      Value previous) {
+        loads.increment();
+        try {
+            T token = loader.apply(key);
+            if (token != null) {
+                put(key, token);
+            } else if (previous != null) {
+                remove(previous, null);
+            }
+            future.complete(token);
+        } catch (Throwable e) {
+            loadFailures.increment();
+            future.completeExceptionally(e);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -71,13 +304,136 @@ public class PersistentTokenCache<T> {
      * @param token The token to insert.
      */
     public void put(String key, T token) {
-        purge();
-        if (map.containsKey(key)) {
-            map.remove(key);
+        put(key, token, System.currentTimeMillis() + expireMillis);
+    }
+
+    /**
+     * Put a token in the cache, with a given expiration, like when restored from
+     * a {@link PersistentTokenCacheSnapshot}. The expiration is capped to the
+     * delay of this cache.
+     *
+     * @param key    The key to insert for.
+     * @param token  The token to insert.
+     * @param expire The expiration time of the token, in epoch millis.
+     */
+    void put(String key, T token, long expire) {
+        Value value = new Value(key, token, Math.min(expire, System.currentTimeMillis() + expireMillis));
+        map.put(key, value);
+        if (!isBounded()) {
+            return;
         }
-        final long time = System.currentTimeMillis();
-        map.put(key, new Value(token, time + expireMillis));
-        latestWriteTime = time;
+        sketch.increment(key);
+        writeBuffer.add(value);
+        drainWriteBuffer();
+    }
+
+    /**
+     * Add the buffered tokens to the window, and evict, unless another thread is
+     * already doing it. The buffer is checked again once the lock is released,
+     * so the tokens queued in the meantime are not left behind.
+     */
+    private void drainWriteBuffer() {
+        while (!writeBuffer.isEmpty() && evictionLock.tryLock()) {
+            try {
+                Value value;
+                while ((value = writeBuffer.poll()) != null) {
+                    window.addLast(value);
+                }
+                evict();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Visit the tokens which are not expired.
+     *
+     * @param visitor The visitor of the tokens.
+     */
+    void forEachLive(TokenVisitor<? super T> visitor) {
+        long time = System.currentTimeMillis();
+        for (Value value : map.values()) {
+            if (time < value.expire) {
+                visitor.visit(value.key, value.token, value.expire);
+            }
+        }
+    }
+
+    /**
+     * Remove a token from the cache, like when it is revoked.
+     *
+     * @param key The key to remove.
+     */
+    public void remove(String key) {
+        map.remove(key);
+    }
+
+    /**
+     * Move the tokens leaving the window to the main space, and evict the least
+     * frequently used of them and the oldest token of the main space while the
+     * cache is over its maximum size.
+     */
+    private void evict() {
+        while (window.size() > windowSize) {
+            Value candidate = window.pollFirst();
+            if (!isLive(candidate)) {
+                continue;
+            }
+            Value victim = map.size() > maximumSize ? pollLive(main) : null;
+            if (victim == null) {
+                main.addLast(candidate);
+            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                remove(victim, evictions);
+                main.addLast(candidate);
+            } else {
+                main.addFirst(victim);
+                remove(candidate, evictions);
+            }
+        }
+        // The window alone may exceed a small maximum size
+        while (map.size() > maximumSize) {
+            Value victim = pollLive(main);
+            if (victim == null) {
+                victim = pollLive(window);
+            }
+            if (victim == null) {
+                return;
+            }
+            remove(victim, evictions);
+        }
+    }
+
+    /**
+     * Poll the oldest token of a queue still in the cache, skipping the replaced
+     * ones, and removing the expired ones.
+     */
+    private Value pollLive(ArrayDeque<Value> queue) {
+        Value value;
+        while ((value = queue.pollFirst()) != null) {
+            if (!isLive(value)) {
+                continue;
+            } else if (System.currentTimeMillis() >= value.expire) {
+                remove(value, expirations);
+                continue;
+            }
+            return value;
+        }
+        return null;
+    }
+
+    private boolean isLive(Value value) {
+        return map.get(value.key) == value;
+    }
+
+    private void remove(Value value, LongAdder counter) {
+        if (map.remove(value.key, value) && counter != null) {
+            counter.increment();
+        }
+    }
+
+    private boolean isBounded() {
+        return maximumSize != Integer.MAX_VALUE;
     }
 
     /**
@@ -91,37 +447,174 @@ public class PersistentTokenCache<T> {
     }
 
     /**
-     * Remove expired entries from the map. This will be called automatically
-     * before read/write access, but could be manually invoked if desired.
+     * Remove expired entries from the map. This is called periodically by a
+     * background sweeper, but could be manually invoked if desired.
      */
     public void purge() {
         long time = System.currentTimeMillis();
-        if (time - latestWriteTime > expireMillis) {
-            // Everything in the map is expired, clear all at once
-            map.clear();
-        } else {
-            // Iterate and remove until the first non-expired token
-            Iterator<Value> values = map.values().iterator();
-            while (values.hasNext()) {
-                if (time >= values.next().expire) {
-                    values.remove();
-                } else {
-                    break;
-                }
+        for (Value value : map.values()) {
+            if (time >= value.expire) {
+                // Only removes the entries which are still mapped to the expired value
+                remove(value, expirations);
             }
         }
+        if (isBounded()) {
+            evictionLock.lock();
+            try {
+                removeStale(window);
+                removeStale(main);
+            } finally {
+                evictionLock.unlock();
+            }
+            drainWriteBuffer();
+        }
     }
 
+    /**
+     * Drop the replaced and removed tokens from a queue of the eviction policy.
+     */
+    private void removeStale(ArrayDeque<Value> queue) {
+        for (Iterator<Value> iterator = queue.iterator(); iterator.hasNext(); ) {
+            if (!isLive(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The maximum number of tokens, or {@link Integer#MAX_VALUE} if the cache is not bounded.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return The number of lookups which found a token.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups which found no token, or an expired one.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of tokens loaded by {@link #get(String, Function)}, including the failed loads.
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return The number of loads which threw an exception.
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * @return The number of tokens removed to stay under the maximum size.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The number of expired tokens removed.
+     */
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * Stop the background sweeper. The cache can still be used, but the expired
+     * tokens are only removed by {@link #purge()}.
+     */
+    @Override
+    public void destroy() {
+        sweeper.cancel(false);
+    }
+
+    /**
+     * Visitor of the tokens of a cache, with their expiration time in epoch millis.
+     */
+    @FunctionalInterface
+    interface TokenVisitor<T> {
+
+        void visit(String key, T token, long expire);
+    }
 
     private class Value {
 
+        private final String key;
         private final T token;
         private final long expire;
 
-        Value(T token, long expire) {
+        Value(String key, T token, long expire) {
+            this.key = key;
             this.token = token;
             this.expire = expire;
         }
     }
 
+    /**
+     * Purges a cache periodically on the sweeper thread shared by all the caches,
+     * until the cache is destroyed or garbage collected. The sweeper only keeps a
+     * weak reference to the cache, so a cache which is not destroyed is not kept
+     * alive by its scheduled purges.
+     */
+    private static final class Sweeper implements Runnable {
+
+        private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+
+        private final Logger log = LoggerFactory.getLogger(Sweeper.class);
+
+        private final WeakReference<PersistentTokenCache<?>> cache;
+
+        private final CompletableFuture<ScheduledFuture<?>> scheduled = new CompletableFuture<>();
+
+        private Sweeper(PersistentTokenCache<?> cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+
+        static ScheduledFuture<?> schedule(PersistentTokenCache<?> cache, long intervalMillis) {
+            Sweeper sweeper = new Sweeper(cache);
+            ScheduledFuture<?> future = EXECUTOR.scheduleWithFixedDelay(sweeper, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+            sweeper.scheduled.complete(future);
+            return future;
+        }
+
+        private static ScheduledThreadPoolExecutor createExecutor() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+                Thread thread = new Thread(task, "persistent-token-cache-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // The purges of the destroyed caches would otherwise stay queued until their next run
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+
+        @Override
+        public void run() {
+            PersistentTokenCache<?> target = cache.get();
+            if (target == null) {
+                // Completed before the first run, which is one interval later
+                scheduled.join().cancel(false);
+                return;
+            }
+            try {
+                target.purge();
+            } catch (RuntimeException e) {
+                // A failure would otherwise cancel the following purges silently
+                log.error("Could not purge the token cache", e);
+            }
+        }
+    }
+
 }
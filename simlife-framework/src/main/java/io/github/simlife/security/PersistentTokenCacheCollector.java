@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exports the statistics of {@link PersistentTokenCache}s to Prometheus, labeled with the name of the cache:
+ * <ul>
+ * <li><code>simlife_token_cache_hits_total</code>, <code>simlife_token_cache_misses_total</code>,</li>
+ * <li><code>simlife_token_cache_loads_total</code>, <code>simlife_token_cache_load_failures_total</code>,</li>
+ * <li><code>simlife_token_cache_evictions_total</code>, <code>simlife_token_cache_expirations_total</code>,</li>
+ * <li><code>simlife_token_cache_size</code> and <code>simlife_token_cache_maximum_size</code> (only for the bounded
+ * caches).</li>
+ * </ul>
+ * Usage:
+ * <pre>
+ *   new PersistentTokenCacheCollector()
+ *       .addCache("rememberMe", tokenCache)
+ *       .register();
+ * </pre>
+ */
+public class PersistentTokenCacheCollector extends Collector {
+
+    private static final List<String> LABEL_NAMES = Collections.singletonList("cache");
+
+    private final Map<String, PersistentTokenCache<?>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Add a cache to the exported ones.
+     *
+     * @param name  the name of the cache, used as label.
+     * @param cache the cache.
+     * @return this collector.
+     */
+    public PersistentTokenCacheCollector addCache(String name, PersistentTokenCache<?> cache) {
+        caches.put(name, cache);
+        return this;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        CounterMetricFamily hits = new CounterMetricFamily("simlife_token_cache_hits_total",
+            "Number of lookups which found a token", LABEL_NAMES);
+        CounterMetricFamily misses = new CounterMetricFamily("simlife_token_cache_misses_total",
+            "Number of lookups which found no token", LABEL_NAMES);
+        CounterMetricFamily loads = new CounterMetricFamily("simlife_token_cache_loads_total",
+            "Number of tokens loaded on a miss or refreshed", LABEL_NAMES);
+        CounterMetricFamily loadFailures = new CounterMetricFamily("simlife_token_cache_load_failures_total",
+            "Number of loads which threw an exception", LABEL_NAMES);
+        CounterMetricFamily evictions = new CounterMetricFamily("simlife_token_cache_evictions_total",
+            "Number of tokens evicted to stay under the maximum size", LABEL_NAMES);
+        CounterMetricFamily expirations = new CounterMetricFamily("simlife_token_cache_expirations_total",
+            "Number of expired tokens removed", LABEL_NAMES);
+        GaugeMetricFamily size = new GaugeMetricFamily("simlife_token_cache_size",
+            "Number of tokens in the cache, including the expired ones not yet removed", LABEL_NAMES);
+        GaugeMetricFamily maximumSize = new GaugeMetricFamily("simlife_token_cache_maximum_size",
+            "Maximum number of tokens in the cache", LABEL_NAMES);
+        caches.forEach((name, cache) -> {
+            List<String> labels = Collections.singletonList(name);
+            hits.addMetric(labels, cache.getHitCount());
+            misses.addMetric(labels, cache.getMissCount());
+            loads.addMetric(labels, cache.getLoadCount());
+            loadFailures.addMetric(labels, cache.getLoadFailureCount());
+            evictions.addMetric(labels, cache.getEvictionCount());
+            expirations.addMetric(labels, cache.getExpirationCount());
+            size.addMetric(labels, cache.size());
+            if (cache.getMaximumSize() != Integer.MAX_VALUE) {
+                maximumSize.addMetric(labels, cache.getMaximumSize());
+            }
+        });
+        return Arrays.asList(hits, misses, loads, loadFailures, evictions, expirations, size, maximumSize);
+    }
+}
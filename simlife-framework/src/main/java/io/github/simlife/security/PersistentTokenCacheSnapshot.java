@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Saves the tokens of a {@link PersistentTokenCache} to a file on shutdown, and restores them on startup, so a
+ * restarted node does not load all the tokens in use again from the database.
+ * <p>
+ * The file is a compact binary snapshot written through a memory-mapped {@link FileChannel}: a header (magic number,
+ * version, number of entries), then for each token its expiration time, its key and its serialized form. Only the
+ * tokens which are not expired are saved, and the tokens expired while the node was down are skipped on startup. The
+ * snapshot is written to a temporary file, then moved atomically, and deleted once restored, so a node crashing later
+ * does not restore an outdated snapshot. A snapshot which is corrupted or from another version is ignored and deleted,
+ * and so is a token which cannot be deserialized.
+ * <p>
+ * The tokens are saved as returned by the serializer, so anyone who can read the snapshot can use them until they
+ * expire. On a POSIX file system the snapshot is only readable and writable by its owner; elsewhere it relies on the
+ * permissions of its directory. Keep it on a local disk which is not shared or backed up, and encrypt the tokens in
+ * the serializer if that is not enough.
+ * <p>
+ * As a bean, it restores the cache when initialized, and saves it when destroyed:
+ * <pre>
+ *   &#64;Bean
+ *   public PersistentTokenCacheSnapshot&lt;String&gt; tokenCacheSnapshot(PersistentTokenCache&lt;String&gt; tokenCache) {
+ *       return new PersistentTokenCacheSnapshot&lt;&gt;(tokenCache, Paths.get("target/token-cache.bin"),
+ *           token -&gt; token.getBytes(StandardCharsets.UTF_8), bytes -&gt; new String(bytes, StandardCharsets.UTF_8));
+ *   }
+ * </pre>
+ *
+ * @param <T> the type of the tokens.
+ */
+public class PersistentTokenCacheSnapshot<T> implements InitializingBean, DisposableBean {
+
+    static final int MAGIC = 0x534c5443;
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY =
+        EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+
+    private final Logger log = LoggerFactory.getLogger(PersistentTokenCacheSnapshot.class);
+
+    private final PersistentTokenCache<T> cache;
+
+    private final Path file;
+
+    private final Function<? super T, byte[]> serializer;
+
+    private final Function<byte[], ? extends T> deserializer;
+
+    /**
+     * @param cache        the cache to save and restore.
+     * @param file         the snapshot file.
+     * @param serializer   the function serializing a token, which may return null for a token not to be saved.
+     * @param deserializer the function deserializing a token, which may return null for a token not to be restored.
+     */
+    public PersistentTokenCacheSnapshot(PersistentTokenCache<T> cache, Path file,
+                                        Function<? super T, byte[]> serializer,
+                                        Function<byte[], ? extends T> deserializer) {
+        this.cache = cache;
+        this.file = file;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+    }
+
+    /**
+     * Save the tokens of the cache which are not expired, replacing the previous snapshot.
+     *
+     * @return the number of tokens saved.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public int save() throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> tokens = new ArrayList<>();
+        List<Long> expires = new ArrayList<>();
+        long[] size = {HEADER_SIZE};
+        cache.forEachLive((key, token, expire) -> {
+            byte[] serialized = serializer.apply(token);
+            if (serialized != null) {
+                byte[] encodedKey = key.getBytes(StandardCharsets.UTF_8);
+                keys.add(encodedKey);
+                tokens.add(serialized);
+                expires.add(expire);
+                size[0] += 8 + 4 + encodedKey.length + 4 + serialized.length;
+            }
+        });
+        if (size[0] > Integer.MAX_VALUE) {
+            throw new IOException("The token cache snapshot is too large: " + size[0] + " bytes");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+        // Created again, so that a leftover temporary file does not keep wider permissions
+        Files.deleteIfExists(temporary);
+        FileAttribute<?>[] attributes = temporary.getFileSystem().supportedFileAttributeViews().contains("posix")
+            ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(OWNER_ONLY)} : new FileAttribute<?>[0];
+        try (FileChannel channel = FileChannel.open(temporary, EnumSet.of(StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE), attributes)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size[0]);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                buffer.putLong(expires.get(i));
+                buffer.putInt(keys.get(i).length).put(keys.get(i));
+                buffer.putInt(tokens.get(i).length).put(tokens.get(i));
+            }
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return keys.size();
+    }
+
+    /**
+     * Restore the tokens of the snapshot which are not expired in the cache, and delete the snapshot. An invalid
+     * snapshot is deleted without restoring anything, and a token which cannot be deserialized is skipped.
+     *
+     * @return the number of tokens restored, 0 if there is no snapshot or if it is invalid.
+     * @throws IOException if the snapshot could not be read.
+     */
+    public int load() throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>();
+        List<byte[]> tokens = new ArrayList<>();
+        List<Long> expires = new ArrayList<>();
+        String invalid;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                invalid = "it is not a token cache snapshot";
+            } else {
+                invalid = read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), keys, tokens, expires);
+            }
+        }
+        if (invalid != null) {
+            // Deleted, so that the same snapshot is not reported again on the next startup
+            log.warn("Deleting the token cache snapshot {}, as {}", file, invalid);
+            Files.delete(file);
+            return 0;
+        }
+
+        int restored = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            T token;
+            try {
+                token = deserializer.apply(tokens.get(i));
+            } catch (RuntimeException e) {
+                log.warn("Skipping the token {} of the token cache snapshot {}: {}", i, file, e.toString());
+                continue;
+            }
+            if (token != null) {
+                cache.put(keys.get(i), token, expires.get(i));
+                restored++;
+            }
+        }
+        Files.delete(file);
+        return restored;
+    }
+
+    /**
+     * Read the entries of a snapshot which are not expired.
+     *
+     * @return the reason why the snapshot is invalid, or null if it is valid.
+     */
+    private static String read(ByteBuffer buffer, List<String> keys, List<byte[]> tokens, List<Long> expires) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return "it is not a token cache snapshot of version " + VERSION;
+            }
+            int count = buffer.getInt();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                long expire = buffer.getLong();
+                byte[] key = getBytes(buffer);
+                byte[] token = getBytes(buffer);
+                if (expire > now) {
+                    keys.add(new String(key, StandardCharsets.UTF_8));
+                    tokens.add(token);
+                    expires.add(expire);
+                }
+            }
+            return null;
+        } catch (BufferUnderflowException e) {
+            keys.clear();
+            tokens.clear();
+            expires.clear();
+            return "it is truncated";
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            int restored = load();
+            if (restored > 0) {
+                log.info("Restored {} tokens from {}", restored, file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not restore the token cache snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            int saved = save();
+            log.info("Saved {} tokens to {}", saved, file);
+        } catch (IOException e) {
+            log.warn("Could not save the token cache snapshot {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.github.simlife.config.SimlifeProperties;
+
+/**
+ * Creates a {@link TwoTierTokenCache} when <code>simlife.cache.token-cache.enabled</code> is true, in front of the
+ * distributed cache named by <code>simlife.cache.token-cache.cache-name</code>, which must be configured in the
+ * JCache {@link CacheManager} of the application.
+ */
+@Configuration
+@ConditionalOnClass(CacheManager.class)
+@ConditionalOnProperty("simlife.cache.token-cache.enabled")
+public class TokenCacheAutoConfiguration {
+
+    private final SimlifeProperties simLifeProperties;
+
+    public TokenCacheAutoConfiguration(SimlifeProperties simLifeProperties) {
+        this.simLifeProperties = simLifeProperties;
+    }
+
+    @Bean
+    public <T> PersistentTokenCache<T> localTokenCache() {
+        SimlifeProperties.Cache.TokenCache tokenCache = simLifeProperties.getCache().getTokenCache();
+        return new PersistentTokenCache<>(TimeUnit.SECONDS.toMillis(tokenCache.getTimeToLiveSeconds()),
+            tokenCache.getMaxEntries());
+    }
+
+    @Bean
+    public <T> TwoTierTokenCache<T> tokenCache(PersistentTokenCache<T> localTokenCache, CacheManager cacheManager) {
+        String cacheName = simLifeProperties.getCache().getTokenCache().getCacheName();
+        Cache<String, T> distributed = cacheManager.getCache(cacheName);
+        if (distributed == null) {
+            throw new IllegalStateException("The token cache \"" + cacheName
+                + "\" is not configured in the JCache cache manager");
+        }
+        return new TwoTierTokenCache<>(localTokenCache, distributed);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import java.util.function.Function;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.configuration.Factory;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A token cache for multi-node deployments: a small {@link PersistentTokenCache} on each node, in front of a
+ * distributed JCache cache shared by the cluster, like the Hazelcast or Infinispan caches of the application.
+ * <p>
+ * A token loaded on one node is found by the others in the distributed cache, instead of being loaded again from the
+ * database, and a token created, updated or removed on one node, like when it is revoked, is evicted from the local
+ * cache of every node by an entry listener. The listener is asynchronous, so a write does not wait for every node of the
+ * cluster: the other nodes may use the previous token until they receive the event, and at worst until it expires
+ * from their local cache, whose expiration should therefore be short. As the listener is also notified of the changes
+ * made by its own node, possibly after they were put in the local cache, the distributed cache is always written
+ * first, and such a late event only causes the token to be reloaded from the distributed cache.
+ * <p>
+ * JCache fires no event when an entry is evicted from the distributed cache to stay under its size limit, so the
+ * local copies of an evicted token are not invalidated: if the token is then changed through another path, like
+ * loaded again after an update in the database, the nodes may use their local copy until it expires.
+ * <p>
+ * Like the Hibernate regions, the distributed cache is not created on the fly: it must be configured upfront, with
+ * an expiration, in the cache configuration of the application. If it is unavailable, the tokens are loaded with the
+ * loader, and only cached locally.
+ *
+ * @param <T> the type of the tokens, which must be serializable by the JCache provider.
+ */
+public class TwoTierTokenCache<T> {
+
+    private final Logger log = LoggerFactory.getLogger(TwoTierTokenCache.class);
+
+    private final PersistentTokenCache<T> local;
+
+    private final Cache<String, T> distributed;
+
+    /**
+     * @param local       the local cache of this node.
+     * @param distributed the distributed cache.
+     */
+    public TwoTierTokenCache(PersistentTokenCache<T> local, Cache<String, T> distributed) {
+        this.local = local;
+        this.distributed = distributed;
+        distributed.registerCacheEntryListener(new MutableCacheEntryListenerConfiguration<>(
+            new Invalidator<>(local), null, false, false));
+    }
+
+    /**
+     * Get a token from the local cache, or from the distributed cache.
+     *
+     * @param key the key to look for.
+     * @return the token, or null if it is in none of the caches.
+     */
+    public T get(String key) {
+        return local.get(key, this::getDistributed);
+    }
+
+    /**
+     * Get a token from the local cache, or from the distributed cache, or load it if it is in none of them. The
+     * loader runs at most once per key at a time on each node, and if several nodes load the same token concurrently,
+     * the first one put in the distributed cache wins.
+     *
+     * @param key    the key to look for.
+     * @param loader the function loading the token of a key.
+     * @return the token, or null if the loader returned null.
+     */
+    public T get(String key, Function<String, ? extends T> loader) {
+        return local.get(key, k -> {
+            T token = getDistributed(k);
+            if (token != null) {
+                return token;
+            }
+            token = loader.apply(k);
+            if (token == null) {
+                return null;
+            }
+            try {
+                if (!distributed.putIfAbsent(k, token)) {
+                    T winner = distributed.get(k);
+                    return winner != null ? winner : token;
+                }
+            } catch (CacheException e) {
+                log.warn("Could not cache the token in the distributed cache: {}", e.getMessage());
+            }
+            return token;
+        });
+    }
+
+    /**
+     * Put a token in the caches. If a token already exists for the given key, it is replaced, and evicted from the
+     * local caches of the other nodes.
+     *
+     * @param key   the key to insert for.
+     * @param token the token to insert.
+     */
+    public void put(String key, T token) {
+        distributed.put(key, token);
+        local.put(key, token);
+    }
+
+    /**
+     * Remove a token from the caches of all the nodes, like when it is revoked.
+     *
+     * @param key the key to remove.
+     */
+    public void remove(String key) {
+        distributed.remove(key);
+        local.remove(key);
+    }
+
+    /**
+     * @return the local cache of this node, to export its statistics.
+     */
+    public PersistentTokenCache<T> getLocalCache() {
+        return local;
+    }
+
+    private T getDistributed(String key) {
+        try {
+            return distributed.get(key);
+        } catch (CacheException e) {
+            log.warn("Could not read the token from the distributed cache: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Evicts the local copies of the tokens created, updated, removed or expired in the distributed cache. It is registered on
+     * this node only, so the local cache is not serialized.
+     */
+    private static final class Invalidator<T> implements Factory<CacheEntryListener<? super String, ? super T>>,
+        CacheEntryCreatedListener<String, T>, CacheEntryUpdatedListener<String, T>,
+        CacheEntryRemovedListener<String, T>, CacheEntryExpiredListener<String, T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient PersistentTokenCache<T> local;
+
+        private Invalidator(PersistentTokenCache<T> local) {
+            this.local = local;
+        }
+
+        @Override
+        public CacheEntryListener<? super String, ? super T> create() {
+            return this;
+        }
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends T>> events) {
+            invalidate(events);
+        }
+
+        @Override
+        public void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends T>> events) {
+            invalidate(events);
+        }
+
+        @Override
+        public void onRemoved(Iterable<CacheEntryEvent<? extends String, ? extends T>> events) {
+            invalidate(events);
+        }
+
+        @Override
+        public void onExpired(Iterable<CacheEntryEvent<? extends String, ? extends T>> events) {
+            invalidate(events);
+        }
+
+        private void invalidate(Iterable<CacheEntryEvent<? extends String, ? extends T>> events) {
+            if (local == null) {
+                return;
+            }
+            for (CacheEntryEvent<? extends String, ? extends T> event : events) {
+                local.remove(event.getKey());
+            }
+        }
+    }
+}
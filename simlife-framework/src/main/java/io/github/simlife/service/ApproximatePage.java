@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * A page whose total number of elements is not exact, because it was computed with {@link CountMode#SLICE} or
+ * {@link CountMode#ESTIMATED}.
+ *
+ * @param <T> the type of the elements.
+ * @see io.github.simlife.web.util.ResponseUtil#totalCountHeaders
+ */
+public class ApproximatePage<T> extends PageImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final CountMode countMode;
+
+    public ApproximatePage(List<T> content, Pageable pageable, long total, CountMode countMode) {
+        super(content, pageable, total);
+        this.countMode = countMode;
+    }
+
+    /**
+     * @return how the total number of elements was computed.
+     */
+    public CountMode getCountMode() {
+        return countMode;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.persistence.metamodel.Attribute;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Fast accessors to the attributes of the entities, compiled once per attribute of the static metamodel. The getter
+ * of the attribute (or of the field behind it) is bound to a {@link Function} with {@link LambdaMetafactory}, so
+ * reading a value costs a plain method call, without reflection. Getters are preferred to fields, as they also work
+ * on lazy proxies.
+ */
+final class AttributeAccessors {
+
+    private static final Map<Member, Function<Object, Object>> GETTERS = new ConcurrentHashMap<>();
+
+    private AttributeAccessors() {
+    }
+
+    /**
+     * Return the function reading the value of an attribute.
+     *
+     * @param attribute the attribute of the static metamodel.
+     * @param <T>       the type of the entity.
+     * @param <X>       the type of the attribute.
+     * @return the getter function.
+     */
+    @SuppressWarnings("unchecked")
+    static <T, X> Function<T, X> getter(Attribute<? super T, ?> attribute) {
+        return (Function<T, X>) GETTERS.computeIfAbsent(attribute.getJavaMember(), AttributeAccessors::createGetter);
+    }
+
+    private static Function<Object, Object> createGetter(Member member) {
+        Method getter = member instanceof Method ? (Method) member : findGetter((Field) member);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            if (getter != null && isPublic(getter) && isVisible(getter.getDeclaringClass())
+                && isVisible(getter.getReturnType())) {
+                MethodHandle handle = lookup.unreflect(getter);
+                return asFunction(lookup, handle);
+            }
+            // Not reachable from a generated class, fall back to a method handle
+            MethodHandle handle;
+            if (getter != null) {
+                ReflectionUtils.makeAccessible(getter);
+                handle = lookup.unreflect(getter);
+            } else {
+                ReflectionUtils.makeAccessible((Field) member);
+                handle = lookup.unreflectGetter((Field) member);
+            }
+            MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+            return entity -> {
+                try {
+                    return generic.invokeExact(entity);
+                } catch (Throwable e) {
+                    ReflectionUtils.rethrowRuntimeException(e);
+                    return null;
+                }
+            };
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access " + member, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> asFunction(MethodHandles.Lookup lookup, MethodHandle handle) {
+        try {
+            return (Function<Object, Object>) LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(Function.class), MethodType.methodType(Object.class, Object.class),
+                handle, handle.type().wrap()).getTarget().invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create a getter for " + handle, e);
+        }
+    }
+
+    private static Method findGetter(Field field) {
+        String suffix = StringUtils.capitalize(field.getName());
+        Method getter = ReflectionUtils.findMethod(field.getDeclaringClass(), "get" + suffix);
+        if (getter == null && (field.getType() == boolean.class || field.getType() == Boolean.class)) {
+            getter = ReflectionUtils.findMethod(field.getDeclaringClass(), "is" + suffix);
+        }
+        return getter != null && getter.getReturnType() == field.getType() ? getter : null;
+    }
+
+    private static boolean isPublic(Method method) {
+        return Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers());
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        // The generated class resolves the entity classes from the class loader of this class
+        return type.isPrimitive() || ClassUtils.isVisible(type, AttributeAccessors.class.getClassLoader());
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import io.github.simlife.service.filter.Filter;
+import io.github.simlife.service.filter.RangeFilter;
+import io.github.simlife.service.filter.RangeInterval;
+import io.github.simlife.service.filter.SortedLongList;
+import io.github.simlife.service.filter.StringFilter;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.SingularAttribute;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * An in-memory, columnar copy of some attributes of an entity, to answer the criteria queries on read-mostly reference
+ * tables without a database round trip. The values of each attribute are stored in a primitive array, a bitset or a
+ * dictionary, see {@link SnapshotColumn}, and the filters are evaluated by scanning the columns into bitsets of the
+ * matching rows, which are intersected. Usage:
+ * <pre>
+ *   &#64;Bean
+ *   public ColumnarSnapshot&lt;Country&gt; countrySnapshot(EntityManagerFactory emf) {
+ *       ColumnarSnapshot&lt;Country&gt; snapshot = new ColumnarSnapshot&lt;&gt;(Country.class, Country_.id,
+ *           Country_.population, Country_.code, Country_.active).register(emf);
+ *       ...load(entityManager) from an ApplicationReadyEvent listener
+ *       return snapshot;
+ *   }
+ *
+ *   List&lt;Long&gt; ids = countrySnapshot.query()
+ *       .range(criteria.getPopulation(), Country_.population)
+ *       .string(criteria.getCode(), Country_.code)
+ *       .filter(criteria.getActive(), Country_.active)
+ *       .ids();
+ * </pre>
+ * The filters are interpreted like by the <code>build*Specification</code> methods of {@link QueryService}: a null
+ * value never matches a comparison, and string containment follows {@link StandardTextMatchStrategy#LIKE_UPPER}. The
+ * matching ids can be used as a {@link io.github.simlife.service.filter.LongFilter} <code>in</code> list, or to load
+ * the entities from the second level cache.
+ * <p>
+ * Once {@link #register registered}, the snapshot follows the entities which are inserted, updated or deleted through
+ * Hibernate, once committed. Bulk JPQL updates and native queries are not seen, and must be followed by a new
+ * {@link #load(EntityManager)}. Deleted rows are only reclaimed by the next load.
+ *
+ * @param <ENTITY> the type of the entity.
+ */
+@SuppressWarnings("serial")
+public class ColumnarSnapshot<ENTITY> implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+    PostCommitDeleteEventListener {
+
+    private static final int LOAD_FETCH_SIZE = 1000;
+
+    private final Class<ENTITY> entityClass;
+
+    private final SingularAttribute<? super ENTITY, Long> idAttribute;
+
+    private final List<SingularAttribute<? super ENTITY, ?>> attributes;
+
+    private final transient Function<ENTITY, Long> idGetter;
+
+    private final transient List<Function<ENTITY, Object>> getters = new ArrayList<>();
+
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+
+    private final transient ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final transient Object loadMonitor = new Object();
+
+    private transient State state;
+
+    private transient List<Consumer<State>> pendingChanges;
+
+    /**
+     * @param entityClass the class of the entity.
+     * @param idAttribute the numeric id of the entity.
+     * @param attributes  the attributes which can be filtered, besides the id.
+     */
+    @SafeVarargs
+    public ColumnarSnapshot(Class<ENTITY> entityClass, SingularAttribute<? super ENTITY, Long> idAttribute,
+                            SingularAttribute<? super ENTITY, ?>... attributes) {
+        this.entityClass = entityClass;
+        this.idAttribute = idAttribute;
+        this.attributes = Collections.unmodifiableList(Arrays.asList(attributes));
+        this.idGetter = AttributeAccessors.getter(idAttribute);
+        // The id is the first column, which also stores the ids of the rows
+        columnIndexes.put(idAttribute.getName(), 0);
+        getters.add(AttributeAccessors.getter(idAttribute));
+        for (SingularAttribute<? super ENTITY, ?> attribute : attributes) {
+            columnIndexes.put(attribute.getName(), getters.size());
+            getters.add(AttributeAccessors.getter(attribute));
+        }
+        this.state = new State();
+    }
+
+    /**
+     * Register the snapshot in the event listeners of the Hibernate session factory, to follow the changes of the
+     * entities.
+     *
+     * @param entityManagerFactory the entity manager factory, backed by Hibernate.
+     * @return this snapshot.
+     */
+    public ColumnarSnapshot<ENTITY> register(EntityManagerFactory entityManagerFactory) {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+        return this;
+    }
+
+    /**
+     * Replace the content of the snapshot by all the rows of the table, read through a forward-only cursor, with only
+     * the id and the columns of the snapshot. The queries keep using the previous content until the load completes,
+     * and the changes committed during the load are applied to the new content.
+     *
+     * @param entityManager the entity manager, in a transaction if the database requires it for cursors.
+     * @return the number of rows.
+     */
+    public int load(EntityManager entityManager) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+        Root<ENTITY> root = query.from(entityClass);
+        List<Selection<?>> selections = new ArrayList<>(attributes.size() + 1);
+        selections.add(root.get(idAttribute));
+        for (SingularAttribute<? super ENTITY, ?> attribute : attributes) {
+            selections.add(root.get(attribute));
+        }
+        query.multiselect(selections);
+        synchronized (loadMonitor) {
+            startLoad();
+            State loaded = new State();
+            try (ScrollableResults results = entityManager.createQuery(query)
+                .unwrap(org.hibernate.query.Query.class)
+                .setFetchSize(LOAD_FETCH_SIZE)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    // The multiselect row is the single element of the scrolled row
+                    Object[] row = (Object[]) results.get(0);
+                    loaded.upsert(((Number) row[0]).longValue(), row);
+                }
+            } catch (RuntimeException e) {
+                endLoad(null);
+                throw e;
+            }
+            return endLoad(loaded);
+        }
+    }
+
+    /**
+     * Replace the content of the snapshot by the given entities.
+     *
+     * @param entities the entities.
+     * @return the number of rows.
+     */
+    public int load(Iterable<? extends ENTITY> entities) {
+        synchronized (loadMonitor) {
+            startLoad();
+            State loaded = new State();
+            for (ENTITY entity : entities) {
+                loaded.upsert(idGetter.apply(entity), values(entity));
+            }
+            return endLoad(loaded);
+        }
+    }
+
+    private void startLoad() {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int endLoad(State loaded) {
+        lock.writeLock().lock();
+        try {
+            if (loaded != null) {
+                pendingChanges.forEach(change -> change.accept(loaded));
+                state = loaded;
+            }
+            pendingChanges = null;
+            return state.live.cardinality();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Insert or replace the row of an entity.
+     *
+     * @param entity the entity.
+     */
+    public void upsert(ENTITY entity) {
+        long id = idGetter.apply(entity);
+        Object[] values = values(entity);
+        apply(current -> current.upsert(id, values));
+    }
+
+    /**
+     * Remove the row of an entity, if any.
+     *
+     * @param id the id of the entity.
+     */
+    public void remove(Long id) {
+        apply(current -> current.remove(id));
+    }
+
+    private void apply(Consumer<State> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(state);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Object[] values(ENTITY entity) {
+        Object[] values = new Object[getters.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getters.get(i).apply(entity);
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return state.live.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a new query on the snapshot, matching all the rows until filters are added.
+     */
+    public Query query() {
+        return new Query();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (entityClass.isInstance(event.getEntity())) {
+            upsert(entityClass.cast(event.getEntity()));
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (entityClass.isInstance(event.getEntity())) {
+            upsert(entityClass.cast(event.getEntity()));
+        }
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (entityClass.isInstance(event.getEntity())) {
+            remove(((Number) event.getId()).longValue());
+        }
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return entityClass.isAssignableFrom(persister.getMappedClass());
+    }
+
+    /**
+     * Still abstract in Hibernate 5.2, which only calls {@link #requiresPostCommitHandling(EntityPersister)}.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    /**
+     * The content of the snapshot: the ids, the columns, and the rows which are not deleted.
+     */
+    private final class State {
+
+        private final SnapshotColumn[] columns = new SnapshotColumn[attributes.size() + 1];
+        private final SnapshotColumn.LongColumn ids = new SnapshotColumn.LongColumn(id -> ((Number) id).longValue());
+        private final BitSet live = new BitSet();
+        private final RowIndex index = new RowIndex();
+        private int capacity;
+        private int size;
+
+        private State() {
+            columns[0] = ids;
+            for (int i = 1; i < columns.length; i++) {
+                columns[i] = SnapshotColumn.of(attributes.get(i - 1).getJavaType());
+            }
+        }
+
+        /**
+         * Insert or replace a row.
+         *
+         * @param id     the id of the row.
+         * @param values the values of all the columns, starting with the id.
+         */
+        private void upsert(long id, Object[] values) {
+            int row = index.get(id);
+            if (row < 0) {
+                row = size++;
+                if (row == capacity) {
+                    capacity = SnapshotColumn.capacity(capacity, size);
+                    for (SnapshotColumn column : columns) {
+                        column.ensureCapacity(capacity);
+                    }
+                }
+                index.put(id, row);
+            }
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].set(row, values[i]);
+            }
+            live.set(row);
+        }
+
+        private void remove(long id) {
+            int row = index.get(id);
+            if (row >= 0) {
+                live.clear(row);
+            }
+        }
+    }
+
+    /**
+     * An open addressing hash map from the ids to the rows, without boxing.
+     */
+    private static final class RowIndex {
+
+        private long[] keys = new long[16];
+        private int[] rows = newRows(16);
+        private int size;
+
+        private static int[] newRows(int capacity) {
+            int[] rows = new int[capacity];
+            Arrays.fill(rows, -1);
+            return rows;
+        }
+
+        private int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); rows[slot] >= 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return rows[slot];
+                }
+            }
+            return -1;
+        }
+
+        private void put(long key, int row) {
+            if (2 * (size + 1) > keys.length) {
+                long[] oldKeys = keys;
+                int[] oldRows = rows;
+                keys = new long[oldKeys.length * 2];
+                rows = newRows(oldKeys.length * 2);
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldRows[i] >= 0) {
+                        put(oldKeys[i], oldRows[i]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (rows[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            rows[slot] = row;
+            size++;
+        }
+    }
+
+    /**
+     * A query on the snapshot: the filters are recorded, then evaluated together when the result is read, so they
+     * all see the same content.
+     */
+    public final class Query {
+
+        private final List<Function<State, BitSet>> conditions = new ArrayList<>();
+
+        private boolean none;
+
+        private Query() {
+        }
+
+        /**
+         * Add a filter on equality, and null/non-null conditions.
+         *
+         * @param filter the individual attribute filter coming from the frontend, may be null.
+         * @param field  the attribute, which must be a column of the snapshot.
+         * @param <X>    the type of the attribute.
+         * @return this query.
+         */
+        public <X> Query filter(Filter<X> filter, SingularAttribute<? super ENTITY, X> field) {
+            if (filter == null) {
+                return this;
+            }
+            int column = columnIndex(field);
+            if (filter.getEquals() != null) {
+                List<X> values = Collections.singletonList(filter.getEquals());
+                conditions.add(current -> current.columns[column].matchValues(values, current.size));
+            } else if (filter.getIn() != null) {
+                List<X> values = new ArrayList<>(filter.getIn());
+                values.removeIf(value -> value == null);
+                conditions.add(current -> current.columns[column].matchValues(values, current.size));
+            } else if (filter.getSpecified() != null) {
+                boolean specified = filter.getSpecified();
+                conditions.add(current -> current.columns[column].matchSpecified(specified, current.size));
+            }
+            return this;
+        }
+
+        /**
+         * Add a filter on a range, normalized into a {@link RangeInterval} first.
+         *
+         * @param filter the individual attribute filter coming from the frontend, may be null.
+         * @param field  the attribute, which must be a column of the snapshot.
+         * @param <X>    the type of the attribute.
+         * @return this query.
+         */
+        public <X extends Comparable<? super X>> Query range(RangeFilter<X> filter,
+                                                            SingularAttribute<? super ENTITY, X> field) {
+            int column = columnIndex(field);
+            RangeInterval<X> interval = RangeInterval.of(filter);
+            if (interval.isEmpty()) {
+                none = true;
+            } else if (interval.getValues() != null) {
+                List<X> values = interval.getValues();
+                conditions.add(current -> current.columns[column].matchValues(values, current.size));
+            } else if (interval.getLower() != null || interval.getUpper() != null) {
+                conditions.add(current -> current.columns[column].matchBounds(interval, current.size));
+            } else if (interval.getSpecified() != null) {
+                boolean specified = interval.getSpecified();
+                conditions.add(current -> current.columns[column].matchSpecified(specified, current.size));
+            }
+            return this;
+        }
+
+        /**
+         * Add a filter on a string, where the conditions on the text are evaluated once per distinct value.
+         *
+         * @param filter the individual attribute filter coming from the frontend, may be null.
+         * @param field  the attribute, which must be a column of the snapshot.
+         * @return this query.
+         */
+        public Query string(StringFilter filter, SingularAttribute<? super ENTITY, String> field) {
+            if (filter == null || filter.getEquals() != null || filter.getIn() != null) {
+                return filter(filter, field);
+            }
+            int column = columnIndex(field);
+            if (filter.getContains() != null) {
+                String text = filter.getContains();
+                conditions.add(current -> current.columns[column].matchText(
+                    value -> PredicateCompiler.containsIgnoreCase(value, text), current.size));
+            } else if (filter.getStartsWith() != null) {
+                String prefix = filter.getStartsWith();
+                conditions.add(current -> current.columns[column].matchText(
+                    value -> value.regionMatches(true, 0, prefix, 0, prefix.length()), current.size));
+            } else {
+                filter(filter, field);
+            }
+            return this;
+        }
+
+        /**
+         * @return the number of matching rows.
+         */
+        public int count() {
+            lock.readLock().lock();
+            try {
+                return evaluate(state).cardinality();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * @return the sorted ids of the matching rows.
+         */
+        public SortedLongList ids() {
+            lock.readLock().lock();
+            try {
+                State current = state;
+                BitSet rows = evaluate(current);
+                long[] ids = new long[rows.cardinality()];
+                int i = 0;
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    ids[i++] = current.ids.get(row);
+                }
+                return SortedLongList.of(ids);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private BitSet evaluate(State current) {
+            if (none) {
+                return new BitSet();
+            }
+            BitSet result = (BitSet) current.live.clone();
+            for (Function<State, BitSet> condition : conditions) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                result.and(condition.apply(current));
+            }
+            return result;
+        }
+
+        private int columnIndex(SingularAttribute<? super ENTITY, ?> field) {
+            Integer index = columnIndexes.get(field.getName());
+            if (index == null) {
+                throw new IllegalArgumentException("The attribute " + field.getName() + " is not a column of the "
+                    + entityClass.getSimpleName() + " snapshot");
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+/**
+ * How the total number of elements of a page is computed by {@link QueryService}.
+ */
+public enum CountMode {
+
+    /**
+     * Run a count query with the same predicates as the page, unless the total can be deduced from the page itself.
+     */
+    EXACT,
+
+    /**
+     * Do not count: fetch one more element than the page size to know whether there is a next page. The total is only
+     * a lower bound, for endpoints which only offer "next" and "previous" links.
+     */
+    SLICE,
+
+    /**
+     * Run the count query at most once per time-to-live for the same predicates and values, and reuse its result in
+     * the meantime, see {@link QueryService#getEstimatedCountTimeToLive()}.
+     */
+    ESTIMATED
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.github.simlife.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of the results of the count queries for {@link CountMode#ESTIMATED}, keyed by the JPQL and the
+ * parameter values of the query. A count is reused while it is more recent than the time to live given on each lookup,
+ * and the concurrent callers for the same count wait for a single query. When the cache is full, the expired counts
+ * are removed first, then arbitrary ones.
+ */
+class EstimatedCountCache {
+
+    private final int maximumSize;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param maximumSize the maximum number of counts.
+     */
+    EstimatedCountCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Return the count for a key, or run the count query if there is none more recent than the time to live.
+     *
+     * @param key              the JPQL and parameter values of the count query.
+     * @param timeToLiveMillis the time during which a count is reused, in millis.
+     * @param loader           the count query.
+     * @return the count.
+     */
+    long get(String key, long timeToLiveMillis, LongSupplier loader) {
+        while (true) {
+            long now = System.currentTimeMillis();
+            Entry entry = entries.get(key);
+            if (entry != null && !entry.isExpired(now, timeToLiveMillis)) {
+                return join(entry.count);
+            }
+            Entry created = new Entry(now);
+            if (entry == null ? entries.putIfAbsent(key, created) == null : entries.replace(key, entry, created)) {
+                if (entry == null && entries.size() > maximumSize) {
+                    evict(now, timeToLiveMillis);
+                }
+                return load(key, created, loader);
+            }
+            // Another caller is loading the same count
+        }
+    }
+
+    private long load(String key, Entry entry, LongSupplier loader) {
+        try {
+            long count = loader.getAsLong();
+            entry.count.complete(count);
+            return count;
+        } catch (RuntimeException | Error e) {
+            // The failure is not cached
+            entries.remove(key, entry);
+            entry.count.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void evict(long now, long timeToLiveMillis) {
+        entries.values().removeIf(entry -> entry.isExpired(now, timeToLiveMillis));
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maximumSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static long join(CompletableFuture<Long> count) {
+        try {
+            return count.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of counts in the cache, including the expired ones.
+     *
+     * @return the size of the cache.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+
+        private final long created;
+
+        private final CompletableFuture<Long> count = new CompletableFuture<>();
+
+        private Entry(long created) {
+            this.created = created;
+        }
+
+        private boolean isExpired(long now, long timeToLiveMillis) {
+            return now - created >= timeToLiveMillis;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import javax.persistence.metamodel.Attribute;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The number of entities matching a specification, for each value of a set of facet attributes, like the counts
+ * displayed next to the status or category filters of a search screen.
+ *
+ * @see QueryService#countFacets
+ */
+public class FacetCounts {
+
+    private final long total;
+    private final Map<String, Map<Object, Long>> counts;
+
+    public FacetCounts(long total, Map<String, Map<Object, Long>> counts) {
+        this.total = total;
+        this.counts = Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Sum up the rows of a query grouped by all the facet attributes into the counts of each attribute.
+     *
+     * @param attributeNames the names of the facet attributes, in the order of the columns.
+     * @param rows           the rows of the query: one column per facet attribute, then the count.
+     * @return the counts.
+     */
+    static FacetCounts fromGroups(List<String> attributeNames, List<Object[]> rows) {
+        int size = attributeNames.size();
+        List<Map<Object, Long>> sums = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sums.add(new HashMap<>());
+        }
+        long total = 0;
+        for (Object[] row : rows) {
+            long count = ((Number) row[size]).longValue();
+            total += count;
+            for (int i = 0; i < size; i++) {
+                sums.get(i).merge(row[i], count, Long::sum);
+            }
+        }
+        Map<String, Map<Object, Long>> counts = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            counts.put(attributeNames.get(i), sortByCount(sums.get(i)));
+        }
+        return new FacetCounts(total, counts);
+    }
+
+    private static Map<Object, Long> sortByCount(Map<Object, Long> counts) {
+        List<Map.Entry<Object, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<Object, Long>comparingByValue().reversed());
+        Map<Object, Long> sorted = new LinkedHashMap<>();
+        for (Map.Entry<Object, Long> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    /**
+     * @return the number of entities matching the specification.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Return the counts of a facet attribute, by decreasing count. The entities where the attribute is null are
+     * counted under the null key.
+     *
+     * @param attribute the facet attribute.
+     * @param <X>       the type of the attribute.
+     * @return the number of matching entities for each value of the attribute, empty if it is not a facet.
+     */
+    @SuppressWarnings("unchecked")
+    public <X> Map<X, Long> getCounts(Attribute<?, X> attribute) {
+        return (Map<X, Long>) getCounts(attribute.getName());
+    }
+
+    /**
+     * @param attributeName the name of the facet attribute.
+     * @return the number of matching entities for each value of the attribute, empty if it is not a facet.
+     */
+    public Map<Object, Long> getCounts(String attributeName) {
+        return counts.getOrDefault(attributeName, Collections.emptyMap());
+    }
+
+    @Override
+    public String toString() {
+        return "FacetCounts [total=" + total + ", counts=" + counts + "]";
+    }
+}
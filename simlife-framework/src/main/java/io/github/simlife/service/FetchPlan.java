@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import javax.persistence.AttributeNode;
+import javax.persistence.EntityGraph;
+import javax.persistence.Subgraph;
+import javax.persistence.metamodel.Attribute;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The associations to load together with the entities returned by a query, to avoid loading them lazily one entity
+ * at a time, typically during JSON serialization. The associations are given as paths of attribute names from the
+ * queried entity, like <code>project</code> or <code>project.manager</code>. Usage:
+ * <pre>
+ *   return findAll(createSpecification(criteria), pageable, CountMode.EXACT,
+ *       FetchPlan.of(Employee_.project, Employee_.tags));
+ * </pre>
+ *
+ * @see QueryService#findAll
+ */
+public final class FetchPlan {
+
+    private final List<String> paths;
+
+    private FetchPlan(List<String> paths) {
+        this.paths = Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * @param paths the paths of the associations, separated by dots.
+     * @return the fetch plan.
+     */
+    public static FetchPlan of(String... paths) {
+        return new FetchPlan(new ArrayList<>(Arrays.asList(paths)));
+    }
+
+    /**
+     * @param attributes the associations of the queried entity.
+     * @return the fetch plan.
+     */
+    public static FetchPlan of(Attribute<?, ?>... attributes) {
+        List<String> paths = new ArrayList<>(attributes.length);
+        for (Attribute<?, ?> attribute : attributes) {
+            paths.add(attribute.getName());
+        }
+        return new FetchPlan(paths);
+    }
+
+    /**
+     * Create a fetch plan from the attribute nodes of an entity graph, and of its subgraphs.
+     *
+     * @param graph the entity graph.
+     * @return the fetch plan.
+     */
+    public static FetchPlan of(EntityGraph<?> graph) {
+        List<String> paths = new ArrayList<>();
+        addPaths("", graph.getAttributeNodes(), paths);
+        return new FetchPlan(paths);
+    }
+
+    private static void addPaths(String prefix, List<AttributeNode<?>> nodes, List<String> paths) {
+        for (AttributeNode<?> node : nodes) {
+            String path = prefix + node.getAttributeName();
+            paths.add(path);
+            for (Subgraph<?> subgraph : node.getSubgraphs().values()) {
+                addPaths(path + '.', subgraph.getAttributeNodes(), paths);
+            }
+        }
+    }
+
+    /**
+     * @param paths more paths of associations, separated by dots.
+     * @return a fetch plan with the paths of this one, and the given ones.
+     */
+    public FetchPlan and(String... paths) {
+        List<String> union = new ArrayList<>(this.paths);
+        union.addAll(Arrays.asList(paths));
+        return new FetchPlan(union);
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    @Override
+    public String toString() {
+        return "FetchPlan " + paths;
+    }
+}
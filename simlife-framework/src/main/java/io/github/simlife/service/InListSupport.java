@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import io.github.simlife.domain.util.FixedPostgreSQL82Dialect;
+import io.github.simlife.service.filter.SortedIntList;
+import io.github.simlife.service.filter.SortedLongList;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Helpers to bind large <code>IN</code> lists, without producing a different statement for every list size.
+ * <ul>
+ * <li>Lists are padded to the next power of two, by repeating the last value, so a list of 5 to 8 values always
+ * renders as <code>in (?, ?, ?, ?, ?, ?, ?, ?)</code>.</li>
+ * <li>Lists longer than {@link #CHUNK_SIZE} are split in chunks, which are OR-ed, to stay under the limits of the
+ * drivers.</li>
+ * <li>Where the dialect supports it, the whole list is bound as a single array parameter instead.</li>
+ * </ul>
+ */
+final class InListSupport {
+
+    /**
+     * Maximum number of values in a single <code>IN</code> list, the lowest limit amongst the supported databases.
+     */
+    static final int CHUNK_SIZE = 1000;
+
+    private InListSupport() {
+    }
+
+    /**
+     * Split the values in chunks of at most {@link #CHUNK_SIZE} values, each padded to the next power of two (or to
+     * {@link #CHUNK_SIZE}).
+     *
+     * @param values the values of the list.
+     * @param <X>    the type of the values.
+     * @return the padded chunks, empty if there is no value.
+     */
+    static <X> List<List<X>> partition(Collection<X> values) {
+        if (values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<X> list = values instanceof List ? (List<X>) values : new ArrayList<>(values);
+        List<List<X>> chunks = new ArrayList<>(list.size() / CHUNK_SIZE + 1);
+        for (int start = 0; start < list.size(); start += CHUNK_SIZE) {
+            chunks.add(pad(list.subList(start, Math.min(start + CHUNK_SIZE, list.size()))));
+        }
+        return chunks;
+    }
+
+    /**
+     * Pad the values to the next power of two, capped at {@link #CHUNK_SIZE}, by repeating the last value.
+     *
+     * @param values the values, at most {@link #CHUNK_SIZE}.
+     * @param <X>    the type of the values.
+     * @return the padded values.
+     */
+    static <X> List<X> pad(List<X> values) {
+        int size = values.size();
+        int padded = size <= 1 ? size : Math.min(Integer.highestOneBit(size - 1) << 1, CHUNK_SIZE);
+        if (padded <= size) {
+            return values;
+        }
+        List<X> result = new ArrayList<>(padded);
+        result.addAll(values);
+        X last = values.get(size - 1);
+        while (result.size() < padded) {
+            result.add(last);
+        }
+        return result;
+    }
+
+    /**
+     * Return the name of the function binding a list of values of the given type as a single array parameter.
+     *
+     * @param javaType the type of the values.
+     * @return the function name, or null if the type is not supported.
+     * @see FixedPostgreSQL82Dialect#ARRAY_ANY_FUNCTION_PREFIX
+     */
+    static String arrayFunction(Class<?> javaType) {
+        String sqlType;
+        if (Long.class.equals(javaType)) {
+            sqlType = "bigint";
+        } else if (Integer.class.equals(javaType)) {
+            sqlType = "int";
+        } else if (Short.class.equals(javaType)) {
+            sqlType = "smallint";
+        } else if (BigDecimal.class.equals(javaType)) {
+            sqlType = "numeric";
+        } else if (String.class.equals(javaType)) {
+            sqlType = "text";
+        } else if (UUID.class.equals(javaType)) {
+            sqlType = "uuid";
+        } else {
+            return null;
+        }
+        return FixedPostgreSQL82Dialect.ARRAY_ANY_FUNCTION_PREFIX + sqlType;
+    }
+
+    /**
+     * Render the values as a PostgreSQL array literal, like <code>{1,2,3}</code> or <code>{"a","b"}</code>.
+     *
+     * @param values the values.
+     * @return the array literal.
+     */
+    static String toArrayLiteral(Collection<?> values) {
+        StringBuilder literal = new StringBuilder(values.size() * 8 + 2).append('{');
+        if (values instanceof SortedLongList) {
+            // Straight from the primitive array, without boxing the values
+            SortedLongList longs = (SortedLongList) values;
+            for (int i = 0; i < longs.size(); i++) {
+                literal.append(i == 0 ? "" : ",").append(longs.getLong(i));
+            }
+            return literal.append('}').toString();
+        } else if (values instanceof SortedIntList) {
+            SortedIntList ints = (SortedIntList) values;
+            for (int i = 0; i < ints.size(); i++) {
+                literal.append(i == 0 ? "" : ",").append(ints.getInt(i));
+            }
+            return literal.append('}').toString();
+        }
+        boolean first = true;
+        for (Object value : values) {
+            if (!first) {
+                literal.append(',');
+            }
+            first = false;
+            if (value == null) {
+                literal.append("NULL");
+            } else if (value instanceof Number) {
+                literal.append(value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString());
+            } else {
+                literal.append('"');
+                String text = value.toString();
+                for (int i = 0; i < text.length(); i++) {
+                    char c = text.charAt(i);
+                    if (c == '"' || c == '\\') {
+                        literal.append('\\');
+                    }
+                    literal.append(c);
+                }
+                literal.append('"');
+            }
+        }
+        return literal.append('}').toString();
+    }
+}
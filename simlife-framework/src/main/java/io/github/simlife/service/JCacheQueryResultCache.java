@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link QueryResultCache} storing the results in a JCache provider. Like the Hibernate regions, the caches are
+ * not created on the fly: the cache of each entity, named after {@link #getCacheName(Class)}, must be created
+ * upfront in the cache configuration of the application. The queries on an entity without cache are not cached.
+ * <p>
+ * Cached results are shared, so they should be immutable values like DTOs, not managed entities. A result loaded
+ * while the region is invalidated is not cached, so a query racing with a commit does not cache stale data. On a
+ * cluster, the invalidation clears the distributed cache, but only the node running the commit can detect the
+ * race.
+ */
+public class JCacheQueryResultCache implements QueryResultCache {
+
+    private static final String CACHE_NAME_SUFFIX = ".queryResults";
+
+    private final Logger log = LoggerFactory.getLogger(JCacheQueryResultCache.class);
+
+    private final CacheManager cacheManager;
+
+    private final Map<Class<?>, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Set<Class<?>>> dependents = new ConcurrentHashMap<>();
+
+    private final Set<Class<?>> uncached = ConcurrentHashMap.newKeySet();
+
+    public JCacheQueryResultCache(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Return the name of the cache holding the query results for an entity.
+     *
+     * @param entityClass the class of the queried entity.
+     * @return the cache name.
+     */
+    public static String getCacheName(Class<?> entityClass) {
+        return entityClass.getName() + CACHE_NAME_SUFFIX;
+    }
+
+    /**
+     * Declare that the queries on an entity also depend on other entities, because they filter on their attributes,
+     * so their results must also be cleared when those entities are modified.
+     *
+     * @param entityClass   the class of the queried entity.
+     * @param referenced    the classes of the entities referenced by its queries.
+     * @return this cache.
+     */
+    public JCacheQueryResultCache addDependencies(Class<?> entityClass, Class<?>... referenced) {
+        for (Class<?> other : referenced) {
+            dependents.computeIfAbsent(other, key -> ConcurrentHashMap.newKeySet()).add(entityClass);
+        }
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Class<?> entityClass, Object key, Supplier<T> loader) {
+        Cache<Object, Object> cache = getCache(entityClass);
+        if (cache == null) {
+            return loader.get();
+        }
+        Object cached = cache.get(key);
+        if (cached != null) {
+            return (T) cached;
+        }
+        AtomicLong generation = getGeneration(entityClass);
+        long loadedGeneration = generation.get();
+        T result = loader.get();
+        if (result != null && generation.get() == loadedGeneration) {
+            cache.put(key, result);
+            if (generation.get() != loadedGeneration) {
+                // Invalidated while the result was stored, it may have been put after the clear
+                cache.remove(key);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void invalidate(Class<?> entityClass) {
+        for (Class<?> type = entityClass; type != null && type != Object.class; type = type.getSuperclass()) {
+            clear(type);
+            for (Class<?> dependent : dependents.getOrDefault(type, Collections.emptySet())) {
+                clear(dependent);
+            }
+        }
+    }
+
+    private void clear(Class<?> entityClass) {
+        getGeneration(entityClass).incrementAndGet();
+        Cache<Object, Object> cache = getCache(entityClass);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    private AtomicLong getGeneration(Class<?> entityClass) {
+        return generations.computeIfAbsent(entityClass, key -> new AtomicLong());
+    }
+
+    private Cache<Object, Object> getCache(Class<?> entityClass) {
+        if (uncached.contains(entityClass)) {
+            return null;
+        }
+        Cache<Object, Object> cache = cacheManager.getCache(getCacheName(entityClass));
+        if (cache == null && uncached.add(entityClass)) {
+            log.debug("No cache named {}, the query results of {} are not cached", getCacheName(entityClass),
+                entityClass.getSimpleName());
+        }
+        return cache;
+    }
+}
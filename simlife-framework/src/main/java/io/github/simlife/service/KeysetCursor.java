@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+/**
+ * Opaque continuation token for keyset (seek) pagination. It holds the sort key and the id of the last row of the
+ * previous slice, so the next slice can be fetched with a <code>(sortCol, id) &gt; (?, ?)</code> predicate instead
+ * of an offset. It can be bound directly from a request parameter:
+ * <pre>
+ *      &#64;RequestParam(name = "cursor", required = false) KeysetCursor cursor
+ * </pre>
+ *
+ * @see QueryService#findAllByKeyset
+ */
+public final class KeysetCursor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * The parsers of the java.time types, whose <code>toString()</code> is the ISO-8601 format read by their
+     * <code>parse</code> method.
+     */
+    private static final Map<Class<?>, Function<String, ?>> TEMPORAL_PARSERS = new HashMap<>();
+
+    static {
+        TEMPORAL_PARSERS.put(Instant.class, Instant::parse);
+        TEMPORAL_PARSERS.put(LocalDate.class, LocalDate::parse);
+        TEMPORAL_PARSERS.put(LocalDateTime.class, LocalDateTime::parse);
+        TEMPORAL_PARSERS.put(LocalTime.class, LocalTime::parse);
+        TEMPORAL_PARSERS.put(OffsetDateTime.class, OffsetDateTime::parse);
+        TEMPORAL_PARSERS.put(OffsetTime.class, OffsetTime::parse);
+        TEMPORAL_PARSERS.put(ZonedDateTime.class, ZonedDateTime::parse);
+        TEMPORAL_PARSERS.put(Year.class, Year::parse);
+        TEMPORAL_PARSERS.put(YearMonth.class, YearMonth::parse);
+        TEMPORAL_PARSERS.put(Duration.class, Duration::parse);
+    }
+
+    private final String sortValue;
+    private final String id;
+
+    private KeysetCursor(String sortValue, String id) {
+        this.sortValue = sortValue;
+        this.id = id;
+    }
+
+    /**
+     * Create a cursor pointing after the given row.
+     *
+     * @param sortValue the sort key of the last row, or null if only the id is used for seeking.
+     * @param id        the id of the last row.
+     * @return the cursor.
+     * @throws IllegalArgumentException if id is null.
+     */
+    public static KeysetCursor of(Object sortValue, Object id) {
+        if (id == null) {
+            throw new IllegalArgumentException("The id of a keyset cursor must not be null");
+        }
+        return new KeysetCursor(sortValue != null ? sortValue.toString() : null, id.toString());
+    }
+
+    /**
+     * Decode a cursor from its token, as returned by {@link #toString()}.
+     *
+     * @param token the opaque token coming from the frontend.
+     * @return the cursor.
+     * @throws IllegalArgumentException if the token is malformed.
+     */
+    public static KeysetCursor valueOf(String token) {
+        String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int separator = decoded.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            return new KeysetCursor(null, decoded);
+        }
+        return new KeysetCursor(decoded.substring(0, separator), decoded.substring(separator + 1));
+    }
+
+    /**
+     * Get the sort key of the last row, converted to the type of the sort attribute. The java.time types are parsed
+     * from their ISO-8601 form, and the other types, like numbers, strings, booleans, enums and UUIDs, are converted
+     * by the default {@link ConversionService}.
+     *
+     * @param type the java type of the sort attribute.
+     * @param <X>  the type of the sort attribute.
+     * @return the sort key, or null if the cursor only holds an id.
+     */
+    public <X> X getSortValue(Class<X> type) {
+        return convert(sortValue, type);
+    }
+
+    /**
+     * Get the id of the last row, converted to the type of the id attribute.
+     *
+     * @param type the java type of the id attribute.
+     * @param <X>  the type of the id attribute.
+     * @return the id.
+     */
+    public <X> X getId(Class<X> type) {
+        return convert(id, type);
+    }
+
+    /**
+     * @return true if the cursor holds a sort key next to the id.
+     */
+    public boolean hasSortValue() {
+        return sortValue != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <X> X convert(String value, Class<X> type) {
+        if (value == null) {
+            return null;
+        }
+        Function<String, ?> parser = TEMPORAL_PARSERS.get(type);
+        if (parser != null) {
+            return (X) parser.apply(value);
+        }
+        ConversionService conversionService = DefaultConversionService.getSharedInstance();
+        return conversionService.convert(value, type);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        KeysetCursor that = (KeysetCursor) o;
+        return Objects.equals(sortValue, that.sortValue) && Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sortValue, id);
+    }
+
+    /**
+     * @return the opaque token, safe to be used in an URL.
+     */
+    @Override
+    public String toString() {
+        String raw = sortValue != null ? sortValue + SEPARATOR + id : id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A slice of entities fetched with keyset pagination, together with the cursor to fetch the following slice.
+ *
+ * @param <T> the type of the entities.
+ * @see QueryService#findAllByKeyset
+ */
+public class KeysetSlice<T> {
+
+    private final List<T> content;
+    private final KeysetCursor nextCursor;
+
+    public KeysetSlice(List<T> content, KeysetCursor nextCursor) {
+        this.content = Collections.unmodifiableList(content);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return the cursor pointing after the last element of this slice, or null if this is the last slice.
+     */
+    public KeysetCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public int getNumberOfElements() {
+        return content.size();
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import io.github.simlife.service.filter.Filter;
+import io.github.simlife.service.filter.RangeFilter;
+import io.github.simlife.service.filter.RangeInterval;
+import io.github.simlife.service.filter.StringFilter;
+
+import javax.persistence.metamodel.SetAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Compiles the filters of a criteria object into a {@link Predicate}, to filter entities which are already loaded,
+ * like the content of the second level cache or of a request scoped collection, without a database round trip.
+ * Usage:
+ * <pre>
+ *   Predicate&lt;Employee&gt; predicate = new PredicateCompiler&lt;Employee&gt;()
+ *     .string(criteria.getName(), Employee_.name)
+ *     .range(criteria.getAge(), Employee_.age)
+ *     .range(criteria.getProjectId(), Employee_.project, Project_.id)
+ *     .compile();
+ *   List&lt;Employee&gt; result = employees.stream().filter(predicate).collect(Collectors.toList());
+ * </pre>
+ * The filters are interpreted like by the <code>build*Specification</code> methods of {@link QueryService}: a null
+ * value never matches a comparison, a missing reference never matches a condition on one of its attributes, and a
+ * collection matches if one of its elements matches all the bounds of a filter, each filter on the collection being
+ * matched on its own, see {@link QueryService#collectionSpecification}. Range filters are normalized to a single
+ * {@link RangeInterval} first. String containment follows {@link StandardTextMatchStrategy#LIKE_UPPER}.
+ * <p>
+ * The attributes are read through accessors compiled once per attribute, and the values of the filters are prepared
+ * when they are added, so evaluating the predicate neither uses reflection nor allocates, except for the iterator of a
+ * non-empty collection.
+ *
+ * @param <ENTITY> the type of the filtered entities.
+ */
+public class PredicateCompiler<ENTITY> {
+
+    private final List<Predicate<? super ENTITY>> conditions = new ArrayList<>();
+
+    /**
+     * Add a filter on a single field, where equality, and null/non-null conditions are supported.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param field  the JPA static metamodel representing the field.
+     * @param <X>    The type of the attribute which is filtered.
+     * @return this compiler.
+     */
+    public <X> PredicateCompiler<ENTITY> filter(Filter<X> filter, SingularAttribute<? super ENTITY, X> field) {
+        return filter(filter, AttributeAccessors.<ENTITY, X>getter(field));
+    }
+
+    /**
+     * Add a filter on a value read by a function, where equality, and null/non-null conditions are supported.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param getter the function reading the value from the entity.
+     * @param <X>    The type of the value which is filtered.
+     * @return this compiler.
+     */
+    public <X> PredicateCompiler<ENTITY> filter(Filter<X> filter, Function<? super ENTITY, ? extends X> getter) {
+        if (filter != null) {
+            Predicate<X> condition = filterCondition(filter);
+            if (condition != null) {
+                conditions.add(entity -> condition.test(getter.apply(entity)));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Add a filter on one-to-one or many-to-one reference, where equality, and null/non-null conditions are
+     * supported.
+     *
+     * @param filter     the individual attribute filter coming from the frontend, may be null.
+     * @param reference  the attribute of the static metamodel for the referring entity.
+     * @param valueField the attribute of the static metamodel of the referred entity.
+     * @param <OTHER>    The type of the referenced entity.
+     * @param <X>        The type of the attribute which is filtered.
+     * @return this compiler.
+     */
+    public <OTHER, X> PredicateCompiler<ENTITY> filter(Filter<X> filter,
+                                                       SingularAttribute<? super ENTITY, OTHER> reference,
+                                                       SingularAttribute<OTHER, X> valueField) {
+        if (filter == null) {
+            return this;
+        }
+        if (filter.getEquals() == null && filter.getIn() == null && filter.getSpecified() != null) {
+            return specified(AttributeAccessors.<ENTITY, OTHER>getter(reference), filter.getSpecified());
+        }
+        return reference(AttributeAccessors.getter(reference), AttributeAccessors.getter(valueField),
+            filterCondition(filter));
+    }
+
+    /**
+     * Add a filter on one-to-many or many-to-many reference, where equality, and emptiness conditions are supported.
+     *
+     * @param filter     the individual attribute filter coming from the frontend, may be null.
+     * @param reference  the attribute of the static metamodel for the referring entity.
+     * @param valueField the attribute of the static metamodel of the referred entity.
+     * @param <OTHER>    The type of the referenced entity.
+     * @param <X>        The type of the attribute which is filtered.
+     * @return this compiler.
+     */
+    public <OTHER, X> PredicateCompiler<ENTITY> filter(Filter<X> filter,
+                                                       SetAttribute<? super ENTITY, OTHER> reference,
+                                                       SingularAttribute<OTHER, X> valueField) {
+        if (filter == null) {
+            return this;
+        }
+        if (filter.getEquals() != null) {
+            return collection(AttributeAccessors.getter(reference), AttributeAccessors.getter(valueField),
+                equalsCondition(filter.getEquals()));
+        } else if (filter.getSpecified() != null) {
+            return notEmpty(AttributeAccessors.getter(reference), filter.getSpecified());
+        }
+        return this;
+    }
+
+    /**
+     * Add a filter on a single {@link Comparable} field, where equality, less than, greater than and
+     * less-than-or-equal-to and greater-than-or-equal-to and null/non-null conditions are supported.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param field  the JPA static metamodel representing the field.
+     * @param <X>    The type of the attribute which is filtered.
+     * @return this compiler.
+     */
+    public <X extends Comparable<? super X>> PredicateCompiler<ENTITY> range(RangeFilter<X> filter,
+                                                                             SingularAttribute<? super ENTITY, X>
+                                                                                 field) {
+        return range(filter, AttributeAccessors.<ENTITY, X>getter(field));
+    }
+
+    /**
+     * Add a filter on a {@link Comparable} value read by a function, where equality, less than, greater than and
+     * less-than-or-equal-to and greater-than-or-equal-to and null/non-null conditions are supported.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param getter the function reading the value from the entity.
+     * @param <X>    The type of the value which is filtered.
+     * @return this compiler.
+     */
+    public <X extends Comparable<? super X>> PredicateCompiler<ENTITY> range(RangeFilter<X> filter,
+                                                                             Function<? super ENTITY, ? extends X>
+                                                                                 getter) {
+        RangeInterval<X> interval = RangeInterval.of(filter);
+        if (interval.isEmpty()) {
+            return none();
+        } else if (!interval.isUnrestricted()) {
+            conditions.add(entity -> interval.contains(getter.apply(entity)));
+        }
+        return this;
+    }
+
+    /**
+     * Add a filter on one-to-one or many-to-one reference, where equality, less than, greater than and
+     * less-than-or-equal-to and greater-than-or-equal-to and null/non-null conditions are supported.
+     *
+     * @param filter     the individual attribute filter coming from the frontend, may be null.
+     * @param reference  the attribute of the static metamodel for the referring entity.
+     * @param valueField the attribute of the static metamodel of the referred entity.
+     * @param <OTHER>    The type of the referenced entity.
+     * @param <X>        The type of the attribute which is filtered.
+     * @return this compiler.
+     */
+    public <OTHER, X extends Comparable<? super X>> PredicateCompiler<ENTITY> range(RangeFilter<X> filter,
+                                                                                    SingularAttribute<? super ENTITY,
+                                                                                        OTHER> reference,
+                                                                                    SingularAttribute<OTHER, X>
+                                                                                        valueField) {
+        RangeInterval<X> interval = RangeInterval.of(filter);
+        if (interval.isEmpty()) {
+            return none();
+        } else if (interval.getSpecified() != null) {
+            specified(AttributeAccessors.<ENTITY, OTHER>getter(reference), interval.getSpecified());
+        }
+        return reference(AttributeAccessors.getter(reference), AttributeAccessors.getter(valueField),
+            rangeCondition(interval));
+    }
+
+    /**
+     * Add a filter on one-to-many or many-to-many reference, where equality, less than, greater than and
+     * less-than-or-equal-to and greater-than-or-equal-to and emptiness conditions are supported. All the bounds must
+     * be matched by the same element of the collection.
+     *
+     * @param filter     the individual attribute filter coming from the frontend, may be null.
+     * @param reference  the attribute of the static metamodel for the referring entity.
+     * @param valueField the attribute of the static metamodel of the referred entity.
+     * @param <OTHER>    The type of the referenced entity.
+     * @param <X>        The type of the attribute which is filtered.
+     * @return this compiler.
+     */
+    public <OTHER, X extends Comparable<? super X>> PredicateCompiler<ENTITY> range(RangeFilter<X> filter,
+                                                                                    SetAttribute<? super ENTITY,
+                                                                                        OTHER> reference,
+                                                                                    SingularAttribute<OTHER, X>
+                                                                                        valueField) {
+        RangeInterval<X> interval = RangeInterval.of(filter);
+        if (interval.isEmpty()) {
+            return none();
+        } else if (interval.getSpecified() != null) {
+            notEmpty(AttributeAccessors.getter(reference), interval.getSpecified());
+        }
+        Predicate<X> condition = rangeCondition(interval);
+        if (condition != null) {
+            collection(AttributeAccessors.getter(reference), AttributeAccessors.getter(valueField), condition);
+        }
+        return this;
+    }
+
+    /**
+     * Add a filter on a {@link String} field, where equality, containment, prefix and null/non-null conditions are
+     * supported. Containment and prefix ignore the case.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param field  the JPA static metamodel representing the field.
+     * @return this compiler.
+     */
+    public PredicateCompiler<ENTITY> string(StringFilter filter, SingularAttribute<? super ENTITY, String> field) {
+        return string(filter, AttributeAccessors.<ENTITY, String>getter(field));
+    }
+
+    /**
+     * Add a filter on a {@link String} value read by a function, where equality, containment, prefix and
+     * null/non-null conditions are supported. Containment and prefix ignore the case.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param getter the function reading the value from the entity.
+     * @return this compiler.
+     */
+    public PredicateCompiler<ENTITY> string(StringFilter filter, Function<? super ENTITY, String> getter) {
+        if (filter == null) {
+            return this;
+        }
+        final Predicate<String> condition;
+        if (filter.getEquals() != null || filter.getIn() != null) {
+            condition = filterCondition(filter);
+        } else if (filter.getContains() != null) {
+            String text = filter.getContains();
+            condition = value -> value != null && containsIgnoreCase(value, text);
+        } else if (filter.getStartsWith() != null) {
+            String prefix = filter.getStartsWith();
+            condition = value -> value != null && value.regionMatches(true, 0, prefix, 0, prefix.length());
+        } else if (filter.getSpecified() != null) {
+            condition = specifiedCondition(filter.getSpecified());
+        } else {
+            return this;
+        }
+        conditions.add(entity -> condition.test(getter.apply(entity)));
+        return this;
+    }
+
+    /**
+     * Return the predicate matching the entities which match all the filters.
+     *
+     * @return the compiled predicate.
+     */
+    @SuppressWarnings("unchecked")
+    public Predicate<ENTITY> compile() {
+        final Predicate<? super ENTITY>[] predicates = conditions.toArray(new Predicate[0]);
+        return entity -> {
+            for (Predicate<? super ENTITY> predicate : predicates) {
+                if (!predicate.test(entity)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private <OTHER, X> PredicateCompiler<ENTITY> reference(Function<ENTITY, OTHER> reference,
+                                                           Function<OTHER, X> valueField, Predicate<X> condition) {
+        if (condition != null) {
+            // Like an inner join, a missing reference never matches
+            conditions.add(entity -> {
+                OTHER other = reference.apply(entity);
+                return other != null && condition.test(valueField.apply(other));
+            });
+        }
+        return this;
+    }
+
+    private <OTHER, X> PredicateCompiler<ENTITY> collection(Function<ENTITY, Collection<OTHER>> reference,
+                                                            Function<OTHER, X> valueField, Predicate<X> condition) {
+        conditions.add(entity -> {
+            Collection<OTHER> others = reference.apply(entity);
+            if (others == null || others.isEmpty()) {
+                // The most common case of a one-to-many, without allocating an iterator
+                return false;
+            }
+            for (OTHER other : others) {
+                if (condition.test(valueField.apply(other))) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        return this;
+    }
+
+    private PredicateCompiler<ENTITY> none() {
+        conditions.add(entity -> false);
+        return this;
+    }
+
+    private <X> PredicateCompiler<ENTITY> specified(Function<ENTITY, X> getter, boolean specified) {
+        conditions.add(entity -> (getter.apply(entity) != null) == specified);
+        return this;
+    }
+
+    private <OTHER> PredicateCompiler<ENTITY> notEmpty(Function<ENTITY, Collection<OTHER>> getter,
+                                                       boolean specified) {
+        conditions.add(entity -> {
+            Collection<OTHER> others = getter.apply(entity);
+            return (others != null && !others.isEmpty()) == specified;
+        });
+        return this;
+    }
+
+    private static <X> Predicate<X> filterCondition(Filter<X> filter) {
+        if (filter.getEquals() != null) {
+            return equalsCondition(filter.getEquals());
+        } else if (filter.getIn() != null) {
+            Set<X> values = new HashSet<>(filter.getIn());
+            values.remove(null);
+            if (!values.isEmpty() && values.iterator().next() instanceof BigDecimal) {
+                // Compared like the database, where 1.0 is in (1.00, 2.00)
+                Set<X> sorted = new TreeSet<>(values);
+                return value -> value != null && sorted.contains(value);
+            }
+            return value -> value != null && values.contains(value);
+        } else if (filter.getSpecified() != null) {
+            return specifiedCondition(filter.getSpecified());
+        }
+        return null;
+    }
+
+    /**
+     * Return the equality condition on a value, which compares the {@link BigDecimal}s like the database, where 1.0
+     * equals 1.00, unlike {@link BigDecimal#equals}.
+     */
+    private static <X> Predicate<X> equalsCondition(X value) {
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            return other -> other != null && decimal.compareTo((BigDecimal) other) == 0;
+        }
+        return value::equals;
+    }
+
+    /**
+     * Return the condition on the values of an interval, or null if it has no bound and no value.
+     */
+    private static <X extends Comparable<? super X>> Predicate<X> rangeCondition(RangeInterval<X> interval) {
+        if (interval.getValues() == null && interval.getLower() == null && interval.getUpper() == null) {
+            return null;
+        }
+        return interval::contains;
+    }
+
+    private static <X> Predicate<X> specifiedCondition(boolean specified) {
+        return specified ? value -> value != null : value -> value == null;
+    }
+
+    /**
+     * Case insensitive containment, without allocating upper case copies of the strings.
+     */
+    static boolean containsIgnoreCase(String value, String text) {
+        int length = text.length();
+        for (int i = value.length() - length; i >= 0; i--) {
+            if (value.regionMatches(true, i, text, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
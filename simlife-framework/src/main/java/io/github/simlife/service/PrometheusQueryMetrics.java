@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QueryMetrics} exported to Prometheus, with the histograms:
+ * <ul>
+ * <li><code>simlife_query_duration_seconds</code>, the execution times of the select and count queries, labeled
+ * with the entity, the shape and the type (<code>select</code> or <code>count</code>),</li>
+ * <li><code>simlife_query_rows</code>, the number of rows returned by the select queries, labeled with the entity and
+ * the shape.</li>
+ * </ul>
+ * The shapes are labeled with a short hash, logged with the full shape the first time it is seen, and at most
+ * {@link #MAX_SHAPES} shapes are labeled, the others are counted as <code>other</code>. The queries slower than the
+ * threshold are logged with their shape, at most once a minute per shape, to be explained on the database. Usage:
+ * <pre>
+ *   &#64;Bean
+ *   public QueryMetrics queryMetrics() {
+ *       return new PrometheusQueryMetrics(CollectorRegistry.defaultRegistry, 500);
+ *   }
+ * </pre>
+ */
+public class PrometheusQueryMetrics implements QueryMetrics {
+
+    /**
+     * Maximum number of shapes labeled in the metrics.
+     */
+    public static final int MAX_SHAPES = 500;
+
+    static final String OTHER_SHAPE = "other";
+
+    private static final long SLOW_LOG_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Logger log = LoggerFactory.getLogger(PrometheusQueryMetrics.class);
+
+    private final Histogram durations;
+
+    private final Histogram rows;
+
+    private final long slowQueryThresholdNanos;
+
+    private final Map<String, String> shapeIds = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> slowLogTimes = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry                 the registry of the histograms.
+     * @param slowQueryThresholdMillis the execution time over which a query is logged, in millis.
+     */
+    public PrometheusQueryMetrics(CollectorRegistry registry, long slowQueryThresholdMillis) {
+        this.durations = Histogram.build()
+            .name("simlife_query_duration_seconds")
+            .help("Execution time of the criteria queries, per shape")
+            .labelNames("entity", "shape", "type")
+            .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10)
+            .register(registry);
+        this.rows = Histogram.build()
+            .name("simlife_query_rows")
+            .help("Number of rows returned by the criteria queries, per shape")
+            .labelNames("entity", "shape")
+            .buckets(0, 1, 10, 100, 1_000, 10_000, 100_000)
+            .register(registry);
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+    }
+
+    @Override
+    public void recordQuery(Class<?> entityClass, String shape, long durationNanos, long rowCount) {
+        String shapeId = getShapeId(entityClass, shape);
+        durations.labels(entityClass.getSimpleName(), shapeId, "select").observe(durationNanos / 1e9);
+        rows.labels(entityClass.getSimpleName(), shapeId).observe(rowCount);
+        checkSlow(entityClass, shape, shapeId, durationNanos);
+    }
+
+    @Override
+    public void recordCount(Class<?> entityClass, String shape, long durationNanos) {
+        String shapeId = getShapeId(entityClass, shape);
+        durations.labels(entityClass.getSimpleName(), shapeId, "count").observe(durationNanos / 1e9);
+        checkSlow(entityClass, shape, shapeId, durationNanos);
+    }
+
+    /**
+     * Return the label of a shape, a short hash of the shape.
+     */
+    String getShapeId(Class<?> entityClass, String shape) {
+        String shapeId = shapeIds.get(shape);
+        if (shapeId != null) {
+            return shapeId;
+        } else if (shapeIds.size() >= MAX_SHAPES) {
+            return OTHER_SHAPE;
+        }
+        String computed = String.format("%08x", shape.hashCode());
+        if (shapeIds.putIfAbsent(shape, computed) == null) {
+            log.info("Query shape {} of {}: {}", computed, entityClass.getSimpleName(), shape);
+        }
+        return computed;
+    }
+
+    private void checkSlow(Class<?> entityClass, String shape, String shapeId, long durationNanos) {
+        if (durationNanos < slowQueryThresholdNanos) {
+            return;
+        }
+        long now = System.nanoTime();
+        Long last = slowLogTimes.get(shape);
+        if (last != null && now - last < SLOW_LOG_INTERVAL_NANOS || last == null && slowLogTimes.size() >= MAX_SHAPES) {
+            return;
+        }
+        if (last == null ? slowLogTimes.putIfAbsent(shape, now) == null : slowLogTimes.replace(shape, last, now)) {
+            log.warn("Slow query shape {} of {} took {} ms: {}", shapeId, entityClass.getSimpleName(),
+                TimeUnit.NANOSECONDS.toMillis(durationNanos), shape);
+        }
+    }
+}
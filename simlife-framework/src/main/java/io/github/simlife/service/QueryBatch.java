@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent queries together, like the 10 or 20 criteria queries of a dashboard, so the total latency is the
+ * one of the slowest query instead of the sum of all of them. The queries run concurrently on the application's
+ * task executor, each in its own read-only transaction, so on its own pooled connection; the first one runs in the
+ * calling thread. Usage:
+ * <pre>
+ *   QueryBatch batch = new QueryBatch(taskExecutor, transactionManager);
+ *   Supplier&lt;Page&lt;EmployeeDTO&gt;&gt; employees = batch.add(() -&gt; employeeQueryService.findByCriteria(c1, p1));
+ *   Supplier&lt;Long&gt; projects = batch.add(() -&gt; projectQueryService.countByCriteria(c2));
+ *   batch.execute();
+ *   return new DashboardDTO(employees.get(), projects.get());
+ * </pre>
+ * The results are read once their transaction is over, so they must not rely on lazy loading: DTOs, or entities whose
+ * needed associations are fetched. The first query to fail cancels the others, and its exception is rethrown by
+ * {@link #execute()}; the query of the calling thread is not interrupted, so {@link #execute()} returns once it is
+ * over. Thread-bound state, like the security context, is not propagated to the executor threads,
+ * unless the executor does it, like the <code>DelegatingSecurityContextAsyncTaskExecutor</code> of Spring Security.
+ * <p>
+ * Without task executor, the queries run one after the other in the calling thread, and without transaction manager,
+ * in the transaction of their thread, if any.
+ */
+public class QueryBatch {
+
+    private final AsyncTaskExecutor taskExecutor;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final List<Query<?>> queries = new ArrayList<>();
+
+    private boolean executed;
+
+    /**
+     * @param taskExecutor       the executor running the queries, may be null.
+     * @param transactionManager the transaction manager starting the read-only transactions, may be null.
+     */
+    public QueryBatch(AsyncTaskExecutor taskExecutor, PlatformTransactionManager transactionManager) {
+        this.taskExecutor = taskExecutor;
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Add a query to the batch.
+     *
+     * @param query the query.
+     * @param <T>   the type of the result.
+     * @return the result of the query, available once the batch is executed.
+     */
+    public <T> Supplier<T> add(Supplier<T> query) {
+        if (executed) {
+            throw new IllegalStateException("The batch has already been executed");
+        }
+        Query<T> result = new Query<>(query);
+        queries.add(result);
+        return result;
+    }
+
+    /**
+     * @return the number of queries in the batch.
+     */
+    public int size() {
+        return queries.size();
+    }
+
+    /**
+     * Run all the queries, and wait for their results.
+     */
+    public void execute() {
+        if (executed) {
+            throw new IllegalStateException("The batch has already been executed");
+        }
+        executed = true;
+        if (taskExecutor == null || queries.size() <= 1) {
+            queries.forEach(Query::run);
+            return;
+        }
+        BlockingQueue<Future<?>> completed = new LinkedBlockingQueue<>();
+        List<QueryTask> tasks = new ArrayList<>(queries.size());
+        for (Query<?> query : queries) {
+            tasks.add(new QueryTask(query, tasks, completed));
+        }
+        try {
+            for (QueryTask task : tasks.subList(1, tasks.size())) {
+                taskExecutor.execute(task);
+            }
+            tasks.get(0).run();
+            for (int i = 0; i < tasks.size(); i++) {
+                completed.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running the queries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Unable to run a query", e.getCause());
+        } finally {
+            tasks.get(0).cancelOthers();
+        }
+    }
+
+    private <T> T inReadOnlyTransaction(Supplier<T> query) {
+        if (transactionManager == null) {
+            return query.get();
+        }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+        return template.execute(status -> query.get());
+    }
+
+    /**
+     * A query of a running batch, queued in <code>completed</code> once done, so the results are checked in the order
+     * in which the queries complete. A failure cancels the other queries run by the executor; the one of the calling
+     * thread is not interrupted.
+     */
+    private static final class QueryTask extends FutureTask<Void> {
+
+        private final List<QueryTask> tasks;
+
+        private final BlockingQueue<Future<?>> completed;
+
+        private QueryTask(Query<?> query, List<QueryTask> tasks, BlockingQueue<Future<?>> completed) {
+            super(query::run, null);
+            this.tasks = tasks;
+            this.completed = completed;
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            super.setException(t);
+            cancelOthers();
+        }
+
+        @Override
+        protected void done() {
+            completed.add(this);
+        }
+
+        private void cancelOthers() {
+            for (QueryTask task : tasks.subList(1, tasks.size())) {
+                if (task != this) {
+                    task.cancel(true);
+                }
+            }
+        }
+    }
+
+    private final class Query<T> implements Supplier<T> {
+
+        private final Supplier<T> query;
+
+        private volatile T result;
+
+        private Query(Supplier<T> query) {
+            this.query = query;
+        }
+
+        private void run() {
+            result = inReadOnlyTransaction(query);
+        }
+
+        @Override
+        public T get() {
+            if (!executed) {
+                throw new IllegalStateException("The batch has not been executed");
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Receives the execution times of the queries run by {@link QueryService}, keyed by the shape of their criteria: the
+ * queried entity and the conditions which are set, without their values. It tells which combinations of filters
+ * are slow, see {@link PrometheusQueryMetrics}.
+ * <p>
+ * The shape of a {@link QueryTemplate} is its {@link QueryTemplate#getShape() own shape}; the shape of a
+ * specification is its JPQL, where the literals and the parameters are replaced by <code>?</code>, and the lists of
+ * parameters by <code>(?...)</code>.
+ */
+public interface QueryMetrics {
+
+    /**
+     * Record the execution of a select query.
+     *
+     * @param entityClass   the queried entity.
+     * @param shape         the shape of the query.
+     * @param durationNanos the execution time, including the fetch of the rows.
+     * @param rows          the number of rows returned.
+     */
+    void recordQuery(Class<?> entityClass, String shape, long durationNanos, long rows);
+
+    /**
+     * Record the execution of a count query.
+     *
+     * @param entityClass   the queried entity.
+     * @param shape         the shape of the counted query.
+     * @param durationNanos the execution time.
+     */
+    void recordCount(Class<?> entityClass, String shape, long durationNanos);
+
+    /**
+     * Return the shape of a JPQL query: its text, without the values of the literals and the parameters.
+     *
+     * @param jpql the JPQL, as rendered by Hibernate from a criteria query.
+     * @return the shape.
+     */
+    static String shapeOf(String jpql) {
+        String shape = Shapes.STRING_LITERAL.matcher(jpql).replaceAll("?");
+        shape = Shapes.NUMERIC_LITERAL.matcher(shape).replaceAll("?");
+        shape = Shapes.PARAMETER.matcher(shape).replaceAll("?");
+        return Shapes.PARAMETER_LIST.matcher(shape).replaceAll("(?...)");
+    }
+
+    /**
+     * The patterns of the values within the JPQL.
+     */
+    final class Shapes {
+
+        private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+        private static final Pattern NUMERIC_LITERAL = Pattern.compile("(?<![\\w.:])-?\\d+(?:\\.\\d+)?[LDF]?(?!\\w)");
+        private static final Pattern PARAMETER = Pattern.compile(":\\w+|\\?\\d*");
+        private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+        private Shapes() {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Cache of query results, split in one region per queried entity, which is cleared when an entity of that type is
+ * modified. Used by {@link QueryService#cached(String, Supplier, Object...)}.
+ *
+ * @see JCacheQueryResultCache
+ * @see QueryResultCacheInvalidator
+ */
+public interface QueryResultCache {
+
+    /**
+     * Return the cached result for a key, or load and cache it.
+     *
+     * @param entityClass the class of the queried entity, which selects the region.
+     * @param key         the key of the result, which must implement <code>equals</code> and <code>hashCode</code>,
+     *                    and be serializable for a distributed cache.
+     * @param loader      the loader of the result, called on a cache miss.
+     * @param <T>         the type of the result.
+     * @return the result.
+     */
+    <T> T get(Class<?> entityClass, Object key, Supplier<T> loader);
+
+    /**
+     * Clear the results of the queries depending on an entity, after it has been modified.
+     *
+     * @param entityClass the class of the modified entity.
+     */
+    void invalidate(Class<?> entityClass);
+}
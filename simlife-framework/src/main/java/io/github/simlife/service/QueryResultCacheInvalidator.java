@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Hibernate listener clearing a {@link QueryResultCache} once the modifications of an entity are committed. The
+ * changes of collections (like a many-to-many association) clear the results of their owner entity, also after the
+ * commit. Bulk JPQL updates and native queries are not seen, and must be followed by an explicit
+ * {@link QueryResultCache#invalidate(Class)}.
+ * <p>
+ * It is registered with:
+ * <pre>
+ *   &#64;Bean
+ *   public QueryResultCache queryResultCache(javax.cache.CacheManager cacheManager, EntityManagerFactory emf) {
+ *       QueryResultCache cache = new JCacheQueryResultCache(cacheManager);
+ *       QueryResultCacheInvalidator.register(emf, cache);
+ *       return cache;
+ *   }
+ * </pre>
+ */
+@SuppressWarnings("serial")
+public class QueryResultCacheInvalidator implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+    PostCommitDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+    PostCollectionRemoveEventListener {
+
+    private final transient QueryResultCache cache;
+
+    public QueryResultCacheInvalidator(QueryResultCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Register a new invalidator of the cache in the event listeners of the Hibernate session factory.
+     *
+     * @param entityManagerFactory the entity manager factory, backed by Hibernate.
+     * @param cache                the cache to clear.
+     * @return the registered invalidator.
+     */
+    public static QueryResultCacheInvalidator register(EntityManagerFactory entityManagerFactory,
+                                                       QueryResultCache cache) {
+        QueryResultCacheInvalidator invalidator = new QueryResultCacheInvalidator(cache);
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, invalidator);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, invalidator);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, invalidator);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, invalidator);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, invalidator);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, invalidator);
+        return invalidator;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        cache.invalidate(event.getPersister().getMappedClass());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        cache.invalidate(event.getPersister().getMappedClass());
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        cache.invalidate(event.getPersister().getMappedClass());
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return true;
+    }
+
+    /**
+     * Still abstract in Hibernate 5.2, which only calls {@link #requiresPostCommitHandling(EntityPersister)}.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        invalidateAfterCommit(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        invalidateAfterCommit(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        invalidateAfterCommit(event);
+    }
+
+    private void invalidateAfterCommit(AbstractCollectionEvent event) {
+        Object owner = event.getAffectedOwnerOrNull();
+        if (owner == null) {
+            return;
+        }
+        Class<?> ownerClass = event.getSession().getEntityPersister(event.getAffectedOwnerEntityName(), owner)
+            .getMappedClass();
+        event.getSession().getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, session) -> {
+            if (success) {
+                cache.invalidate(ownerClass);
+            }
+        });
+    }
+}
@@ -20,16 +20,82 @@
 package io.github.simlife.service;
 
 import io.github.simlife.service.filter.Filter;
+import io.github.simlife.service.filter.InstantFilter;
+import io.github.simlife.service.filter.LongFilter;
 import io.github.simlife.service.filter.RangeFilter;
+import io.github.simlife.service.filter.RangeInterval;
 import io.github.simlife.service.filter.StringFilter;
+import io.github.simlife.service.filter.ZonedDateTimeFilter;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.internal.AbstractProducedQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.Parameter;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaBuilder.In;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.criteria.SetJoin;
+import javax.persistence.criteria.Subquery;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
 import javax.persistence.metamodel.SetAttribute;
 import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Base service for constructing and executing complex queries.
@@ -39,6 +105,153 @@ import java.util.Collection;
 @Transactional(readOnly = true)
 public abstract class QueryService<ENTITY> {
 
+    /**
+     * Upper bound of the JPQL queries cached per service, to protect against an unbounded number of query shapes.
+     */
+    private static final int MAX_CACHED_QUERY_SHAPES = 512;
+
+    /**
+     * Upper bound of the estimated counts cached per service, as every distinct filter value is a different entry.
+     */
+    private static final int MAX_ESTIMATED_COUNTS = 10_000;
+
+    /**
+     * Default number of rows fetched per round trip when streaming, which is also the number of entities kept in the
+     * persistence context.
+     */
+    public static final int DEFAULT_STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Default time during which the result of a count query is reused by {@link CountMode#ESTIMATED}, in millis.
+     */
+    public static final long DEFAULT_ESTIMATED_COUNT_TTL_MILLIS = 60_000L;
+
+    private final Logger log = LoggerFactory.getLogger(QueryService.class);
+
+    private final Map<String, String> queryShapeCache = new ConcurrentHashMap<>();
+
+    private EntityManager entityManager;
+
+    private Class<ENTITY> entityClass;
+
+    private Boolean arrayInListSupported;
+
+    private QueryResultCache queryResultCache;
+
+    private final EstimatedCountCache estimatedCounts = new EstimatedCountCache(MAX_ESTIMATED_COUNTS);
+
+    private AsyncTaskExecutor taskExecutor;
+
+    private PlatformTransactionManager transactionManager;
+
+    private QueryMetrics queryMetrics;
+
+    /**
+     * The entity manager is only needed by the methods which execute queries themselves, like
+     * {@link #findAllByKeyset}; the specification builders work without it.
+     *
+     * @param entityManager the shared entity manager.
+     */
+    @PersistenceContext
+    public void setEntityManager(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    protected EntityManager getEntityManager() {
+        if (entityManager == null) {
+            throw new IllegalStateException("No EntityManager has been set on " + getClass().getName());
+        }
+        return entityManager;
+    }
+
+    /**
+     * Set the cache used by {@link #cached(String, Supplier, Object...)}. Without cache, the results are always loaded.
+     *
+     * @param queryResultCache the query result cache.
+     */
+    @Autowired(required = false)
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    /**
+     * Set the executor running the partitions of {@link #streamAllPartitioned}, the application's
+     * <code>taskExecutor</code>. Without executor, the partitions are streamed one after the other.
+     *
+     * @param taskExecutor the async task executor.
+     */
+    @Autowired(required = false)
+    @Qualifier("taskExecutor")
+    public void setTaskExecutor(AsyncTaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Set the transaction manager starting the read-only transactions of the partitions of
+     * {@link #streamAllPartitioned}. Without transaction manager, the partitions are streamed one after the other.
+     *
+     * @param transactionManager the transaction manager.
+     */
+    @Autowired(required = false)
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Set the receiver of the execution times of the queries, keyed by their shape. Without it, nothing is measured.
+     *
+     * @param queryMetrics the query metrics.
+     */
+    @Autowired(required = false)
+    public void setQueryMetrics(QueryMetrics queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
+
+    /**
+     * Return the result of a query from the {@link QueryResultCache}, or load it. The results are cleared when an
+     * entity of the queried type is modified, so they should be immutable values like DTOs. Usage:
+     * <pre>
+     *   public Page&lt;EmployeeDTO&gt; findByCriteria(EmployeeCriteria criteria, Pageable page) {
+     *       return cached("findByCriteria", () -&gt; findAll(createSpecification(criteria), page).map(mapper::toDto),
+     *           criteria, page);
+     *   }
+     * </pre>
+     *
+     * @param query  the name of the query, unique in this service.
+     * @param loader the loader of the result, called on a cache miss.
+     * @param key    the parameters of the query, typically the criteria and the page, which must implement
+     *               <code>equals</code> and <code>hashCode</code>.
+     * @param <T>    the type of the result.
+     * @return the result.
+     */
+    protected <T> T cached(String query, Supplier<T> loader, Object... key) {
+        if (queryResultCache == null) {
+            return loader.get();
+        }
+        List<Object> cacheKey = new ArrayList<>(key.length + 1);
+        cacheKey.add(getClass().getName() + '#' + query);
+        cacheKey.addAll(Arrays.asList(key));
+        return queryResultCache.get(getEntityClass(), cacheKey, loader);
+    }
+
+    /**
+     * Return the queried entity type, resolved from the type parameter of the concrete subclass. Override it if the
+     * type parameter cannot be resolved, for example for generic subclasses.
+     *
+     * @return the class of the entity which is queried.
+     */
+    @SuppressWarnings("unchecked")
+    protected Class<ENTITY> getEntityClass() {
+        if (entityClass == null) {
+            Class<?> resolved = GenericTypeResolver.resolveTypeArgument(getClass(), QueryService.class);
+            if (resolved == null) {
+                throw new IllegalStateException("Unable to resolve the entity type of " + getClass().getName());
+            }
+            entityClass = (Class<ENTITY>) resolved;
+        }
+        return entityClass;
+    }
+
     /**
      * Helper function to return a specification for filtering on a single field, where equality, and null/non-null
      * conditions are supported.
@@ -62,7 +275,8 @@ public abstract class QueryService<ENTITY> {
 
     /**
      * Helper function to return a specification for filtering on a {@link String} field, where equality, containment,
-     * and null/non-null conditions are supported.
+     * prefix and null/non-null conditions are supported. Containment is rendered by the
+     * {@link #getTextMatchStrategy() text match strategy}.
      *
      * @param filter the individual attribute filter coming from the frontend.
      * @param field  the JPA static metamodel representing the field.
@@ -75,7 +289,9 @@ public abstract class QueryService<ENTITY> {
         } else if (filter.getIn() != null) {
             return valueIn(field, filter.getIn());
         } else if (filter.getContains() != null) {
-            return likeUpperSpecification(field, filter.getContains());
+            return containsSpecification(field, filter.getContains());
+        } else if (filter.getStartsWith() != null) {
+            return startsWithSpecification(field, filter.getStartsWith());
         } else if (filter.getSpecified() != null) {
             return byFieldSpecified(field, filter.getSpecified());
         }
@@ -85,7 +301,8 @@ public abstract class QueryService<ENTITY> {
     /**
      * Helper function to return a specification for filtering on a single {@link Comparable}, where equality, less
      * than, greater than and less-than-or-equal-to and greater-than-or-equal-to and null/non-null conditions are
-     * supported.
+     * supported. The conditions are first normalized into a {@link RangeInterval}, so redundant bounds are dropped, and
+     * contradictory conditions produce a specification matching nothing, see {@link #isProvablyEmpty(Specification)}.
      *
      * @param filter the individual attribute filter coming from the frontend.
      * @param field  the JPA static metamodel representing the field.
@@ -94,27 +311,104 @@ public abstract class QueryService<ENTITY> {
      */
     protected <X extends Comparable<? super X>> Specification<ENTITY> buildRangeSpecification(RangeFilter<X> filter,
         SingularAttribute<? super ENTITY, X> field) {
-        if (filter.getEquals() != null) {
-            return equalsSpecification(field, filter.getEquals());
-        } else if (filter.getIn() != null) {
-            return valueIn(field, filter.getIn());
+        return buildIntervalSpecification(RangeInterval.of(filter), field, false);
+    }
+
+    /**
+     * Helper function to return a specification for filtering on an {@link Instant} field, like
+     * {@link #buildRangeSpecification(RangeFilter, SingularAttribute)}, but friendly to the tables partitioned by time
+     * ranges: an <code>in</code> list is also bounded by its minimum and maximum values, so the planner can prune the
+     * partitions, and if {@link #getMaximumTimeWindow()} is set, a filter without lower bound, including no filter at
+     * all, is restricted to that window before its upper bound or now.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param field  the JPA static metamodel representing the field.
+     * @return a Specification
+     */
+    protected Specification<ENTITY> buildTimeRangeSpecification(InstantFilter filter,
+        SingularAttribute<? super ENTITY, Instant> field) {
+        RangeInterval<Instant> interval = RangeInterval.of(filter);
+        Duration window = getMaximumTimeWindow();
+        if (window != null) {
+            Instant end = interval.getUpper() != null ? interval.getUpper() : getClock().instant();
+            interval = interval.withDefaultLower(end.minus(window));
         }
+        return buildIntervalSpecification(interval, field, true);
+    }
 
-        Specification<ENTITY> result = Specification.where(null);
-        if (filter.getSpecified() != null) {
-            result = result.and(byFieldSpecified(field, filter.getSpecified()));
+    /**
+     * Helper function to return a specification for filtering on a {@link ZonedDateTime} field, like
+     * {@link #buildTimeRangeSpecification(InstantFilter, SingularAttribute)}. The values are first converted to UTC,
+     * so the values of different zones which denote the same instant are merged, and all the bound parameters share
+     * the same offset.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param field  the JPA static metamodel representing the field.
+     * @return a Specification
+     */
+    protected Specification<ENTITY> buildTimeRangeSpecification(ZonedDateTimeFilter filter,
+        SingularAttribute<? super ENTITY, ZonedDateTime> field) {
+        RangeInterval<ZonedDateTime> interval = RangeInterval.of(filter == null ? null :
+            filter.withZoneSameInstant(ZoneOffset.UTC));
+        Duration window = getMaximumTimeWindow();
+        if (window != null) {
+            Instant end = interval.getUpper() != null ? interval.getUpper().toInstant() : getClock().instant();
+            interval = interval.withDefaultLower(ZonedDateTime.ofInstant(end.minus(window), ZoneOffset.UTC));
         }
-        if (filter.getGreaterThan() != null) {
-            result = result.and(greaterThan(field, filter.getGreaterThan()));
+        return buildIntervalSpecification(interval, field, true);
+    }
+
+    /**
+     * Return the maximum time range queried by {@link #buildTimeRangeSpecification(InstantFilter, SingularAttribute)}
+     * when the filter has no lower bound. Defaults to null, for no limit.
+     *
+     * @return the maximum time window, or null.
+     */
+    protected Duration getMaximumTimeWindow() {
+        return null;
+    }
+
+    /**
+     * Return the clock giving the end of the {@link #getMaximumTimeWindow() maximum time window} of the filters
+     * without upper bound. Defaults to the UTC system clock.
+     *
+     * @return the clock.
+     */
+    protected Clock getClock() {
+        return Clock.systemUTC();
+    }
+
+    /**
+     * Return a specification for a normalized interval, where the values are also bounded by their minimum and
+     * maximum if <code>boundValues</code> is true.
+     */
+    private <X extends Comparable<? super X>> Specification<ENTITY> buildIntervalSpecification(
+        RangeInterval<X> interval, SingularAttribute<? super ENTITY, X> field, boolean boundValues) {
+        if (interval.isEmpty()) {
+            return matchNoneSpecification();
+        } else if (interval.getValues() != null) {
+            List<X> values = interval.getValues();
+            if (values.size() == 1) {
+                return equalsSpecification(field, values.get(0));
+            } else if (boundValues) {
+                return greaterThanOrEqualTo(field, values.get(0))
+                    .and(lessThanOrEqualTo(field, values.get(values.size() - 1)))
+                    .and(valueIn(field, values));
+            }
+            return valueIn(field, values);
         }
-        if (filter.getGreaterOrEqualThan() != null) {
-            result = result.and(greaterThanOrEqualTo(field, filter.getGreaterOrEqualThan()));
+
+        Specification<ENTITY> result = Specification.where(null);
+        if (interval.getSpecified() != null) {
+            result = result.and(byFieldSpecified(field, interval.getSpecified()));
         }
-        if (filter.getLessThan() != null) {
-            result = result.and(lessThan(field, filter.getLessThan()));
+        if (interval.getLower() != null) {
+            result = result.and(interval.isLowerInclusive() ? greaterThanOrEqualTo(field, interval.getLower()) :
+                greaterThan(field, interval.getLower()));
         }
-        if (filter.getLessOrEqualThan() != null) {
-            result = result.and(lessThanOrEqualTo(field, filter.getLessOrEqualThan()));
+        if (interval.getUpper() != null) {
+            result = result.and(interval.isUpperInclusive() ? lessThanOrEqualTo(field, interval.getUpper()) :
+                lessThan(field, interval.getUpper()));
         }
         return result;
     }
@@ -173,26 +467,27 @@ public abstract class QueryService<ENTITY> {
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> buildReferringEntitySpecification(final RangeFilter<X> filter,
                                                                                                                final SingularAttribute<? super ENTITY, OTHER> reference,
                                                                                                                final SingularAttribute<OTHER, X> valueField) {
-        if (filter.getEquals() != null) {
-            return equalsSpecification(reference, valueField, filter.getEquals());
-        } else if (filter.getIn() != null) {
-            return valueIn(reference, valueField, filter.getIn());
+        RangeInterval<X> interval = RangeInterval.of(filter);
+        if (interval.isEmpty()) {
+            return matchNoneSpecification();
+        } else if (interval.getValues() != null) {
+            List<X> values = interval.getValues();
+            return values.size() == 1 ? equalsSpecification(reference, valueField, values.get(0)) :
+                valueIn(reference, valueField, values);
         }
         Specification<ENTITY> result = Specification.where(null);
-        if (filter.getSpecified() != null) {
-            result = result.and(byFieldSpecified(reference, filter.getSpecified()));
+        if (interval.getSpecified() != null) {
+            result = result.and(byFieldSpecified(reference, interval.getSpecified()));
         }
-        if (filter.getGreaterThan() != null) {
-            result = result.and(greaterThan(reference, valueField, filter.getGreaterThan()));
+        if (interval.getLower() != null) {
+            result = result.and(interval.isLowerInclusive() ?
+                greaterThanOrEqualTo(reference, valueField, interval.getLower()) :
+                greaterThan(reference, valueField, interval.getLower()));
         }
-        if (filter.getGreaterOrEqualThan() != null) {
-            result = result.and(greaterThanOrEqualTo(reference, valueField, filter.getGreaterOrEqualThan()));
-        }
-        if (filter.getLessThan() != null) {
-            result = result.and(lessThan(reference, valueField, filter.getLessThan()));
-        }
-        if (filter.getLessOrEqualThan() != null) {
-            result = result.and(lessThanOrEqualTo(reference, valueField, filter.getLessOrEqualThan()));
+        if (interval.getUpper() != null) {
+            result = result.and(interval.isUpperInclusive() ?
+                lessThanOrEqualTo(reference, valueField, interval.getUpper()) :
+                lessThan(reference, valueField, interval.getUpper()));
         }
         return result;
     }
@@ -249,30 +544,813 @@ public abstract class QueryService<ENTITY> {
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> buildReferringEntitySpecification(final RangeFilter<X> filter,
                                                                                                                final SetAttribute<ENTITY, OTHER> reference,
                                                                                                                final SingularAttribute<OTHER, X> valueField) {
-        if (filter.getEquals() != null) {
-            return equalsSetSpecification(reference, valueField, filter.getEquals());
-        } else if (filter.getIn() != null) {
-            return valueIn(reference, valueField, filter.getIn());
+        RangeInterval<X> interval = RangeInterval.of(filter);
+        if (interval.isEmpty()) {
+            return matchNoneSpecification();
+        } else if (interval.getValues() != null) {
+            List<X> values = interval.getValues();
+            return values.size() == 1 ? equalsSetSpecification(reference, valueField, values.get(0)) :
+                valueIn(reference, valueField, values);
         }
         Specification<ENTITY> result = Specification.where(null);
-        if (filter.getSpecified() != null) {
-            result = result.and(byFieldSpecified(reference, filter.getSpecified()));
+        if (interval.getSpecified() != null) {
+            result = result.and(byFieldSpecified(reference, interval.getSpecified()));
+        }
+        X lower = interval.getLower();
+        X upper = interval.getUpper();
+        if (lower == null && upper == null) {
+            return result;
+        }
+        // All the bounds apply to the same element of the collection, through a single join or subquery
+        return result.and(collectionSpecification(reference, (join, builder) -> {
+            List<Predicate> predicates = new ArrayList<>(2);
+            if (lower != null) {
+                predicates.add(interval.isLowerInclusive() ? builder.greaterThanOrEqualTo(join.get(valueField), lower) :
+                    builder.greaterThan(join.get(valueField), lower));
+            }
+            if (upper != null) {
+                predicates.add(interval.isUpperInclusive() ? builder.lessThanOrEqualTo(join.get(valueField), upper) :
+                    builder.lessThan(join.get(valueField), upper));
+            }
+            return builder.and(predicates.toArray(new Predicate[0]));
+        }));
+    }
+
+    /**
+     * Helper function to return a seek specification for keyset pagination, which selects the rows after the given
+     * cursor in the <code>(sortField, idField)</code> order, ie. <code>(sortCol, id) &gt; (?, ?)</code> in ascending
+     * direction. It should be combined with the specification built from the criteria. Usage:
+     * <pre>
+     *   Specification&lt;Employee&gt; spec = createSpecification(criteria)
+     *     .and(buildKeysetSpecification(cursor, Sort.Direction.ASC, Employee_.hireDate, Employee_.id));
+     * </pre>
+     * The sort attribute must not be nullable, as null values can not be compared.
+     *
+     * @param cursor    the cursor coming from the frontend, may be null for the first slice.
+     * @param direction the direction of the sort, both attributes are sorted in the same direction.
+     * @param sortField the JPA static metamodel of the sort key, or null to seek on the id only.
+     * @param idField   the JPA static metamodel of the unique tie breaker, usually the id.
+     * @param <S>       The type of the sort key.
+     * @param <I>       The type of the id.
+     * @return a Specification, or null if there is no cursor.
+     */
+    protected <S extends Comparable<? super S>, I extends Comparable<? super I>> Specification<ENTITY>
+    buildKeysetSpecification(KeysetCursor cursor, Sort.Direction direction,
+                             SingularAttribute<? super ENTITY, S> sortField,
+                             SingularAttribute<? super ENTITY, I> idField) {
+        if (cursor == null) {
+            return null;
+        }
+        final I id = cursor.getId(idField.getJavaType());
+        final Specification<ENTITY> afterId = direction.isAscending() ? greaterThan(idField, id) : lessThan(idField,
+            id);
+        if (sortField == null || !cursor.hasSortValue()) {
+            return afterId;
+        }
+        final S sortValue = cursor.getSortValue(sortField.getJavaType());
+        final Specification<ENTITY> afterSortValue = direction.isAscending() ? greaterThan(sortField, sortValue) :
+            lessThan(sortField, sortValue);
+        return Specification.where(afterSortValue).or(equalsSpecification(sortField, sortValue).and(afterId));
+    }
+
+    /**
+     * Execute a keyset paginated query: instead of skipping the rows of the previous pages, the database seeks
+     * directly after the given cursor, so fetching a deep slice costs the same as fetching the first one. One more row
+     * than requested is fetched to find out whether a following slice exists.
+     *
+     * @param specification the specification built from the criteria, may be null.
+     * @param cursor        the cursor coming from the frontend, null for the first slice.
+     * @param size          the maximum number of entities in the slice.
+     * @param direction     the direction of the sort.
+     * @param sortField     the JPA static metamodel of the sort key, or null to sort on the id only.
+     * @param idField       the JPA static metamodel of the unique tie breaker, usually the id.
+     * @param <S>           The type of the sort key.
+     * @param <I>           The type of the id.
+     * @return the slice, holding the cursor of the next one.
+     */
+    protected <S extends Comparable<? super S>, I extends Comparable<? super I>> KeysetSlice<ENTITY> findAllByKeyset(
+        Specification<ENTITY> specification, KeysetCursor cursor, int size, Sort.Direction direction,
+        SingularAttribute<? super ENTITY, S> sortField, SingularAttribute<? super ENTITY, I> idField) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The size of a slice must be positive");
         }
-        if (filter.getGreaterThan() != null) {
-            result = result.and(greaterThan(reference, valueField, filter.getGreaterThan()));
+        EntityManager em = getEntityManager();
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<ENTITY> query = builder.createQuery(getEntityClass());
+        Root<ENTITY> root = query.from(getEntityClass());
+        Predicate predicate = Specification.where(specification)
+            .and(buildKeysetSpecification(cursor, direction, sortField, idField))
+            .toPredicate(root, query, builder);
+        if (isAlwaysFalse(predicate)) {
+            return new KeysetSlice<>(Collections.emptyList(), null);
+        } else if (predicate != null) {
+            query.where(predicate);
         }
-        if (filter.getGreaterOrEqualThan() != null) {
-            result = result.and(greaterThanOrEqualTo(reference, valueField, filter.getGreaterOrEqualThan()));
+        List<Order> orders = new ArrayList<>();
+        if (sortField != null) {
+            orders.add(direction.isAscending() ? builder.asc(root.get(sortField)) : builder.desc(root.get(sortField)));
         }
-        if (filter.getLessThan() != null) {
-            result = result.and(lessThan(reference, valueField, filter.getLessThan()));
+        orders.add(direction.isAscending() ? builder.asc(root.get(idField)) : builder.desc(root.get(idField)));
+        query.orderBy(orders);
+
+        List<ENTITY> content = getResultList(em.createQuery(query).setMaxResults(size + 1), null);
+        if (content.size() <= size) {
+            return new KeysetSlice<>(content, null);
         }
-        if (filter.getLessOrEqualThan() != null) {
-            result = result.and(lessThanOrEqualTo(reference, valueField, filter.getLessOrEqualThan()));
+        content = new ArrayList<>(content.subList(0, size));
+        ENTITY last = content.get(size - 1);
+        Object sortValue = sortField != null ? getAttributeValue(last, sortField) : null;
+        return new KeysetSlice<>(content, KeysetCursor.of(sortValue, getAttributeValue(last, idField)));
+    }
+
+    /**
+     * Create an empty template, to be filled with the filters of a criteria object, and executed with
+     * {@link #findAll(QueryTemplate, Pageable)}.
+     *
+     * @return a new template for the queried entity.
+     */
+    protected QueryTemplate<ENTITY> queryTemplate() {
+        return new QueryTemplate<>(getEntityClass(), isArrayInListSupported(), getTextMatchStrategy());
+    }
+
+    /**
+     * Execute a template query. The JPQL is rendered only once for each shape of the template, and later executions
+     * only bind the values.
+     *
+     * @param template the template holding the filters.
+     * @param sort     the sort order of the result.
+     * @return the matching entities.
+     */
+    protected List<ENTITY> findAll(QueryTemplate<ENTITY> template, Sort sort) {
+        if (template.isEmpty()) {
+            return Collections.emptyList();
         }
+        return getResultList(createQuery(template, sort), template.getShape());
+    }
+
+    /**
+     * Execute a template query for a page. The JPQL of both the page and the count queries are rendered only once for
+     * each shape of the template, and the count query is skipped when the page is the last one.
+     *
+     * @param template the template holding the filters.
+     * @param pageable the requested page.
+     * @return the page of matching entities.
+     */
+    protected Page<ENTITY> findAll(QueryTemplate<ENTITY> template, Pageable pageable) {
+        if (template.isEmpty()) {
+            return Page.empty(pageable);
+        } else if (pageable.isUnpaged()) {
+            return new PageImpl<>(findAll(template, pageable.getSort()));
+        }
+        TypedQuery<ENTITY> query = createQuery(template, pageable.getSort());
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize());
+        return PageableExecutionUtils.getPage(getResultList(query, template.getShape()), pageable,
+            () -> count(template));
+    }
+
+    /**
+     * Count the entities matching a template query.
+     *
+     * @param template the template holding the filters.
+     * @return the number of matching entities.
+     */
+    protected long count(QueryTemplate<ENTITY> template) {
+        if (template.isEmpty()) {
+            return 0;
+        }
+        String jpql = getCachedJpql(template.getShape() + "#count", () -> {
+            CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+            CriteriaQuery<Long> query = builder.createQuery(Long.class);
+            Root<ENTITY> root = query.from(getEntityClass());
+            return query.select(builder.count(root)).where(template.toPredicate(root, builder));
+        });
+        TypedQuery<Long> query = getEntityManager().createQuery(jpql, Long.class);
+        template.bind(query);
+        return getCount(query, template.getShape());
+    }
+
+    private TypedQuery<ENTITY> createQuery(QueryTemplate<ENTITY> template, Sort sort) {
+        String jpql = getCachedJpql(template.getShape() + "#" + sort, () -> {
+            CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+            CriteriaQuery<ENTITY> query = builder.createQuery(getEntityClass());
+            Root<ENTITY> root = query.from(getEntityClass());
+            return query.select(root)
+                .where(template.toPredicate(root, builder))
+                .orderBy(QueryUtils.toOrders(sort, root, builder));
+        });
+        TypedQuery<ENTITY> query = getEntityManager().createQuery(jpql, getEntityClass());
+        template.bind(query);
+        return query;
+    }
+
+    private String getCachedJpql(String key, Supplier<CriteriaQuery<?>> criteria) {
+        String jpql = queryShapeCache.get(key);
+        if (jpql == null) {
+            jpql = getEntityManager().createQuery(criteria.get())
+                .unwrap(org.hibernate.query.Query.class)
+                .getQueryString();
+            if (queryShapeCache.size() < MAX_CACHED_QUERY_SHAPES) {
+                queryShapeCache.putIfAbsent(key, jpql);
+            }
+        }
+        return jpql;
+    }
+
+    /**
+     * Stream the entities matching the specification through a forward-only database cursor, for exports over large
+     * results. Rows are fetched {@link #DEFAULT_STREAM_FETCH_SIZE} at a time, and the persistence context is cleared
+     * after every batch, so the heap usage does not depend on the size of the result.
+     *
+     * @param specification the specification built from the criteria, may be null.
+     * @param sort          the sort order of the result.
+     * @param consumer      the consumer of every entity, which are detached once the following batch is fetched.
+     * @return the number of streamed entities.
+     * @see #streamAll(Specification, Sort, int)
+     */
+    protected long streamAll(Specification<ENTITY> specification, Sort sort, Consumer<? super ENTITY> consumer) {
+        long count = 0;
+        try (Stream<ENTITY> stream = streamAll(specification, sort, DEFAULT_STREAM_FETCH_SIZE)) {
+            Iterator<ENTITY> entities = stream.iterator();
+            while (entities.hasNext()) {
+                consumer.accept(entities.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return a stream of the entities matching the specification, read through a forward-only, read-only database
+     * cursor. The persistence context is cleared every <code>fetchSize</code> entities: the entities of previous
+     * batches become detached, and so do any other entities loaded in the same persistence context.
+     * <p>
+     * The stream must be consumed within the current transaction, and closed afterwards to release the cursor,
+     * preferably with a try-with-resources block. With MySQL, <code>Integer.MIN_VALUE</code> must be used as fetch
+     * size to get a streaming result set.
+     *
+     * @param specification the specification built from the criteria, may be null.
+     * @param sort          the sort order of the result.
+     * @param fetchSize     the number of rows fetched per round trip, and kept in the persistence context.
+     * @return the stream of entities.
+     */
+    @SuppressWarnings("unchecked")
+    protected Stream<ENTITY> streamAll(Specification<ENTITY> specification, Sort sort, int fetchSize) {
+        final EntityManager em = getEntityManager();
+        final int batchSize = fetchSize > 0 ? fetchSize : DEFAULT_STREAM_FETCH_SIZE;
+        TypedQuery<ENTITY> query = createQuery(specification, sort);
+        if (query == null) {
+            return Stream.empty();
+        }
+        final ScrollableResults results = query
+            .unwrap(org.hibernate.query.Query.class)
+            .setFetchSize(fetchSize)
+            .setReadOnly(true)
+            .scroll(ScrollMode.FORWARD_ONLY);
+        Spliterator<ENTITY> spliterator = new Spliterators.AbstractSpliterator<ENTITY>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+
+            private long count;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super ENTITY> action) {
+                if (count > 0 && count % batchSize == 0) {
+                    em.clear();
+                }
+                if (!results.next()) {
+                    return false;
+                }
+                count++;
+                action.accept((ENTITY) results.get(0));
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(results::close);
+    }
+
+    /**
+     * Stream the entities matching the specification like {@link #streamAll(Specification, Sort, Consumer)}, but split
+     * in disjoint id ranges, which are streamed concurrently by a {@link QueryBatch} on the
+     * {@link #setTaskExecutor task executor}, each in its own read-only transaction, so on its own connection. The range of the matching ids is first queried, then cut
+     * in <code>partitions</code> ranges of about the same width, each filtered with a {@link LongFilter}. For exports and
+     * batch jobs over large results, which then scale with the cores and the size of the connection pool. Usage:
+     * <pre>
+     *   long count = streamAllPartitioned(createSpecification(criteria), Employee_.id, 4, exporter::write);
+     * </pre>
+     * The consumer is called from several threads at once, so it must be thread-safe, and the entities of different
+     * partitions are interleaved; within a partition, they are sorted by id. Without task executor or transaction
+     * manager, the partitions are streamed one after the other, in the calling thread.
+     *
+     * @param specification the specification built from the criteria, may be null. It must not fetch associations,
+     *                      since the range of ids is queried with aggregates.
+     * @param idField       the JPA static metamodel representing the numeric id.
+     * @param partitions    the number of partitions, at most the number of connections which can be spared.
+     * @param consumer      the thread-safe consumer of every entity.
+     * @return the number of streamed entities.
+     */
+    protected long streamAllPartitioned(Specification<ENTITY> specification,
+                                        SingularAttribute<? super ENTITY, Long> idField, int partitions,
+                                        Consumer<? super ENTITY> consumer) {
+        long[] bounds = inReadOnlyTransaction(() -> idBounds(specification, idField));
+        if (bounds == null) {
+            return 0;
+        }
+        List<Specification<ENTITY>> ranges = new ArrayList<>();
+        for (long[] partition : partitionBounds(bounds[0], bounds[1], partitions)) {
+            RangeFilter<Long> range = new LongFilter()
+                .setGreaterOrEqualThan(partition[0])
+                .setLessOrEqualThan(partition[1]);
+            ranges.add(Specification.where(specification).and(buildRangeSpecification(range, idField)));
+        }
+        Sort sort = Sort.by(idField.getName());
+        QueryBatch batch = new QueryBatch(transactionManager == null ? null : taskExecutor, transactionManager);
+        List<Supplier<Long>> counts = new ArrayList<>(ranges.size());
+        for (Specification<ENTITY> range : ranges) {
+            counts.add(batch.add(() -> streamAll(range, sort, consumer)));
+        }
+        batch.execute();
+        return counts.stream().mapToLong(Supplier::get).sum();
+    }
+
+    /**
+     * Cut the range of ids from <code>min</code> to <code>max</code>, both included, in at most
+     * <code>partitions</code> contiguous ranges of about the same width, each returned as its lower and upper bounds,
+     * both included. The width is computed with {@link BigInteger}, as the number of ids may not fit in a long.
+     */
+    static List<long[]> partitionBounds(long min, long max, int partitions) {
+        BigInteger lowest = BigInteger.valueOf(min);
+        BigInteger span = BigInteger.valueOf(max).subtract(lowest).add(BigInteger.ONE);
+        int count = BigInteger.valueOf(Math.max(1, partitions)).min(span).intValue();
+        List<long[]> bounds = new ArrayList<>(count);
+        long lower = min;
+        for (int i = 1; i <= count; i++) {
+            long upper = lowest.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)))
+                .subtract(BigInteger.ONE).longValue();
+            bounds.add(new long[]{lower, upper});
+            lower = upper + 1;
+        }
+        return bounds;
+    }
+
+    /**
+     * Return the minimum and maximum ids of the entities matching the specification, or null if there is none.
+     */
+    private long[] idBounds(Specification<ENTITY> specification, SingularAttribute<? super ENTITY, Long> idField) {
+        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<ENTITY> root = query.from(getEntityClass());
+        Predicate predicate = specification == null ? null : specification.toPredicate(root, query, builder);
+        if (predicate != null && isAlwaysFalse(predicate)) {
+            return null;
+        } else if (predicate != null) {
+            query.where(predicate);
+        }
+        query.multiselect(builder.min(root.get(idField)), builder.max(root.get(idField)));
+        Tuple bounds = getEntityManager().createQuery(query).getSingleResult();
+        if (bounds.get(0) == null) {
+            return null;
+        }
+        return new long[]{((Number) bounds.get(0)).longValue(), ((Number) bounds.get(1)).longValue()};
+    }
+
+    /**
+     * Run the callback in a new read-only transaction, or in the current context if there is no transaction manager.
+     */
+    private <T> T inReadOnlyTransaction(Supplier<T> callback) {
+        if (transactionManager == null) {
+            return callback.get();
+        }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+        return template.execute(status -> callback.get());
+    }
+
+    /**
+     * Return a page of tuples holding only the given attributes of the entities matching the specification. The
+     * elements of the tuples are aliased with the names of the attributes, so they can be read with
+     * <code>tuple.get(Employee_.name.getName(), String.class)</code> as well as by position. No entity is loaded in
+     * the persistence context.
+     *
+     * @param specification the specification built from the criteria, may be null.
+     * @param attributes    the selected attributes.
+     * @param pageable      the requested page.
+     * @return the page of tuples.
+     */
+    protected Page<Tuple> findAllTuples(Specification<ENTITY> specification,
+                                        List<SingularAttribute<? super ENTITY, ?>> attributes, Pageable pageable) {
+        return findAll(specification, Tuple.class, (root, builder) ->
+            builder.tuple(selections(root, attributes, true)), pageable, CountMode.EXACT);
+    }
+
+    /**
+     * Return a page of DTOs built with a constructor taking the given attributes of the entities matching the
+     * specification, in the same order. Only the selected columns are read from the database, and no entity is loaded
+     * in the persistence context.
+     *
+     * @param specification the specification built from the criteria, may be null.
+     * @param type          the class of the DTO, with a public constructor matching the attributes.
+     * @param attributes    the attributes passed to the constructor.
+     * @param pageable      the requested page.
+     * @param <DTO>         the type of the DTO.
+     * @return the page of DTOs.
+     */
+    protected <DTO> Page<DTO> findAllProjected(Specification<ENTITY> specification, Class<DTO> type,
+                                               List<SingularAttribute<? super ENTITY, ?>> attributes,
+                                               Pageable pageable) {
+        return findAll(specification, type, (root, builder) ->
+            builder.construct(type, selections(root, attributes, false)), pageable, CountMode.EXACT);
+    }
+
+    /**
+     * Count the entities matching the specification for each value of the given facet attributes, in a single query.
+     * The entities are grouped by all the facet attributes at once, and the counts of each attribute are summed up
+     * from these groups, so the query returns one row per distinct combination of the facet values: the facets should
+     * be attributes with few distinct values, like a status or a category.
+     * <pre>
+     *   FacetCounts facets = countFacets(createSpecification(criteria), Arrays.asList(Employee_.status,
+     *       Employee_.department));
+     *   Map&lt;Status, Long&gt; statusCounts = facets.getCounts(Employee_.status);
+     * </pre>
+     *
+     * @param specification the specification built from the criteria, may be null.
+     * @param facets        the attributes to count the values of.
+     * @return the counts of each facet attribute, and the total number of matching entities.
+     */
+    protected FacetCounts countFacets(Specification<ENTITY> specification,
+                                      List<SingularAttribute<? super ENTITY, ?>> facets) {
+        List<String> names = new ArrayList<>(facets.size());
+        for (SingularAttribute<? super ENTITY, ?> facet : facets) {
+            names.add(facet.getName());
+        }
+        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+        Root<ENTITY> root = query.from(getEntityClass());
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, builder) : null;
+        if (isAlwaysFalse(predicate)) {
+            return FacetCounts.fromGroups(names, Collections.emptyList());
+        } else if (facets.isEmpty()) {
+            return new FacetCounts(count(specification), Collections.emptyMap());
+        } else if (predicate != null) {
+            query.where(predicate);
+        }
+        // An entity is counted once in its group, even when the specification joins a collection
+        Expression<Long> count = query.isDistinct() || !root.getJoins().isEmpty() ? builder.countDistinct(root) :
+            builder.count(root);
+        Selection<?>[] selections = Arrays.copyOf(selections(root, facets, false), facets.size() + 1);
+        selections[facets.size()] = count;
+        List<Expression<?>> groups = new ArrayList<>(facets.size());
+        for (SingularAttribute<? super ENTITY, ?> facet : facets) {
+            groups.add(root.get(facet));
+        }
+        query.distinct(false).multiselect(selections).groupBy(groups);
+        return FacetCounts.fromGroups(names, getResultList(getEntityManager().createQuery(query), null));
+    }
+
+    /**
+     * Return a page of the entities matching the specification, where the total number of elements is computed
+     * according to the count mode. Endpoints on large tables can avoid a full count on every request:
+     * <pre>
+     *   Page&lt;Employee&gt; page = findAll(createSpecification(criteria), pageable, CountMode.ESTIMATED);
+     *   HttpHeaders headers = ResponseUtil.totalCountHeaders(page);
+     * </pre>
+     * With {@link CountMode#SLICE} and {@link CountMode#ESTIMATED}, the page is an {@link ApproximatePage} unless its
+     * content is enough to know the exact total.
+     *
+     * @param specification the specification built from the criteria, may be null.
+     * @param pageable      the requested page.
+     * @param countMode     how to compute the total number of elements.
+     * @return the page of entities.
+     */
+    protected Page<ENTITY> findAll(Specification<ENTITY> specification, Pageable pageable, CountMode countMode) {
+        return findAll(specification, getEntityClass(), (root, builder) -> root, pageable, countMode);
+    }
+
+    /**
+     * Return a page of the entities matching the specification, with the associations of the fetch plan loaded. The
+     * to-one associations are fetched with joins in the query of the page. The collections are loaded afterwards, by
+     * one query per collection for all the entities of the page, so the page is still limited by the database and not
+     * in memory, and fetching several collections does not multiply the rows.
+     *
+     * @param specification the specification built from the criteria, may be null.
+     * @param pageable      the requested page.
+     * @param countMode     how to compute the total number of elements.
+     * @param fetchPlan     the associations to load.
+     * @return the page of entities.
+     */
+    protected Page<ENTITY> findAll(Specification<ENTITY> specification, Pageable pageable, CountMode countMode,
+                                   FetchPlan fetchPlan) {
+        List<String> references = new ArrayList<>();
+        List<String> collections = new ArrayList<>();
+        for (String path : fetchPlan.getPaths()) {
+            List<Attribute<?, ?>> associations = getAssociations(path);
+            if (associations.isEmpty()) {
+                continue;
+            }
+            StringBuilder fetchPath = new StringBuilder();
+            boolean collection = false;
+            for (Attribute<?, ?> association : associations) {
+                fetchPath.append(fetchPath.length() == 0 ? "" : ".").append(association.getName());
+                collection |= association.isCollection();
+            }
+            (collection ? collections : references).add(fetchPath.toString());
+        }
+        Specification<ENTITY> fetches = (root, query, builder) -> {
+            // Neither the count query nor the projections fetch
+            if (getEntityClass().equals(query.getResultType())) {
+                for (String path : references) {
+                    fetch(root, path);
+                }
+            }
+            return null;
+        };
+        Page<ENTITY> page = findAll(Specification.where(specification).and(fetches), pageable, countMode);
+        fetchCollections(page.getContent(), collections);
+        return page;
+    }
+
+    /**
+     * Return the time during which the result of a count query is reused by {@link CountMode#ESTIMATED}, for the same
+     * predicates and values. Defaults to {@link #DEFAULT_ESTIMATED_COUNT_TTL_MILLIS}.
+     *
+     * @return the time to live of the estimated counts, in millis.
+     */
+    protected long getEstimatedCountTimeToLive() {
+        return DEFAULT_ESTIMATED_COUNT_TTL_MILLIS;
+    }
+
+    private <R> Page<R> findAll(Specification<ENTITY> specification, Class<R> resultType,
+                                BiFunction<Root<ENTITY>, CriteriaBuilder, Selection<R>> selection, Pageable pageable,
+                                CountMode countMode) {
+        TypedQuery<R> query = createQuery(specification, pageable.getSort(), resultType, selection,
+            pageable.isPaged());
+        if (query == null) {
+            return Page.empty(pageable);
+        } else if (pageable.isUnpaged()) {
+            return new PageImpl<>(getResultList(query, null));
+        }
+        long offset = pageable.getOffset();
+        int pageSize = pageable.getPageSize();
+        query.setFirstResult((int) offset);
+        if (countMode == CountMode.SLICE) {
+            // The extra element tells whether there is a next page
+            query.setMaxResults(pageSize + 1);
+            List<R> content = getResultList(query, null);
+            if (content.size() > pageSize) {
+                return new ApproximatePage<>(content.subList(0, pageSize), pageable, offset + pageSize + 1, countMode);
+            } else if (content.isEmpty() && offset > 0) {
+                // Past the last page, only a count gives the total
+                return new PageImpl<>(content, pageable, count(specification));
+            }
+            return new PageImpl<>(content, pageable, offset + content.size());
+        }
+        query.setMaxResults(pageSize);
+        List<R> content = getResultList(query, null);
+        if (countMode == CountMode.ESTIMATED && content.size() == pageSize) {
+            return new ApproximatePage<>(content, pageable, Math.max(estimatedCount(specification), offset + pageSize),
+                countMode);
+        }
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(specification));
+    }
+
+    private Selection<?>[] selections(Root<ENTITY> root, List<SingularAttribute<? super ENTITY, ?>> attributes,
+                                      boolean aliased) {
+        Selection<?>[] selections = new Selection<?>[attributes.size()];
+        for (int i = 0; i < selections.length; i++) {
+            SingularAttribute<? super ENTITY, ?> attribute = attributes.get(i);
+            selections[i] = aliased ? root.get(attribute).alias(attribute.getName()) : root.get(attribute);
+        }
+        return selections;
+    }
+
+    private long count(Specification<ENTITY> specification) {
+        return getCount(createCountQuery(specification), null);
+    }
+
+    /**
+     * Count the entities matching the specification, or reuse the count of a previous query with the same JPQL and
+     * the same parameter values, if it is more recent than {@link #getEstimatedCountTimeToLive()}.
+     */
+    private long estimatedCount(Specification<ENTITY> specification) {
+        TypedQuery<Long> query = createCountQuery(specification);
+        org.hibernate.query.Query<?> hibernateQuery = query.unwrap(org.hibernate.query.Query.class);
+        Map<String, Object> values = new TreeMap<>();
+        for (Parameter<?> parameter : hibernateQuery.getParameters()) {
+            values.put(parameter.getName() != null ? parameter.getName() : String.valueOf(parameter.getPosition()),
+                getParameterValue(hibernateQuery, parameter));
+        }
+        String key = hibernateQuery.getQueryString() + values;
+        // The concurrent callers for the same count wait for a single query
+        return estimatedCounts.get(key, getEstimatedCountTimeToLive(), () -> getCount(query, null));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Object getParameterValue(org.hibernate.query.Query<?> query, Parameter<?> parameter) {
+        try {
+            return query.getParameterValue(parameter);
+        } catch (IllegalArgumentException e) {
+            // Bound as a list, like the IN lists, whose values Hibernate 5.2 only exposes through a deprecated method
+            return query.unwrap(AbstractProducedQuery.class)
+                .getQueryParameterBindings()
+                .getQueryParameterListBinding(parameter.getName())
+                .getBindValues();
+        }
+    }
+
+    /**
+     * Execute a select query, and record its execution time if there are {@link #setQueryMetrics query metrics}.
+     *
+     * @param query the query.
+     * @param shape the shape of the query, or null to derive it from the JPQL.
+     */
+    private <R> List<R> getResultList(TypedQuery<R> query, String shape) {
+        if (queryMetrics == null) {
+            return query.getResultList();
+        }
+        long start = System.nanoTime();
+        List<R> result = query.getResultList();
+        queryMetrics.recordQuery(getEntityClass(), shape != null ? shape : getShape(query), System.nanoTime() - start,
+            result.size());
         return result;
     }
 
+    private long getCount(TypedQuery<Long> query, String shape) {
+        if (queryMetrics == null) {
+            return query.getSingleResult();
+        }
+        long start = System.nanoTime();
+        long count = query.getSingleResult();
+        queryMetrics.recordCount(getEntityClass(), shape != null ? shape : getShape(query), System.nanoTime() - start);
+        return count;
+    }
+
+    private static String getShape(TypedQuery<?> query) {
+        return QueryMetrics.shapeOf(query.unwrap(org.hibernate.query.Query.class).getQueryString());
+    }
+
+    private TypedQuery<Long> createCountQuery(Specification<ENTITY> specification) {
+        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<ENTITY> root = query.from(getEntityClass());
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, builder) : null;
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(query.isDistinct() ? builder.countDistinct(root) : builder.count(root));
+        return getEntityManager().createQuery(query);
+    }
+
+    /**
+     * Return the associations at the start of a path of attributes, the basic attributes which may end it (as in an
+     * entity graph) are not fetched.
+     */
+    private List<Attribute<?, ?>> getAssociations(String path) {
+        Metamodel metamodel = getEntityManager().getMetamodel();
+        ManagedType<?> type = metamodel.managedType(getEntityClass());
+        List<Attribute<?, ?>> associations = new ArrayList<>();
+        for (String name : path.split("\\.")) {
+            Attribute<?, ?> attribute = type.getAttribute(name);
+            if (!attribute.isAssociation()) {
+                break;
+            }
+            associations.add(attribute);
+            Type<?> next = attribute instanceof PluralAttribute ? ((PluralAttribute<?, ?, ?>) attribute).getElementType()
+                : ((SingularAttribute<?, ?>) attribute).getType();
+            type = metamodel.managedType(next.getJavaType());
+        }
+        return associations;
+    }
+
+    private static void fetch(FetchParent<?, ?> parent, String path) {
+        for (String name : path.split("\\.")) {
+            FetchParent<?, ?> next = null;
+            for (Fetch<?, ?> fetch : parent.getFetches()) {
+                if (fetch.getAttribute().getName().equals(name)) {
+                    next = fetch;
+                }
+            }
+            parent = next != null ? next : parent.fetch(name, JoinType.LEFT);
+        }
+    }
+
+    /**
+     * Load the collections of the given paths for all the entities, with one query per collection.
+     */
+    private void fetchCollections(List<ENTITY> entities, List<String> paths) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        EntityManager em = getEntityManager();
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        for (String path : paths) {
+            for (List<ENTITY> chunk : InListSupport.partition(entities)) {
+                CriteriaQuery<ENTITY> query = builder.createQuery(getEntityClass());
+                Root<ENTITY> root = query.from(getEntityClass());
+                fetch(root, path);
+                query.select(root).distinct(true).where(root.in(chunk));
+                // The entities are already in the persistence context, this initializes their collections
+                em.createQuery(query).getResultList();
+            }
+        }
+    }
+
+    private static boolean hasCollectionFetch(FetchParent<?, ?> parent) {
+        for (Fetch<?, ?> fetch : parent.getFetches()) {
+            if (fetch.getAttribute().isCollection() || hasCollectionFetch(fetch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private TypedQuery<ENTITY> createQuery(Specification<ENTITY> specification, Sort sort) {
+        return createQuery(specification, sort, getEntityClass(), (root, builder) -> root, false);
+    }
+
+    /**
+     * Create the query of a specification, or return null if it provably matches no entity.
+     */
+    private <R> TypedQuery<R> createQuery(Specification<ENTITY> specification, Sort sort, Class<R> resultType,
+                                          BiFunction<Root<ENTITY>, CriteriaBuilder, Selection<R>> selection,
+                                          boolean paged) {
+        EntityManager em = getEntityManager();
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<R> query = builder.createQuery(resultType);
+        Root<ENTITY> root = query.from(getEntityClass());
+        Predicate predicate = specification != null ? specification.toPredicate(root, query, builder) : null;
+        if (isAlwaysFalse(predicate)) {
+            return null;
+        } else if (predicate != null) {
+            query.where(predicate);
+        }
+        if (paged && hasCollectionFetch(root)) {
+            log.warn("The specification of {} fetches a collection, so the page is selected in memory from all the "
+                + "matching rows: use a FetchPlan instead", getEntityClass().getName());
+        }
+        query.select(selection.apply(root, builder)).orderBy(QueryUtils.toOrders(sort, root, builder));
+        return em.createQuery(query);
+    }
+
+    /**
+     * Read the value of an attribute of a loaded entity, through an accessor compiled from the java member of the
+     * static metamodel.
+     *
+     * @param entity the entity.
+     * @param field  the JPA static metamodel representing the field.
+     * @param <X>    The type of the attribute.
+     * @return the value of the attribute.
+     */
+    protected <X> X getAttributeValue(ENTITY entity, SingularAttribute<? super ENTITY, X> field) {
+        return AttributeAccessors.<ENTITY, X>getter(field).apply(entity);
+    }
+
+    /**
+     * Helper function to return a specification matching no entity, for contradictory filters.
+     *
+     * @return a Specification
+     */
+    protected Specification<ENTITY> matchNoneSpecification() {
+        return (root, query, builder) -> builder.disjunction();
+    }
+
+    /**
+     * Check whether a specification provably matches no entity, because it requires a
+     * {@link #matchNoneSpecification()}, typically built from contradictory range filters. The query can then be
+     * skipped:
+     * <pre>
+     *   Specification&lt;Employee&gt; specification = createSpecification(criteria);
+     *   if (isProvablyEmpty(specification)) {
+     *       return Page.empty(page);
+     *   }
+     *   return employeeRepository.findAll(specification, page);
+     * </pre>
+     * The methods of this class executing queries already skip them.
+     *
+     * @param specification the specification, may be null.
+     * @return true if the specification matches no entity.
+     */
+    protected boolean isProvablyEmpty(Specification<ENTITY> specification) {
+        if (specification == null) {
+            return false;
+        }
+        CriteriaBuilder builder = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<ENTITY> query = builder.createQuery(getEntityClass());
+        return isAlwaysFalse(specification.toPredicate(query.from(getEntityClass()), query, builder));
+    }
+
+    private static boolean isAlwaysFalse(Expression<Boolean> expression) {
+        if (!(expression instanceof Predicate) || ((Predicate) expression).isNegated()) {
+            return false;
+        }
+        Predicate predicate = (Predicate) expression;
+        List<Expression<Boolean>> expressions = predicate.getExpressions();
+        if (predicate.getOperator() == Predicate.BooleanOperator.OR) {
+            // An empty disjunction is false
+            return expressions.stream().allMatch(QueryService::isAlwaysFalse);
+        }
+        return expressions.stream().anyMatch(QueryService::isAlwaysFalse);
+    }
+
     protected <X> Specification<ENTITY> equalsSpecification(SingularAttribute<? super ENTITY, X> field, final X value) {
         return (root, query, builder) -> builder.equal(root.get(field), value);
     }
@@ -286,7 +1364,49 @@ public abstract class QueryService<ENTITY> {
     protected <OTHER, X> Specification<ENTITY> equalsSetSpecification(SetAttribute<? super ENTITY, OTHER> reference,
         SingularAttribute<OTHER, X> idField,
         X value) {
-        return (root, query, builder) -> builder.equal(root.join(reference).get(idField), value);
+        return collectionSpecification(reference, (join, builder) -> builder.equal(join.get(idField), value));
+    }
+
+    /**
+     * Helper function to return a specification for a condition on the elements of a one-to-many or many-to-many
+     * reference, which matches the entities having at least one element matching the condition. Each specification
+     * is evaluated on its own: when several filters are put on the same reference, like <code>tagsId.equals</code>
+     * and <code>tagsName.contains</code>, each of them may be matched by a different element, while all the bounds of
+     * a single filter, like <code>greaterThan</code> and <code>lessThan</code> of a {@link RangeFilter}, must be
+     * matched by the same element. {@link PredicateCompiler} follows the same semantics.
+     * <p>
+     * By default the condition is put on its own inner join, so an entity with several matching elements is returned
+     * once per element, unless the query is distinct. If {@link #useExistsForCollections()} is true, the condition is
+     * rendered as a correlated <code>EXISTS</code> subquery instead, with the same result, but the root never fans out
+     * and no <code>DISTINCT</code> is needed.
+     *
+     * @param reference the attribute of the static metamodel for the referring entity.
+     * @param condition the function building the condition from the element of the collection.
+     * @param <OTHER>   The type of the referenced entity.
+     * @return a Specification
+     */
+    protected <OTHER> Specification<ENTITY> collectionSpecification(final SetAttribute<? super ENTITY, OTHER> reference,
+                                                                    final BiFunction<Path<OTHER>, CriteriaBuilder,
+                                                                        Predicate> condition) {
+        return (root, query, builder) -> {
+            if (useExistsForCollections()) {
+                Subquery<Integer> subquery = query.subquery(Integer.class);
+                SetJoin<ENTITY, OTHER> element = subquery.correlate(root).join(reference);
+                return builder.exists(subquery.select(builder.literal(1)).where(condition.apply(element, builder)));
+            }
+            return condition.apply(root.join(reference), builder);
+        };
+    }
+
+    /**
+     * Whether conditions on one-to-many and many-to-many references are rendered as correlated
+     * <code>EXISTS</code> subqueries instead of joins. Override it to return true for services where the collections
+     * are large, and a join would multiply the rows of the result.
+     *
+     * @return false by default.
+     */
+    protected boolean useExistsForCollections() {
+        return false;
     }
 
     protected Specification<ENTITY> likeUpperSpecification(SingularAttribute<? super ENTITY, String> field, final
@@ -294,6 +1414,46 @@ public abstract class QueryService<ENTITY> {
         return (root, query, builder) -> builder.like(builder.upper(root.get(field)), wrapLikeQuery(value));
     }
 
+    /**
+     * Helper function to return a specification for filtering on a {@link String} field containing a text, rendered by
+     * the {@link #getTextMatchStrategy() text match strategy}.
+     *
+     * @param field the JPA static metamodel representing the field.
+     * @param value the searched text.
+     * @return a Specification
+     */
+    protected Specification<ENTITY> containsSpecification(SingularAttribute<? super ENTITY, String> field,
+                                                          final String value) {
+        TextMatchStrategy strategy = getTextMatchStrategy();
+        return (root, query, builder) ->
+            strategy.contains(builder, root.get(field), builder.literal(strategy.toPattern(value)));
+    }
+
+    /**
+     * Helper function to return a specification for filtering on a {@link String} field starting with a prefix,
+     * ignoring the case. It renders <code>upper(col) like 'PREFIX%'</code>, which can be served by an index on
+     * <code>upper(col)</code> (with <code>text_pattern_ops</code> on PostgreSQL).
+     *
+     * @param field the JPA static metamodel representing the field.
+     * @param value the prefix.
+     * @return a Specification
+     */
+    protected Specification<ENTITY> startsWithSpecification(SingularAttribute<? super ENTITY, String> field,
+                                                            final String value) {
+        return (root, query, builder) -> builder.like(builder.upper(root.get(field)),
+            TextMatchStrategy.escapeLike(value.toUpperCase()) + '%', TextMatchStrategy.LIKE_ESCAPE);
+    }
+
+    /**
+     * Return the strategy rendering the <code>contains</code> conditions of the string filters. Override it to use
+     * an index friendly strategy supported by the database, like {@link StandardTextMatchStrategy#ILIKE}.
+     *
+     * @return the text match strategy, {@link StandardTextMatchStrategy#LIKE_UPPER} by default.
+     */
+    protected TextMatchStrategy getTextMatchStrategy() {
+        return StandardTextMatchStrategy.LIKE_UPPER;
+    }
+
     protected <X> Specification<ENTITY> byFieldSpecified(SingularAttribute<? super ENTITY, X> field, final boolean
         specified) {
         return specified ? (root, query, builder) -> builder.isNotNull(root.get(field)) : (root, query, builder) ->
@@ -307,24 +1467,69 @@ public abstract class QueryService<ENTITY> {
 
     protected <X> Specification<ENTITY> valueIn(SingularAttribute<? super ENTITY, X> field, final Collection<X>
         values) {
-        return (root, query, builder) -> {
-            In<X> in = builder.in(root.get(field));
-            for (X value : values) {
-                in = in.value(value);
-            }
-            return in;
-        };
+        return (root, query, builder) -> valueInPredicate(builder, root.get(field), field.getJavaType(), values);
     }
 
     protected <OTHER, X> Specification<ENTITY> valueIn(SingularAttribute<? super ENTITY, OTHER> reference,
         SingularAttribute<OTHER, X> valueField, final Collection<X> values) {
-        return (root, query, builder) -> {
-            In<X> in = builder.in(root.get(reference).get(valueField));
-            for (X value : values) {
-                in = in.value(value);
+        return (root, query, builder) -> valueInPredicate(builder, root.get(reference).get(valueField),
+            valueField.getJavaType(), values);
+    }
+
+    /**
+     * Helper function to return an <code>IN</code> predicate which does not produce a new statement for every number
+     * of values. If the dialect supports it (see {@link #isArrayInListSupported()}), the values are bound as a single
+     * array parameter: <code>col = any(?)</code>. Otherwise the list is padded to the next power of two and split in
+     * chunks of at most 1000 values, each bound as a single list parameter, so <code>col in (?, ?, ?, ?)</code> is the
+     * same statement for 3 or 4 values.
+     *
+     * @param builder the criteria builder.
+     * @param path    the expression which should be in the list.
+     * @param type    the java type of the expression.
+     * @param values  the values of the list.
+     * @param <X>     The type of the attribute which is filtered.
+     * @return the predicate, which is always false if there is no value.
+     */
+    protected <X> Predicate valueInPredicate(CriteriaBuilder builder, Expression<X> path, Class<X> type,
+                                             Collection<X> values) {
+        String arrayFunction = isArrayInListSupported() ? InListSupport.arrayFunction(type) : null;
+        if (arrayFunction != null) {
+            return builder.isTrue(builder.function(arrayFunction, Boolean.class, path,
+                builder.literal(InListSupport.toArrayLiteral(values))));
+        }
+        List<List<X>> chunks = InListSupport.partition(values);
+        Predicate[] predicates = new Predicate[chunks.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            // A single collection-valued literal is bound as one list parameter, which Hibernate expands to as many
+            // placeholders as values, while each value added to the list would be inlined in the SQL if numeric
+            predicates[i] = path.in(builder.literal(chunks.get(i)));
+        }
+        return predicates.length == 1 ? predicates[0] : builder.or(predicates);
+    }
+
+    /**
+     * Tell whether <code>IN</code> lists can be bound as a single array parameter, which is the case when the
+     * configured dialect is {@link io.github.simlife.domain.util.FixedPostgreSQL82Dialect}. The result is detected
+     * once from the entity manager; without entity manager, lists are padded and chunked.
+     *
+     * @return true if array binding is supported.
+     */
+    protected boolean isArrayInListSupported() {
+        if (arrayInListSupported == null) {
+            boolean supported = false;
+            if (entityManager != null) {
+                try {
+                    supported = entityManager.getEntityManagerFactory()
+                        .unwrap(SessionFactoryImplementor.class)
+                        .getSqlFunctionRegistry()
+                        .findSQLFunction(InListSupport.arrayFunction(Long.class)) != null;
+                } catch (PersistenceException e) {
+                    // Not a Hibernate persistence unit, fall back to plain lists
+                }
             }
-            return in;
-        };
+            arrayInListSupported = supported;
+        }
+        return arrayInListSupported;
     }
 
     protected <X extends Comparable<? super X>> Specification<ENTITY> greaterThanOrEqualTo(SingularAttribute<? super
@@ -354,13 +1559,8 @@ public abstract class QueryService<ENTITY> {
 
     protected <OTHER, X> Specification<ENTITY> valueIn(final SetAttribute<? super ENTITY, OTHER> reference,
                                                        final SingularAttribute<OTHER, X> valueField, final Collection<X> values) {
-        return (root, query, builder) -> {
-            CriteriaBuilder.In<X> in = builder.in(root.join(reference).get(valueField));
-            for (X value : values) {
-                in = in.value(value);
-            }
-            return in;
-        };
+        return collectionSpecification(reference, (join, builder) -> valueInPredicate(builder,
+            join.get(valueField), valueField.getJavaType(), values));
     }
 
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> greaterThan(final SingularAttribute<? super ENTITY, OTHER> reference, final SingularAttribute<OTHER, X> valueField, final X value) {
@@ -368,7 +1568,7 @@ public abstract class QueryService<ENTITY> {
     }
 
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> greaterThan(final SetAttribute<? super ENTITY, OTHER> reference, final SingularAttribute<OTHER, X> valueField, final X value) {
-        return (root, query, builder) -> builder.greaterThan(root.join(reference).get(valueField), value);
+        return collectionSpecification(reference, (join, builder) -> builder.greaterThan(join.get(valueField), value));
     }
 
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> greaterThanOrEqualTo(final SingularAttribute<? super ENTITY, OTHER> reference, final SingularAttribute<OTHER, X> valueField, final X value) {
@@ -376,7 +1576,7 @@ public abstract class QueryService<ENTITY> {
     }
 
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> greaterThanOrEqualTo(final SetAttribute<? super ENTITY, OTHER> reference, final SingularAttribute<OTHER, X> valueField, final X value) {
-        return (root, query, builder) -> builder.greaterThanOrEqualTo(root.join(reference).get(valueField), value);
+        return collectionSpecification(reference, (join, builder) -> builder.greaterThanOrEqualTo(join.get(valueField), value));
     }
 
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> lessThan(final SingularAttribute<? super ENTITY, OTHER> reference, final SingularAttribute<OTHER, X> valueField, final X value) {
@@ -384,7 +1584,7 @@ public abstract class QueryService<ENTITY> {
     }
 
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> lessThan(final SetAttribute<? super ENTITY, OTHER> reference, final SingularAttribute<OTHER, X> valueField, final X value) {
-        return (root, query, builder) -> builder.lessThan(root.join(reference).get(valueField), value);
+        return collectionSpecification(reference, (join, builder) -> builder.lessThan(join.get(valueField), value));
     }
 
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> lessThanOrEqualTo(final SingularAttribute<? super ENTITY, OTHER> reference, final SingularAttribute<OTHER, X> valueField, final X value) {
@@ -392,6 +1592,6 @@ public abstract class QueryService<ENTITY> {
     }
 
     protected <OTHER, X extends Comparable<? super X>> Specification<ENTITY> lessThanOrEqualTo(final SetAttribute<? super ENTITY, OTHER> reference, final SingularAttribute<OTHER, X> valueField, final X value) {
-        return (root, query, builder) -> builder.lessThanOrEqualTo(root.join(reference).get(valueField), value);
+        return collectionSpecification(reference, (join, builder) -> builder.lessThanOrEqualTo(join.get(valueField), value));
     }
 }
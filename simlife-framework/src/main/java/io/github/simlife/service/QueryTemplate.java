@@ -0,0 +1,391 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import io.github.simlife.service.filter.Filter;
+import io.github.simlife.service.filter.RangeFilter;
+import io.github.simlife.service.filter.RangeInterval;
+import io.github.simlife.service.filter.StringFilter;
+
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.SingularAttribute;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A parameterized query built from the filters of a criteria object. Unlike a tree of
+ * {@link org.springframework.data.jpa.domain.Specification}s, it separates the shape of the query (which operators
+ * are set on which attributes) from the values: queries of the same shape are rendered once to JPQL by
+ * {@link QueryService}, and later executions only bind the values, which keeps the query plan cache of Hibernate hot.
+ * Usage:
+ * <pre>
+ *   QueryTemplate&lt;Employee&gt; template = queryTemplate()
+ *     .string(criteria.getName(), Employee_.name)
+ *     .range(criteria.getAge(), Employee_.age)
+ *     .range(criteria.getProjectId(), Employee_.project, Project_.id);
+ *   return findAll(template, pageable);
+ * </pre>
+ * The filters are interpreted in the same way as by the <code>build*Specification</code> methods of
+ * {@link QueryService}: range filters are normalized to a single {@link RangeInterval} first.
+ *
+ * @param <ENTITY> the type of the entity which is queried.
+ */
+public class QueryTemplate<ENTITY> {
+
+    /**
+     * The operators which can be set on a filter, they make up the shape of a query.
+     */
+    public enum Operator {
+        EQUALS, IN, SPECIFIED, NOT_SPECIFIED, GREATER_THAN, GREATER_OR_EQUAL_THAN, LESS_THAN, LESS_OR_EQUAL_THAN,
+        CONTAINS, STARTS_WITH
+    }
+
+    private static final String ESCAPE_SUFFIX = "_escape";
+
+    private final List<Condition<ENTITY, ?>> conditions = new ArrayList<>();
+    private final StringBuilder shape;
+    private final boolean arrayInListSupported;
+    private final TextMatchStrategy textMatchStrategy;
+    private int parameterCount;
+    private boolean empty;
+
+    public QueryTemplate(Class<ENTITY> entityClass) {
+        this(entityClass, false);
+    }
+
+    /**
+     * @param entityClass          the class of the entity which is queried.
+     * @param arrayInListSupported true if <code>IN</code> lists can be bound as a single array parameter, see
+     *                             {@link QueryService#isArrayInListSupported()}.
+     */
+    public QueryTemplate(Class<ENTITY> entityClass, boolean arrayInListSupported) {
+        this(entityClass, arrayInListSupported, StandardTextMatchStrategy.LIKE_UPPER);
+    }
+
+    /**
+     * @param entityClass          the class of the entity which is queried.
+     * @param arrayInListSupported true if <code>IN</code> lists can be bound as a single array parameter, see
+     *                             {@link QueryService#isArrayInListSupported()}.
+     * @param textMatchStrategy    the strategy rendering the <code>contains</code> conditions, see
+     *                             {@link QueryService#getTextMatchStrategy()}.
+     */
+    public QueryTemplate(Class<ENTITY> entityClass, boolean arrayInListSupported,
+                         TextMatchStrategy textMatchStrategy) {
+        this.shape = new StringBuilder(entityClass.getName());
+        this.arrayInListSupported = arrayInListSupported;
+        this.textMatchStrategy = textMatchStrategy;
+    }
+
+    /**
+     * Add a filter on a single field, where equality, and null/non-null conditions are supported.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param field  the JPA static metamodel representing the field.
+     * @param <X>    The type of the attribute which is filtered.
+     * @return this template.
+     */
+    public <X> QueryTemplate<ENTITY> filter(Filter<X> filter, SingularAttribute<? super ENTITY, X> field) {
+        return filter(filter, field.getName(), root -> root.get(field), field.getJavaType());
+    }
+
+    /**
+     * Add a filter on one-to-one or many-to-one reference, where equality, and null/non-null conditions are
+     * supported.
+     *
+     * @param filter     the individual attribute filter coming from the frontend, may be null.
+     * @param reference  the attribute of the static metamodel for the referring entity.
+     * @param valueField the attribute of the static metamodel of the referred entity.
+     * @param <OTHER>    The type of the referenced entity.
+     * @param <X>        The type of the attribute which is filtered.
+     * @return this template.
+     */
+    public <OTHER, X> QueryTemplate<ENTITY> filter(Filter<X> filter,
+                                                   SingularAttribute<? super ENTITY, OTHER> reference,
+                                                   SingularAttribute<OTHER, X> valueField) {
+        return filter(filter, reference.getName() + '.' + valueField.getName(),
+            root -> root.get(reference).get(valueField), valueField.getJavaType());
+    }
+
+    /**
+     * Add a filter on a single {@link Comparable} field, where equality, less than, greater than and
+     * less-than-or-equal-to and greater-than-or-equal-to and null/non-null conditions are supported.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param field  the JPA static metamodel representing the field.
+     * @param <X>    The type of the attribute which is filtered.
+     * @return this template.
+     */
+    public <X extends Comparable<? super X>> QueryTemplate<ENTITY> range(RangeFilter<X> filter,
+                                                                         SingularAttribute<? super ENTITY, X> field) {
+        return range(filter, field.getName(), root -> root.get(field), field.getJavaType());
+    }
+
+    /**
+     * Add a filter on one-to-one or many-to-one reference, where equality, less than, greater than and
+     * less-than-or-equal-to and greater-than-or-equal-to and null/non-null conditions are supported.
+     *
+     * @param filter     the individual attribute filter coming from the frontend, may be null.
+     * @param reference  the attribute of the static metamodel for the referring entity.
+     * @param valueField the attribute of the static metamodel of the referred entity.
+     * @param <OTHER>    The type of the referenced entity.
+     * @param <X>        The type of the attribute which is filtered.
+     * @return this template.
+     */
+    public <OTHER, X extends Comparable<? super X>> QueryTemplate<ENTITY> range(RangeFilter<X> filter,
+                                                                                SingularAttribute<? super ENTITY, OTHER> reference,
+                                                                                SingularAttribute<OTHER, X> valueField) {
+        return range(filter, reference.getName() + '.' + valueField.getName(),
+            root -> root.get(reference).get(valueField), valueField.getJavaType());
+    }
+
+    /**
+     * Add a filter on a {@link String} field, where equality, containment, prefix and null/non-null conditions are
+     * supported.
+     *
+     * @param filter the individual attribute filter coming from the frontend, may be null.
+     * @param field  the JPA static metamodel representing the field.
+     * @return this template.
+     */
+    public QueryTemplate<ENTITY> string(StringFilter filter, SingularAttribute<? super ENTITY, String> field) {
+        if (filter == null) {
+            return this;
+        }
+        final Function<Root<ENTITY>, Path<String>> path = root -> root.get(field);
+        if (filter.getEquals() != null) {
+            return add(field.getName(), Operator.EQUALS, path, String.class, filter.getEquals());
+        } else if (filter.getIn() != null) {
+            return add(field.getName(), Operator.IN, path, String.class, filter.getIn());
+        } else if (filter.getContains() != null) {
+            return add(field.getName(), Operator.CONTAINS, path, String.class,
+                textMatchStrategy.toPattern(filter.getContains()));
+        } else if (filter.getStartsWith() != null) {
+            return add(field.getName(), Operator.STARTS_WITH, path, String.class,
+                TextMatchStrategy.escapeLike(filter.getStartsWith().toUpperCase()) + '%');
+        } else if (filter.getSpecified() != null) {
+            return specified(field.getName(), path, filter.getSpecified());
+        }
+        return this;
+    }
+
+    private <X> QueryTemplate<ENTITY> filter(Filter<X> filter, String name,
+                                             Function<Root<ENTITY>, Path<X>> path, Class<X> type) {
+        if (filter == null) {
+            return this;
+        }
+        if (filter.getEquals() != null) {
+            return add(name, Operator.EQUALS, path, type, filter.getEquals());
+        } else if (filter.getIn() != null) {
+            return add(name, Operator.IN, path, type, filter.getIn());
+        } else if (filter.getSpecified() != null) {
+            return specified(name, path, filter.getSpecified());
+        }
+        return this;
+    }
+
+    private <X extends Comparable<? super X>> QueryTemplate<ENTITY> range(RangeFilter<X> filter, String name,
+                                                                          Function<Root<ENTITY>, Path<X>> path,
+                                                                          Class<X> type) {
+        if (filter == null) {
+            return this;
+        }
+        RangeInterval<X> interval = RangeInterval.of(filter);
+        if (interval.isEmpty()) {
+            empty = true;
+            return this;
+        }
+        List<X> values = interval.getValues();
+        if (values != null) {
+            return values.size() == 1 ? add(name, Operator.EQUALS, path, type, values.get(0))
+                : add(name, Operator.IN, path, type, values);
+        }
+        if (interval.getSpecified() != null) {
+            specified(name, path, interval.getSpecified());
+        }
+        if (interval.getLower() != null) {
+            add(name, interval.isLowerInclusive() ? Operator.GREATER_OR_EQUAL_THAN : Operator.GREATER_THAN, path,
+                type, interval.getLower());
+        }
+        if (interval.getUpper() != null) {
+            add(name, interval.isUpperInclusive() ? Operator.LESS_OR_EQUAL_THAN : Operator.LESS_THAN, path,
+                type, interval.getUpper());
+        }
+        return this;
+    }
+
+    private <X> QueryTemplate<ENTITY> specified(String name, Function<Root<ENTITY>, Path<X>> path,
+                                                boolean specified) {
+        return add(name, specified ? Operator.SPECIFIED : Operator.NOT_SPECIFIED, path, null, null);
+    }
+
+    private <X> QueryTemplate<ENTITY> add(String name, Operator operator, Function<Root<ENTITY>, Path<X>> path,
+                                          Class<X> type, Object value) {
+        String parameterName = value != null ? "p" + parameterCount++ : null;
+        Condition<ENTITY, X> condition = new Condition<>(operator, path, type, parameterName, value,
+            textMatchStrategy);
+        shape.append(conditions.size() == 0 ? '[' : ',').append(name).append(':').append(operator);
+        if (operator == Operator.IN) {
+            String arrayFunction = arrayInListSupported ? InListSupport.arrayFunction(type) : null;
+            if (arrayFunction != null) {
+                condition.arrayFunction = arrayFunction;
+                condition.value = InListSupport.toArrayLiteral((Collection<?>) value);
+            } else {
+                // Padded chunks keep the number of distinct expanded statements low
+                condition.chunks = InListSupport.partition((Collection<?>) value);
+                if (condition.chunks.size() != 1) {
+                    shape.append('*').append(condition.chunks.size());
+                }
+            }
+        }
+        conditions.add(condition);
+        return this;
+    }
+
+    /**
+     * Return the key identifying the shape of this query: the entity, and the operators set on each attribute,
+     * without the values. Two templates with the same shape render to the same JPQL.
+     *
+     * @return the shape key.
+     */
+    public String getShape() {
+        return conditions.isEmpty() ? shape.toString() : shape.toString() + ']';
+    }
+
+    /**
+     * Return true if a filter of this template is contradictory, like <code>greaterThan=10&amp;lessThan=5</code>:
+     * such a template matches no entity, and {@link QueryService} does not run it.
+     *
+     * @return true if this template provably matches no entity.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Render the conditions of this template to a predicate, where every value is a named parameter.
+     *
+     * @param root    the root of the query.
+     * @param builder the criteria builder.
+     * @return the predicate.
+     */
+    public Predicate toPredicate(Root<ENTITY> root, CriteriaBuilder builder) {
+        List<Predicate> predicates = new ArrayList<>(conditions.size());
+        for (Condition<ENTITY, ?> condition : conditions) {
+            predicates.add(condition.toPredicate(root, builder));
+        }
+        return builder.and(predicates.toArray(new Predicate[0]));
+    }
+
+    /**
+     * Bind the values of this template to a query rendered from a template of the same shape.
+     *
+     * @param query the query.
+     */
+    public void bind(TypedQuery<?> query) {
+        for (Condition<ENTITY, ?> condition : conditions) {
+            if (condition.chunks != null) {
+                for (int i = 0; i < condition.chunks.size(); i++) {
+                    query.setParameter(condition.parameterName + '_' + i, condition.chunks.get(i));
+                }
+            } else if (condition.parameterName != null) {
+                query.setParameter(condition.parameterName, condition.value);
+            }
+            if (condition.operator == Operator.STARTS_WITH) {
+                // The escape character is rendered as a parameter as well, so it must be bound with the values
+                query.setParameter(condition.parameterName + ESCAPE_SUFFIX, TextMatchStrategy.LIKE_ESCAPE);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getShape();
+    }
+
+    private static class Condition<ENTITY, X> {
+
+        private final Operator operator;
+        private final Function<Root<ENTITY>, Path<X>> path;
+        private final Class<X> type;
+        private final String parameterName;
+        private final TextMatchStrategy textMatchStrategy;
+        private Object value;
+        private String arrayFunction;
+        private List<? extends List<?>> chunks;
+
+        Condition(Operator operator, Function<Root<ENTITY>, Path<X>> path, Class<X> type, String parameterName,
+                  Object value, TextMatchStrategy textMatchStrategy) {
+            this.operator = operator;
+            this.path = path;
+            this.type = type;
+            this.parameterName = parameterName;
+            this.value = value;
+            this.textMatchStrategy = textMatchStrategy;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Predicate toPredicate(Root<ENTITY> root, CriteriaBuilder builder) {
+            Path<X> field = path.apply(root);
+            switch (operator) {
+                case EQUALS:
+                    return builder.equal(field, builder.parameter(type, parameterName));
+                case IN:
+                    if (arrayFunction != null) {
+                        return builder.isTrue(builder.function(arrayFunction, Boolean.class, field,
+                            builder.parameter(String.class, parameterName)));
+                    }
+                    Predicate[] predicates = new Predicate[chunks.size()];
+                    for (int i = 0; i < predicates.length; i++) {
+                        predicates[i] = field.in(builder.parameter(Collection.class, parameterName + '_' + i));
+                    }
+                    return predicates.length == 1 ? predicates[0] : builder.or(predicates);
+                case SPECIFIED:
+                    return builder.isNotNull(field);
+                case NOT_SPECIFIED:
+                    return builder.isNull(field);
+                case GREATER_THAN:
+                    return builder.greaterThan((Expression) field, (Expression) builder.parameter(type, parameterName));
+                case GREATER_OR_EQUAL_THAN:
+                    return builder.greaterThanOrEqualTo((Expression) field,
+                        (Expression) builder.parameter(type, parameterName));
+                case LESS_THAN:
+                    return builder.lessThan((Expression) field, (Expression) builder.parameter(type, parameterName));
+                case LESS_OR_EQUAL_THAN:
+                    return builder.lessThanOrEqualTo((Expression) field,
+                        (Expression) builder.parameter(type, parameterName));
+                case CONTAINS:
+                    return textMatchStrategy.contains(builder, (Expression<String>) field,
+                        builder.parameter(String.class, parameterName));
+                case STARTS_WITH:
+                    return builder.like(builder.upper((Expression<String>) field),
+                        builder.parameter(String.class, parameterName),
+                        builder.parameter(Character.class, parameterName + ESCAPE_SUFFIX));
+                default:
+                    throw new IllegalStateException("Unknown operator " + operator);
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import io.github.simlife.service.filter.RangeInterval;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * A column of a {@link ColumnarSnapshot}: the values of one attribute for all the rows, in a primitive array when the
+ * type allows it, and the null values in a separate bitset. Every condition is evaluated by a scan of the whole column
+ * into a bitset of the matching rows, which never contains a null row, so the conditions on several columns are
+ * intersected with {@link BitSet#and(BitSet)}.
+ * <ul>
+ * <li>Integers and shorts are stored in an <code>int[]</code>.</li>
+ * <li>Longs, instants, zoned date times and local dates are encoded in a <code>long[]</code>, by an order preserving
+ * function (epoch nanos, epoch days).</li>
+ * <li>Booleans are stored in a bitset.</li>
+ * <li>Any other type, like strings and enums, is dictionary encoded: the distinct values are stored once, and the
+ * rows hold their codes in an <code>int[]</code>. Conditions are evaluated once per distinct value, then the codes are
+ * scanned.</li>
+ * </ul>
+ * Columns are not thread-safe, they are guarded by the lock of their snapshot.
+ */
+abstract class SnapshotColumn {
+
+    protected final BitSet nulls = new BitSet();
+
+    /**
+     * Create an empty column for the values of the given type.
+     *
+     * @param javaType the type of the attribute.
+     * @return the column.
+     */
+    static SnapshotColumn of(Class<?> javaType) {
+        if (javaType == Long.class || javaType == long.class) {
+            return new LongColumn(value -> ((Number) value).longValue());
+        } else if (javaType == Instant.class) {
+            return new LongColumn(value -> epochNanos((Instant) value));
+        } else if (javaType == ZonedDateTime.class) {
+            return new LongColumn(value -> epochNanos(((ZonedDateTime) value).toInstant()));
+        } else if (javaType == LocalDate.class) {
+            return new LongColumn(value -> ((LocalDate) value).toEpochDay());
+        } else if (javaType == Integer.class || javaType == int.class || javaType == Short.class
+            || javaType == short.class) {
+            return new IntColumn();
+        } else if (javaType == Boolean.class || javaType == boolean.class) {
+            return new BooleanColumn();
+        }
+        return new DictionaryColumn();
+    }
+
+    /**
+     * Return the nanos since the epoch, saturated to the range of a long (years 1677 to 2262).
+     */
+    private static long epochNanos(Instant instant) {
+        long seconds = instant.getEpochSecond();
+        if (seconds >= Long.MAX_VALUE / 1_000_000_000L) {
+            return Long.MAX_VALUE;
+        } else if (seconds <= Long.MIN_VALUE / 1_000_000_000L) {
+            return Long.MIN_VALUE;
+        }
+        return seconds * 1_000_000_000L + instant.getNano();
+    }
+
+    /**
+     * Make room for the given number of rows.
+     *
+     * @param capacity the number of rows.
+     */
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * Set the value of a row.
+     *
+     * @param row   the row, within the capacity.
+     * @param value the value, may be null.
+     */
+    final void set(int row, Object value) {
+        if (value == null) {
+            nulls.set(row);
+        } else {
+            nulls.clear(row);
+            setValue(row, value);
+        }
+    }
+
+    abstract void setValue(int row, Object value);
+
+    /**
+     * Return the rows whose value is one of the given values.
+     *
+     * @param values the non null values.
+     * @param size   the number of rows.
+     * @return the matching rows.
+     */
+    abstract BitSet matchValues(List<?> values, int size);
+
+    /**
+     * Return the rows whose value is within the bounds of the interval.
+     *
+     * @param interval the interval, with bounds but no values.
+     * @param size     the number of rows.
+     * @return the matching rows.
+     */
+    abstract BitSet matchBounds(RangeInterval<?> interval, int size);
+
+    /**
+     * Return the rows whose value is a string matching the condition.
+     *
+     * @param condition the condition on the non null strings.
+     * @param size      the number of rows.
+     * @return the matching rows.
+     */
+    BitSet matchText(Predicate<String> condition, int size) {
+        throw new IllegalArgumentException("Text conditions are only supported on strings");
+    }
+
+    /**
+     * Return the rows whose value is null, or not null.
+     *
+     * @param specified true for the non null values.
+     * @param size      the number of rows.
+     * @return the matching rows.
+     */
+    final BitSet matchSpecified(boolean specified, int size) {
+        if (!specified) {
+            return nulls.get(0, size);
+        }
+        BitSet result = new BitSet(size);
+        result.set(0, size);
+        result.andNot(nulls);
+        return result;
+    }
+
+    /**
+     * Turn the words of a scan into a bitset, without the null rows.
+     */
+    final BitSet toBitSet(long[] words) {
+        BitSet result = BitSet.valueOf(words);
+        result.andNot(nulls);
+        return result;
+    }
+
+    static int capacity(int current, int required) {
+        return required <= current ? current : Math.max(required, current + (current >> 1) + 16);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static boolean contains(RangeInterval interval, Object value) {
+        return interval.contains((Comparable) value);
+    }
+
+    /**
+     * A column of longs, or of values encoded as longs in the same order.
+     */
+    static final class LongColumn extends SnapshotColumn {
+
+        private final ToLongFunction<Object> encoder;
+        private long[] values = new long[0];
+
+        LongColumn(ToLongFunction<Object> encoder) {
+            this.encoder = encoder;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity(values.length, capacity));
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = encoder.applyAsLong(value);
+        }
+
+        long get(int row) {
+            return values[row];
+        }
+
+        @Override
+        BitSet matchValues(List<?> matching, int size) {
+            long[] keys = new long[matching.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = encoder.applyAsLong(matching.get(i));
+            }
+            Arrays.sort(keys);
+            long[] words = new long[(size + 63) >>> 6];
+            if (keys.length == 1) {
+                long key = keys[0];
+                for (int i = 0; i < size; i++) {
+                    if (values[i] == key) {
+                        words[i >>> 6] |= 1L << i;
+                    }
+                }
+            } else {
+                for (int i = 0; i < size; i++) {
+                    if (Arrays.binarySearch(keys, values[i]) >= 0) {
+                        words[i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+            return toBitSet(words);
+        }
+
+        @Override
+        BitSet matchBounds(RangeInterval<?> interval, int size) {
+            long lower = Long.MIN_VALUE;
+            long upper = Long.MAX_VALUE;
+            if (interval.getLower() != null) {
+                lower = encoder.applyAsLong(interval.getLower());
+                if (!interval.isLowerInclusive()) {
+                    if (lower == Long.MAX_VALUE) {
+                        return new BitSet();
+                    }
+                    lower++;
+                }
+            }
+            if (interval.getUpper() != null) {
+                upper = encoder.applyAsLong(interval.getUpper());
+                if (!interval.isUpperInclusive()) {
+                    if (upper == Long.MIN_VALUE) {
+                        return new BitSet();
+                    }
+                    upper--;
+                }
+            }
+            long[] words = new long[(size + 63) >>> 6];
+            for (int i = 0; i < size; i++) {
+                long value = values[i];
+                if (value >= lower && value <= upper) {
+                    words[i >>> 6] |= 1L << i;
+                }
+            }
+            return toBitSet(words);
+        }
+    }
+
+    /**
+     * A column of integers or shorts.
+     */
+    static final class IntColumn extends SnapshotColumn {
+
+        private int[] values = new int[0];
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity(values.length, capacity));
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = ((Number) value).intValue();
+        }
+
+        @Override
+        BitSet matchValues(List<?> matching, int size) {
+            int[] keys = new int[matching.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = ((Number) matching.get(i)).intValue();
+            }
+            Arrays.sort(keys);
+            long[] words = new long[(size + 63) >>> 6];
+            for (int i = 0; i < size; i++) {
+                if (Arrays.binarySearch(keys, values[i]) >= 0) {
+                    words[i >>> 6] |= 1L << i;
+                }
+            }
+            return toBitSet(words);
+        }
+
+        @Override
+        BitSet matchBounds(RangeInterval<?> interval, int size) {
+            // Compared as longs, so the exclusive bounds never overflow
+            long lower = Long.MIN_VALUE;
+            long upper = Long.MAX_VALUE;
+            if (interval.getLower() != null) {
+                lower = ((Number) interval.getLower()).longValue() + (interval.isLowerInclusive() ? 0 : 1);
+            }
+            if (interval.getUpper() != null) {
+                upper = ((Number) interval.getUpper()).longValue() - (interval.isUpperInclusive() ? 0 : 1);
+            }
+            long[] words = new long[(size + 63) >>> 6];
+            for (int i = 0; i < size; i++) {
+                long value = values[i];
+                if (value >= lower && value <= upper) {
+                    words[i >>> 6] |= 1L << i;
+                }
+            }
+            return toBitSet(words);
+        }
+    }
+
+    /**
+     * A column of booleans, the rows holding true are set in a bitset.
+     */
+    static final class BooleanColumn extends SnapshotColumn {
+
+        private final BitSet trues = new BitSet();
+
+        @Override
+        void ensureCapacity(int capacity) {
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            trues.set(row, (Boolean) value);
+        }
+
+        @Override
+        BitSet matchValues(List<?> matching, int size) {
+            BitSet result = new BitSet(size);
+            if (matching.contains(Boolean.FALSE)) {
+                result.set(0, size);
+                result.andNot(trues);
+            }
+            if (matching.contains(Boolean.TRUE)) {
+                result.or(trues.get(0, size));
+            }
+            result.andNot(nulls);
+            return result;
+        }
+
+        @Override
+        BitSet matchBounds(RangeInterval<?> interval, int size) {
+            List<Boolean> matching = new ArrayList<>(2);
+            for (Boolean value : Arrays.asList(Boolean.FALSE, Boolean.TRUE)) {
+                if (contains(interval, value)) {
+                    matching.add(value);
+                }
+            }
+            return matchValues(matching, size);
+        }
+    }
+
+    /**
+     * A dictionary encoded column: each distinct value is stored once, and the rows hold its code.
+     */
+    static final class DictionaryColumn extends SnapshotColumn {
+
+        private final Map<Object, Integer> codes = new HashMap<>();
+        private final List<Object> dictionary = new ArrayList<>();
+        private int[] rows = new int[0];
+
+        @Override
+        void ensureCapacity(int capacity) {
+            rows = Arrays.copyOf(rows, capacity(rows.length, capacity));
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                codes.put(value, code);
+            }
+            rows[row] = code;
+        }
+
+        /**
+         * @return the number of distinct values, including the values which are no longer used.
+         */
+        int getDictionarySize() {
+            return dictionary.size();
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        BitSet matchValues(List<?> matching, int size) {
+            if (!dictionary.isEmpty() && dictionary.get(0) instanceof Comparable) {
+                // Compared like in the database, so 1.0 matches 1.00
+                List sorted = new ArrayList<>(matching);
+                Collections.sort(sorted);
+                return matchDictionary(value -> Collections.binarySearch(sorted, value) >= 0, size);
+            }
+            Set<Object> set = new HashSet<>(matching);
+            return matchDictionary(set::contains, size);
+        }
+
+        @Override
+        BitSet matchBounds(RangeInterval<?> interval, int size) {
+            return matchDictionary(value -> contains(interval, value), size);
+        }
+
+        @Override
+        BitSet matchText(Predicate<String> condition, int size) {
+            return matchDictionary(value -> value instanceof String && condition.test((String) value), size);
+        }
+
+        /**
+         * Evaluate the condition once per distinct value, then scan the codes.
+         */
+        private BitSet matchDictionary(Predicate<Object> condition, int size) {
+            boolean[] matching = new boolean[dictionary.size()];
+            boolean any = false;
+            for (int code = 0; code < matching.length; code++) {
+                matching[code] = condition.test(dictionary.get(code));
+                any |= matching[code];
+            }
+            if (!any) {
+                return new BitSet();
+            }
+            long[] words = new long[(size + 63) >>> 6];
+            for (int i = 0; i < size; i++) {
+                if (matching[rows[i]]) {
+                    words[i >>> 6] |= 1L << i;
+                }
+            }
+            return toBitSet(words);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import io.github.simlife.domain.util.FixedPostgreSQL82Dialect;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+
+/**
+ * The text match strategies supported by the dialects of Simlife.
+ */
+public enum StandardTextMatchStrategy implements TextMatchStrategy {
+
+    /**
+     * Renders <code>upper(col) like '%X%'</code>, which works everywhere but always scans the table. This is the
+     * default.
+     */
+    LIKE_UPPER {
+        @Override
+        public Predicate contains(CriteriaBuilder builder, Expression<String> field, Expression<String> pattern) {
+            return builder.like(builder.upper(field), pattern);
+        }
+
+        @Override
+        public String toPattern(String value) {
+            return "%" + value.toUpperCase() + '%';
+        }
+    },
+
+    /**
+     * Renders <code>col ilike '%x%'</code>, which PostgreSQL serves with a trigram index
+     * (<code>create index ... using gin (col gin_trgm_ops)</code>). Also supported by H2.
+     */
+    ILIKE {
+        @Override
+        public Predicate contains(CriteriaBuilder builder, Expression<String> field, Expression<String> pattern) {
+            return builder.isTrue(builder.function(FixedPostgreSQL82Dialect.ILIKE_FUNCTION, Boolean.class, field,
+                pattern));
+        }
+
+        @Override
+        public String toPattern(String value) {
+            return "%" + TextMatchStrategy.escapeLike(value) + '%';
+        }
+    },
+
+    /**
+     * Renders the <code>col % 'x'</code> similarity operator of the PostgreSQL <code>pg_trgm</code> extension, which
+     * matches values similar to the text above <code>pg_trgm.similarity_threshold</code>, and is served by a trigram
+     * index. Only supported by PostgreSQL.
+     */
+    TRIGRAM_SIMILARITY {
+        @Override
+        public Predicate contains(CriteriaBuilder builder, Expression<String> field, Expression<String> pattern) {
+            return builder.isTrue(builder.function(FixedPostgreSQL82Dialect.SIMILAR_FUNCTION, Boolean.class, field,
+                pattern));
+        }
+
+        @Override
+        public String toPattern(String value) {
+            return value;
+        }
+    }
+}
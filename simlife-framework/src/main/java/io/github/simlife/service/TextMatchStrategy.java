@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+
+/**
+ * Strategy rendering the <code>contains</code> condition of a {@link io.github.simlife.service.filter.StringFilter}.
+ * The default <code>upper(col) like '%X%'</code> cannot be served by a B-tree index; databases with text indexes can
+ * use another strategy by overriding {@link QueryService#getTextMatchStrategy()}.
+ *
+ * @see StandardTextMatchStrategy
+ */
+public interface TextMatchStrategy {
+
+    /**
+     * Escape character used in the <code>like</code> patterns built by the strategies.
+     */
+    char LIKE_ESCAPE = '\\';
+
+    /**
+     * Return the predicate matching a field against a pattern.
+     *
+     * @param builder the criteria builder.
+     * @param field   the matched field.
+     * @param pattern the pattern, which is either a literal or a parameter bound to {@link #toPattern(String)}.
+     * @return the predicate.
+     */
+    Predicate contains(CriteriaBuilder builder, Expression<String> field, Expression<String> pattern);
+
+    /**
+     * Return the pattern used by {@link #contains(CriteriaBuilder, Expression, Expression)} for a searched text.
+     *
+     * @param value the text coming from the frontend.
+     * @return the pattern.
+     */
+    String toPattern(String value);
+
+    /**
+     * Escape the wildcards of a text, to use it in a <code>like</code> pattern with {@link #LIKE_ESCAPE}.
+     *
+     * @param value the text.
+     * @return the escaped text.
+     */
+    static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -19,8 +19,12 @@
 
 package io.github.simlife.service.filter;
 
+import java.util.List;
+
 /**
- * Filter class for {@link Long} type attributes.
+ * Filter class for {@link Long} type attributes. The <code>in</code> values are stored unboxed, in a
+ * {@link SortedLongList}, only when they are bound by the <code>CriteriaArgumentResolver</code>; a list set otherwise,
+ * like by a data binder, is kept as is, see {@link #setIn(List)}.
  *
  * @see RangeFilter
  */
@@ -31,4 +35,31 @@ public class LongFilter extends RangeFilter<Long> {
     public LongFilter() {
     }
 
+    /**
+     * Declared again with the concrete element type, so that a data binder converts the values bound by index, like
+     * <code>in[0]=1</code>, to {@link Long}s.
+     *
+     * @return the values of the <code>in</code> condition, may be null.
+     */
+    @Override
+    public List<Long> getIn() {
+        return super.getIn();
+    }
+
+    /**
+     * Set the values of the <code>in</code> condition. The list is kept as is, so it can still be modified through
+     * {@link #getIn()}, like a data binder does for <code>in[0]=1&amp;in[1]=2</code>, and its values are copied into a
+     * compact {@link SortedLongList} each time a query is built, see {@link RangeInterval}. Only the lists bound by the
+     * <code>CriteriaArgumentResolver</code> are already {@link SortedLongList}s, which are used directly; they are
+     * immutable, so they must be copied to be modified.
+     *
+     * @param in the values, may be null.
+     * @return this filter.
+     */
+    @Override
+    public LongFilter setIn(List<Long> in) {
+        super.setIn(in);
+        return this;
+    }
+
 }
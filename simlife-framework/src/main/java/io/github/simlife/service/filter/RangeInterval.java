@@ -0,0 +1,316 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The canonical form of a {@link RangeFilter}: all its conditions intersected into a single interval, or a single set
+ * of values. Redundant bounds are dropped (<code>greaterThan=5&amp;greaterOrEqualThan=3</code> is
+ * <code>greaterThan=5</code>), <code>equals</code> and <code>in</code> are restricted to the values within the
+ * bounds, and contradictory conditions (<code>greaterThan=10&amp;lessThan=5</code>) make the interval
+ * {@link #isEmpty() empty}, so the query can be skipped.
+ * <p>
+ * Like in SQL, a null value matches no bound and no value, so <code>specified=true</code> is implied by any other
+ * condition, and <code>specified=false</code> contradicts them.
+ *
+ * @param <FIELD_TYPE> the type of the filtered values.
+ */
+public final class RangeInterval<FIELD_TYPE extends Comparable<? super FIELD_TYPE>> {
+
+    private final FIELD_TYPE lower;
+    private final boolean lowerInclusive;
+    private final FIELD_TYPE upper;
+    private final boolean upperInclusive;
+    private final List<FIELD_TYPE> values;
+    private final Boolean specified;
+    private final boolean empty;
+
+    private RangeInterval(FIELD_TYPE lower, boolean lowerInclusive, FIELD_TYPE upper, boolean upperInclusive,
+                          List<FIELD_TYPE> values, Boolean specified, boolean empty) {
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+        this.values = values;
+        this.specified = specified;
+        this.empty = empty;
+    }
+
+    /**
+     * Normalize the conditions of a filter.
+     *
+     * @param filter       the filter, may be null.
+     * @param <FIELD_TYPE> the type of the filtered values.
+     * @return the normalized interval.
+     */
+    public static <FIELD_TYPE extends Comparable<? super FIELD_TYPE>> RangeInterval<FIELD_TYPE> of(
+        RangeFilter<FIELD_TYPE> filter) {
+        if (filter == null) {
+            return new RangeInterval<>(null, false, null, false, null, null, false);
+        }
+        FIELD_TYPE lower = filter.getGreaterThan();
+        boolean lowerInclusive = false;
+        FIELD_TYPE greaterOrEqualThan = filter.getGreaterOrEqualThan();
+        if (greaterOrEqualThan != null && (lower == null || greaterOrEqualThan.compareTo(lower) > 0)) {
+            lower = greaterOrEqualThan;
+            lowerInclusive = true;
+        }
+        FIELD_TYPE upper = filter.getLessThan();
+        boolean upperInclusive = false;
+        FIELD_TYPE lessOrEqualThan = filter.getLessOrEqualThan();
+        if (lessOrEqualThan != null && (upper == null || lessOrEqualThan.compareTo(upper) < 0)) {
+            upper = lessOrEqualThan;
+            upperInclusive = true;
+        }
+
+        List<FIELD_TYPE> in = sortedIn(filter);
+        if (in instanceof SortedLongList || in instanceof SortedIntList) {
+            // Already sorted and distinct: the values within the bounds are a sub list, which keeps the primitive array
+            FIELD_TYPE equals = filter.getEquals();
+            if (equals != null) {
+                if (Collections.binarySearch(in, equals) < 0) {
+                    return empty();
+                }
+                in = Collections.singletonList(equals);
+            }
+            int fromIndex = lower == null ? 0 : indexOfBound(in, lower, !lowerInclusive);
+            int toIndex = upper == null ? in.size() : indexOfBound(in, upper, upperInclusive);
+            if (fromIndex >= toIndex || Boolean.FALSE.equals(filter.getSpecified())) {
+                return empty();
+            }
+            return new RangeInterval<>(null, false, null, false, in.subList(fromIndex, toIndex), null, false);
+        }
+
+        TreeSet<FIELD_TYPE> values = null;
+        if (filter.getEquals() != null) {
+            values = new TreeSet<>();
+            values.add(filter.getEquals());
+        }
+        if (in != null) {
+            TreeSet<FIELD_TYPE> retained = new TreeSet<>();
+            for (FIELD_TYPE value : in) {
+                // A null never matches an IN list
+                if (value != null && (values == null || values.contains(value))) {
+                    retained.add(value);
+                }
+            }
+            values = retained;
+        }
+        if (values == null && lower != null && upper != null) {
+            int comparison = lower.compareTo(upper);
+            if (comparison == 0 && lowerInclusive && upperInclusive) {
+                values = new TreeSet<>(Collections.singleton(lower));
+            } else if (comparison >= 0) {
+                return empty();
+            }
+        }
+
+        boolean bounded = lower != null || upper != null || values != null;
+        Boolean specified = filter.getSpecified();
+        if (Boolean.FALSE.equals(specified) && bounded) {
+            return empty();
+        } else if (bounded) {
+            specified = null;
+        }
+        if (values != null) {
+            List<FIELD_TYPE> retained = new ArrayList<>(values.size());
+            for (FIELD_TYPE value : values) {
+                if (matchesBounds(value, lower, lowerInclusive, upper, upperInclusive)) {
+                    retained.add(value);
+                }
+            }
+            if (retained.isEmpty()) {
+                return empty();
+            }
+            // The values subsume the bounds
+            return new RangeInterval<>(null, false, null, false, Collections.unmodifiableList(retained), null, false);
+        }
+        return new RangeInterval<>(lower, lowerInclusive, upper, upperInclusive, null, specified, false);
+    }
+
+    private static <FIELD_TYPE extends Comparable<? super FIELD_TYPE>> RangeInterval<FIELD_TYPE> empty() {
+        return new RangeInterval<>(null, false, null, false, Collections.<FIELD_TYPE>emptyList(), null, true);
+    }
+
+    /**
+     * Return the index of the first value of a sorted list which is greater than the bound, or equal to it if
+     * <code>after</code> is false.
+     */
+    private static <FIELD_TYPE extends Comparable<? super FIELD_TYPE>> int indexOfBound(List<FIELD_TYPE> sorted,
+                                                                                        FIELD_TYPE bound,
+                                                                                        boolean after) {
+        int index = Collections.binarySearch(sorted, bound);
+        if (index < 0) {
+            return -index - 1;
+        }
+        return after ? index + 1 : index;
+    }
+
+    private static <FIELD_TYPE extends Comparable<? super FIELD_TYPE>> boolean matchesBounds(
+        FIELD_TYPE value, FIELD_TYPE lower, boolean lowerInclusive, FIELD_TYPE upper, boolean upperInclusive) {
+        if (lower != null) {
+            int comparison = value.compareTo(lower);
+            if (comparison < 0 || comparison == 0 && !lowerInclusive) {
+                return false;
+            }
+        }
+        if (upper != null) {
+            int comparison = value.compareTo(upper);
+            return comparison < 0 || comparison == 0 && upperInclusive;
+        }
+        return true;
+    }
+
+    /**
+     * Return the <code>in</code> values of a filter, sorted into a primitive list for the {@link LongFilter} and
+     * {@link IntegerFilter}. Only the lists bound by the <code>CriteriaArgumentResolver</code> are already sorted; the
+     * others, like the ones of a data binder, are kept as set so they remain modifiable, and are copied here.
+     */
+    @SuppressWarnings("unchecked")
+    private static <FIELD_TYPE extends Comparable<? super FIELD_TYPE>> List<FIELD_TYPE> sortedIn(
+        RangeFilter<FIELD_TYPE> filter) {
+        List<FIELD_TYPE> in = filter.getIn();
+        if (in == null || in instanceof SortedLongList || in instanceof SortedIntList) {
+            return in;
+        } else if (filter instanceof LongFilter) {
+            return (List<FIELD_TYPE>) SortedLongList.of((List<Long>) in);
+        } else if (filter instanceof IntegerFilter) {
+            return (List<FIELD_TYPE>) SortedIntList.of((List<Integer>) in);
+        }
+        return in;
+    }
+
+    /**
+     * @return true if no value can match the filter.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return true if any value, including null, matches the filter.
+     */
+    public boolean isUnrestricted() {
+        return !empty && lower == null && upper == null && values == null && specified == null;
+    }
+
+    /**
+     * @return the lower bound, or null if there is none.
+     */
+    public FIELD_TYPE getLower() {
+        return lower;
+    }
+
+    /**
+     * @return true if the lower bound matches itself, like <code>greaterOrEqualThan</code>.
+     */
+    public boolean isLowerInclusive() {
+        return lowerInclusive;
+    }
+
+    /**
+     * @return the upper bound, or null if there is none.
+     */
+    public FIELD_TYPE getUpper() {
+        return upper;
+    }
+
+    /**
+     * @return true if the upper bound matches itself, like <code>lessOrEqualThan</code>.
+     */
+    public boolean isUpperInclusive() {
+        return upperInclusive;
+    }
+
+    /**
+     * @return the sorted, distinct matching values, or null if the filter is not restricted to a set of values, in
+     * which case there is no bound.
+     */
+    public List<FIELD_TYPE> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the remaining null/non-null condition, or null if there is none or if it is implied by the bounds.
+     */
+    public Boolean getSpecified() {
+        return specified;
+    }
+
+    /**
+     * Restrict an interval which has no lower bound, like a time range which would otherwise scan the whole history.
+     * The intervals which are empty, restricted to a set of values, already have a lower bound, or only match null,
+     * are returned as is.
+     *
+     * @param bound the inclusive lower bound to use if there is none.
+     * @return the restricted interval.
+     */
+    public RangeInterval<FIELD_TYPE> withDefaultLower(FIELD_TYPE bound) {
+        if (empty || values != null || lower != null || Boolean.FALSE.equals(specified)) {
+            return this;
+        }
+        if (upper != null) {
+            int comparison = bound.compareTo(upper);
+            if (comparison > 0 || comparison == 0 && !upperInclusive) {
+                return empty();
+            } else if (comparison == 0) {
+                return new RangeInterval<>(null, false, null, false, Collections.singletonList(bound), null, false);
+            }
+        }
+        return new RangeInterval<>(bound, true, upper, upperInclusive, null, null, false);
+    }
+
+    /**
+     * Test a value against the interval, with the semantics of SQL.
+     *
+     * @param value the value, may be null.
+     * @return true if the value matches.
+     */
+    public boolean contains(FIELD_TYPE value) {
+        if (empty) {
+            return false;
+        } else if (value == null) {
+            return lower == null && upper == null && values == null && !Boolean.TRUE.equals(specified);
+        } else if (Boolean.FALSE.equals(specified)) {
+            return false;
+        } else if (values != null) {
+            return Collections.binarySearch(values, value) >= 0;
+        }
+        return matchesBounds(value, lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    @Override
+    public String toString() {
+        if (empty) {
+            return "RangeInterval [empty]";
+        }
+        return "RangeInterval ["
+            + (values != null ? "values=" + values : "")
+            + (lower != null ? (lowerInclusive ? "[" : "(") + lower : "")
+            + (lower != null || upper != null ? ".." : "")
+            + (upper != null ? upper + (upperInclusive ? "]" : ")") : "")
+            + (specified != null ? "specified=" + specified : "")
+            + "]";
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service.filter;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of distinct {@link Integer}s in ascending order, stored in a <code>int[]</code>: the values of large
+ * <code>in</code> conditions, like bulk lookups by id, take 4 bytes each instead of a boxed object each. The elements
+ * are only boxed when read through the {@link List} interface.
+ *
+ * @see IntegerFilter#setIn(List)
+ */
+public final class SortedIntList extends AbstractList<Integer> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final SortedIntList EMPTY = new SortedIntList(new int[0], 0, 0);
+
+    private final int[] values;
+    private final int from;
+    private final int to;
+
+    private SortedIntList(int[] values, int from, int to) {
+        this.values = values;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param values the values, in any order, may contain duplicates and nulls, which never match an
+     *               <code>in</code> condition and are dropped.
+     * @return the sorted distinct values.
+     */
+    public static SortedIntList of(Collection<? extends Number> values) {
+        if (values instanceof SortedIntList) {
+            return (SortedIntList) values;
+        }
+        int[] array = new int[values.size()];
+        int size = 0;
+        for (Number value : values) {
+            if (value != null) {
+                array[size++] = value.intValue();
+            }
+        }
+        return sortDistinct(array, size);
+    }
+
+    /**
+     * @param values the values, in any order, may contain duplicates.
+     * @return the sorted distinct values.
+     */
+    public static SortedIntList of(int... values) {
+        return sortDistinct(Arrays.copyOf(values, values.length), values.length);
+    }
+
+    private static SortedIntList sortDistinct(int[] array, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        Arrays.sort(array, 0, size);
+        int distinct = 1;
+        for (int i = 1; i < size; i++) {
+            if (array[i] != array[distinct - 1]) {
+                array[distinct++] = array[i];
+            }
+        }
+        return new SortedIntList(array, 0, distinct);
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    /**
+     * @param index the index of the element.
+     * @return the element, without boxing it.
+     */
+    public int getInt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return values[from + index];
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Integer)) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(values, from, to, (Integer) o);
+        return index >= 0 ? index - from : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    /**
+     * The sub list shares the array of this list.
+     */
+    @Override
+    public SortedIntList subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size());
+        }
+        return new SortedIntList(values, from + fromIndex, from + toIndex);
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SortedIntList)) {
+            return super.equals(o);
+        }
+        SortedIntList other = (SortedIntList) o;
+        if (size() != other.size()) {
+            return false;
+        }
+        for (int i = 0; i < size(); i++) {
+            if (values[from + i] != other.values[other.from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Same as the hash code of a list of Integers, without boxing
+        int hashCode = 1;
+        for (int i = from; i < to; i++) {
+            hashCode = 31 * hashCode + Integer.hashCode(values[i]);
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(size() * 6 + 2).append('[');
+        for (int i = from; i < to; i++) {
+            builder.append(i == from ? "" : ", ").append(values[i]);
+        }
+        return builder.append(']').toString();
+    }
+}
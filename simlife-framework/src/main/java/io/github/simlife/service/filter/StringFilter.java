@@ -19,6 +19,8 @@
 
 package io.github.simlife.service.filter;
 
+import java.util.Objects;
+
 /**
  * Class for filtering attributes with {@link String} type.
  * It can be added to a criteria class as a member, to support the following query parameters:
@@ -28,6 +30,7 @@ package io.github.simlife.service.filter;
  * fieldName.specified=false
  * fieldName.in='something','other'
  * fieldName.contains='thing'
+ * fieldName.startsWith='some'
  * </code>
  */
 public class StringFilter extends Filter<String> {
@@ -36,6 +39,8 @@ public class StringFilter extends Filter<String> {
 
     private String contains;
 
+    private String startsWith;
+
     public String getContains() {
         return contains;
     }
@@ -45,10 +50,38 @@ public class StringFilter extends Filter<String> {
         return this;
     }
 
+    public String getStartsWith() {
+        return startsWith;
+    }
+
+    public StringFilter setStartsWith(String startsWith) {
+        this.startsWith = startsWith;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!super.equals(o)) {
+            return false;
+        }
+        final StringFilter that = (StringFilter) o;
+        return Objects.equals(contains, that.contains) &&
+            Objects.equals(startsWith, that.startsWith);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), contains, startsWith);
+    }
+
     @Override
     public String toString() {
         return getFilterName() + " ["
             + (getContains() != null ? "contains=" + getContains() + ", " : "")
+            + (getStartsWith() != null ? "startsWith=" + getStartsWith() + ", " : "")
             + (getEquals() != null ? "equals=" + getEquals() + ", " : "")
             + (getSpecified() != null ? "specified=" + getSpecified() : "")
             + "]";
@@ -19,7 +19,9 @@
 
 package io.github.simlife.service.filter;
 
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.format.annotation.DateTimeFormat;
@@ -75,4 +77,35 @@ public class ZonedDateTimeFilter extends RangeFilter<ZonedDateTime> {
         super.setIn(in);
         return this;
     }
+
+    /**
+     * Return a copy of this filter, with all the values converted to the same instants in the given zone. Values
+     * from different zones then compare and bind consistently, see
+     * {@link io.github.simlife.service.QueryService#buildTimeRangeSpecification(ZonedDateTimeFilter,
+     * javax.persistence.metamodel.SingularAttribute)}.
+     *
+     * @param zone the zone, typically UTC.
+     * @return the converted filter.
+     */
+    public ZonedDateTimeFilter withZoneSameInstant(ZoneId zone) {
+        ZonedDateTimeFilter result = new ZonedDateTimeFilter();
+        result.setEquals(convert(getEquals(), zone));
+        result.setGreaterThan(convert(getGreaterThan(), zone));
+        result.setGreaterOrEqualThan(convert(getGreaterOrEqualThan(), zone));
+        result.setLessThan(convert(getLessThan(), zone));
+        result.setLessOrEqualThan(convert(getLessOrEqualThan(), zone));
+        result.setSpecified(getSpecified());
+        if (getIn() != null) {
+            List<ZonedDateTime> in = new ArrayList<>(getIn().size());
+            for (ZonedDateTime value : getIn()) {
+                in.add(convert(value, zone));
+            }
+            result.setIn(in);
+        }
+        return result;
+    }
+
+    private static ZonedDateTime convert(ZonedDateTime value, ZoneId zone) {
+        return value == null ? null : value.withZoneSameInstant(zone);
+    }
 }
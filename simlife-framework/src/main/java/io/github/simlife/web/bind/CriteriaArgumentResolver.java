@@ -0,0 +1,418 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.web.bind;
+
+import io.github.simlife.service.filter.Filter;
+import io.github.simlife.service.filter.RangeFilter;
+import io.github.simlife.service.filter.SortedIntList;
+import io.github.simlife.service.filter.SortedLongList;
+import io.github.simlife.service.filter.StringFilter;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Resolves the criteria arguments of controller methods, the classes whose properties are all {@link Filter}s, from
+ * query parameters like <code>age.greaterThan=18&amp;name.contains=foo</code>, without the reflective
+ * {@link org.springframework.web.bind.WebDataBinder}. The parameter names and the parsers of the values are
+ * computed once per criteria class, so binding a request only looks up each query parameter in a map, and parses
+ * its values. The <code>in</code> values of {@link io.github.simlife.service.filter.LongFilter}s and
+ * {@link io.github.simlife.service.filter.IntegerFilter}s are parsed straight into primitive arrays.
+ * <p>
+ * The values are parsed like by the data binder: ISO formats for the dates, <code>true</code>, <code>on</code>,
+ * <code>yes</code> or <code>1</code> for the booleans, comma separated or repeated values for <code>in</code>, and an
+ * empty value leaves the condition unset. An invalid value is reported as a
+ * {@link MethodArgumentTypeMismatchException}, so the response is a <code>400 Bad Request</code>.
+ * <p>
+ * The criteria classes with a property which is not a filter, or a filter of an unsupported type, as well as the
+ * annotated arguments (<code>@Valid</code>, <code>@ModelAttribute</code>...), are left to the data binder. The
+ * resolver is registered with a {@link org.springframework.web.servlet.config.annotation.WebMvcConfigurer}:
+ * <pre>
+ *   public void addArgumentResolvers(List&lt;HandlerMethodArgumentResolver&gt; resolvers) {
+ *       resolvers.add(new CriteriaArgumentResolver(EmployeeCriteria.class, ProjectCriteria.class));
+ *   }
+ * </pre>
+ */
+public class CriteriaArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private static final Map<Class<?>, Function<String, ?>> PARSERS = new HashMap<>();
+
+    static {
+        PARSERS.put(String.class, Function.identity());
+        PARSERS.put(Boolean.class, CriteriaArgumentResolver::parseBoolean);
+        PARSERS.put(Short.class, Short::valueOf);
+        PARSERS.put(Integer.class, Integer::valueOf);
+        PARSERS.put(Long.class, Long::valueOf);
+        PARSERS.put(Float.class, Float::valueOf);
+        PARSERS.put(Double.class, Double::valueOf);
+        PARSERS.put(BigDecimal.class, BigDecimal::new);
+        PARSERS.put(UUID.class, UUID::fromString);
+        PARSERS.put(Instant.class, Instant::parse);
+        PARSERS.put(LocalDate.class, value -> LocalDate.parse(value, DateTimeFormatter.ISO_DATE));
+        PARSERS.put(ZonedDateTime.class, value -> ZonedDateTime.parse(value, DateTimeFormatter.ISO_DATE_TIME));
+    }
+
+    private final Map<Class<?>, Optional<BindingTable>> tables = new ConcurrentHashMap<>();
+
+    /**
+     * @param criteriaClasses the criteria classes whose binding tables are built right away, the tables of other
+     *                        classes are built when they are first met.
+     */
+    public CriteriaArgumentResolver(Class<?>... criteriaClasses) {
+        for (Class<?> criteriaClass : criteriaClasses) {
+            getBindingTable(criteriaClass);
+        }
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return !parameter.hasParameterAnnotations() && getBindingTable(parameter.getParameterType()).isPresent();
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) throws Exception {
+        BindingTable table = getBindingTable(parameter.getParameterType())
+            .orElseThrow(() -> new IllegalStateException("Unsupported parameter " + parameter));
+        Filter<?>[] filters = new Filter<?>[table.properties.length];
+        for (Iterator<String> names = webRequest.getParameterNames(); names.hasNext(); ) {
+            String name = names.next();
+            Binding binding = table.bindings.get(name);
+            if (binding == null) {
+                continue;
+            }
+            String[] values = webRequest.getParameterValues(name);
+            Property property = table.properties[binding.property];
+            if (filters[binding.property] == null) {
+                filters[binding.property] = (Filter<?>) newInstance(property.constructor);
+            }
+            try {
+                binding.bind(filters[binding.property], values, property.parser);
+            } catch (IllegalArgumentException | java.time.DateTimeException e) {
+                throw new MethodArgumentTypeMismatchException(values.length == 1 ? values[0] : values,
+                    property.valueType, name, parameter, e);
+            }
+        }
+        Object criteria = newInstance(table.constructor);
+        for (int i = 0; i < filters.length; i++) {
+            if (filters[i] != null) {
+                set(table.properties[i].setter, criteria, filters[i]);
+            }
+        }
+        return criteria;
+    }
+
+    private static Object newInstance(MethodHandle constructor) {
+        try {
+            return (Object) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void set(MethodHandle setter, Object target, Object value) {
+        try {
+            setter.invokeExact(target, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Optional<BindingTable> getBindingTable(Class<?> type) {
+        return tables.computeIfAbsent(type, CriteriaArgumentResolver::buildBindingTable);
+    }
+
+    /**
+     * Build the binding table of a criteria class, or return nothing if the class is not made of filters only.
+     */
+    private static Optional<BindingTable> buildBindingTable(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || !Modifier.isPublic(type.getModifiers())
+            || type.getName().startsWith("java.")) {
+            return Optional.empty();
+        }
+        MethodHandle constructor = constructor(type);
+        if (constructor == null) {
+            return Optional.empty();
+        }
+        List<Property> properties = new ArrayList<>();
+        Map<String, Binding> bindings = new HashMap<>();
+        for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(type)) {
+            Method writeMethod = descriptor.getWriteMethod();
+            if (writeMethod == null) {
+                if (descriptor.getReadMethod() != null && descriptor.getReadMethod().getDeclaringClass() == Object.class) {
+                    continue;
+                }
+                return Optional.empty();
+            }
+            Property property = property(descriptor.getPropertyType(), writeMethod);
+            if (property == null) {
+                return Optional.empty();
+            }
+            for (Operator operator : Operator.values()) {
+                if (operator.filterType.isAssignableFrom(descriptor.getPropertyType())) {
+                    bindings.put(descriptor.getName() + '.' + operator.parameterName,
+                        new Binding(properties.size(), operator));
+                }
+            }
+            properties.add(property);
+        }
+        if (properties.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new BindingTable(constructor, properties.toArray(new Property[0]), bindings));
+    }
+
+    private static Property property(Class<?> filterType, Method writeMethod) {
+        if (!Filter.class.isAssignableFrom(filterType)) {
+            return null;
+        }
+        Class<?> valueType = GenericTypeResolver.resolveTypeArgument(filterType, Filter.class);
+        Function<String, ?> parser = parser(valueType);
+        MethodHandle constructor = constructor(filterType);
+        if (parser == null || constructor == null) {
+            return null;
+        }
+        try {
+            MethodHandle setter = MethodHandles.publicLookup().unreflect(writeMethod)
+                .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return new Property(constructor, setter, valueType, parser);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Function<String, ?> parser(Class<?> valueType) {
+        if (valueType == null) {
+            return null;
+        } else if (valueType.isEnum()) {
+            return value -> Enum.valueOf((Class) valueType, value);
+        }
+        return PARSERS.get(valueType);
+    }
+
+    private static MethodHandle constructor(Class<?> type) {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            Constructor<?> constructor = type.getConstructor();
+            return MethodHandles.publicLookup().unreflectConstructor(constructor)
+                .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        switch (value.toLowerCase()) {
+            case "true":
+            case "on":
+            case "yes":
+            case "1":
+                return Boolean.TRUE;
+            case "false":
+            case "off":
+            case "no":
+            case "0":
+                return Boolean.FALSE;
+            default:
+                throw new IllegalArgumentException("Invalid boolean value '" + value + "'");
+        }
+    }
+
+    /**
+     * Parse a single value, trimmed unless it is a string: an empty value is null, like with the data binder.
+     */
+    private static Object parse(String value, Function<String, ?> parser) {
+        if (parser == PARSERS.get(String.class)) {
+            return value;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : parser.apply(trimmed);
+    }
+
+    /**
+     * The conditions which can be set by a query parameter, on the filters of a given type.
+     */
+    private enum Operator {
+        EQUALS("equals", Filter.class),
+        IN("in", Filter.class),
+        SPECIFIED("specified", Filter.class),
+        GREATER_THAN("greaterThan", RangeFilter.class),
+        GREATER_OR_EQUAL_THAN("greaterOrEqualThan", RangeFilter.class),
+        LESS_THAN("lessThan", RangeFilter.class),
+        LESS_OR_EQUAL_THAN("lessOrEqualThan", RangeFilter.class),
+        CONTAINS("contains", StringFilter.class),
+        STARTS_WITH("startsWith", StringFilter.class);
+
+        private final String parameterName;
+        private final Class<?> filterType;
+
+        Operator(String parameterName, Class<?> filterType) {
+            this.parameterName = parameterName;
+            this.filterType = filterType;
+        }
+    }
+
+    private static final class BindingTable {
+
+        private final MethodHandle constructor;
+        private final Property[] properties;
+        private final Map<String, Binding> bindings;
+
+        private BindingTable(MethodHandle constructor, Property[] properties, Map<String, Binding> bindings) {
+            this.constructor = constructor;
+            this.properties = properties;
+            this.bindings = bindings;
+        }
+    }
+
+    private static final class Property {
+
+        private final MethodHandle constructor;
+        private final MethodHandle setter;
+        private final Class<?> valueType;
+        private final Function<String, ?> parser;
+
+        private Property(MethodHandle constructor, MethodHandle setter, Class<?> valueType,
+                         Function<String, ?> parser) {
+            this.constructor = constructor;
+            this.setter = setter;
+            this.valueType = valueType;
+            this.parser = parser;
+        }
+    }
+
+    private static final class Binding {
+
+        private final int property;
+        private final Operator operator;
+
+        private Binding(int property, Operator operator) {
+            this.property = property;
+            this.operator = operator;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void bind(Filter filter, String[] values, Function<String, ?> parser) {
+            switch (operator) {
+                case EQUALS:
+                    filter.setEquals(parse(values[0], parser));
+                    break;
+                case IN:
+                    filter.setIn(parseList(values, parser));
+                    break;
+                case SPECIFIED:
+                    filter.setSpecified((Boolean) parse(values[0], CriteriaArgumentResolver::parseBoolean));
+                    break;
+                case GREATER_THAN:
+                    ((RangeFilter) filter).setGreaterThan((Comparable) parse(values[0], parser));
+                    break;
+                case GREATER_OR_EQUAL_THAN:
+                    ((RangeFilter) filter).setGreaterOrEqualThan((Comparable) parse(values[0], parser));
+                    break;
+                case LESS_THAN:
+                    ((RangeFilter) filter).setLessThan((Comparable) parse(values[0], parser));
+                    break;
+                case LESS_OR_EQUAL_THAN:
+                    ((RangeFilter) filter).setLessOrEqualThan((Comparable) parse(values[0], parser));
+                    break;
+                case CONTAINS:
+                    ((StringFilter) filter).setContains(values[0]);
+                    break;
+                case STARTS_WITH:
+                    ((StringFilter) filter).setStartsWith(values[0]);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operator " + operator);
+            }
+        }
+
+        /**
+         * Parse comma separated or repeated values, the numeric ids straight into primitive arrays.
+         */
+        private static List<?> parseList(String[] values, Function<String, ?> parser) {
+            List<String> tokens = new ArrayList<>();
+            for (String value : values) {
+                tokens.addAll(Arrays.asList(value.split(",")));
+            }
+            if (parser == PARSERS.get(Long.class)) {
+                long[] longs = new long[tokens.size()];
+                int size = 0;
+                for (String token : tokens) {
+                    String trimmed = token.trim();
+                    if (!trimmed.isEmpty()) {
+                        longs[size++] = Long.parseLong(trimmed);
+                    }
+                }
+                return SortedLongList.of(Arrays.copyOf(longs, size));
+            } else if (parser == PARSERS.get(Integer.class)) {
+                int[] ints = new int[tokens.size()];
+                int size = 0;
+                for (String token : tokens) {
+                    String trimmed = token.trim();
+                    if (!trimmed.isEmpty()) {
+                        ints[size++] = Integer.parseInt(trimmed);
+                    }
+                }
+                return SortedIntList.of(Arrays.copyOf(ints, size));
+            }
+            List<Object> list = new ArrayList<>(tokens.size());
+            for (String token : tokens) {
+                list.add(parse(token, parser));
+            }
+            return list;
+        }
+    }
+}
@@ -21,13 +21,26 @@ package io.github.simlife.web.util;
 
 import java.util.Optional;
 
+import org.springframework.data.domain.Page;
 import org.springframework.http.*;
 
+import io.github.simlife.service.ApproximatePage;
+
 /**
  * Utility class for ResponseEntity creation.
  */
 public interface ResponseUtil {
 
+    /**
+     * Header holding the total number of elements of a paged response.
+     */
+    String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    /**
+     * Header set to <code>true</code> when the {@link #TOTAL_COUNT_HEADER} is not exact.
+     */
+    String TOTAL_COUNT_APPROXIMATE_HEADER = "X-Total-Count-Approximate";
+
     /**
      * Wrap the optional into a {@link ResponseEntity} with an {@link HttpStatus#OK} status, or if it's empty, it
      * returns a {@link ResponseEntity} with {@link HttpStatus#NOT_FOUND}.
@@ -54,4 +67,20 @@ public interface ResponseUtil {
             .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
+    /**
+     * Create the headers holding the total number of elements of a page, marked as approximate if the page is an
+     * {@link ApproximatePage}.
+     *
+     * @param page the page.
+     * @return the headers.
+     */
+    public static HttpHeaders totalCountHeaders(Page<?> page) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(TOTAL_COUNT_HEADER, Long.toString(page.getTotalElements()));
+        if (page instanceof ApproximatePage) {
+            headers.add(TOTAL_COUNT_APPROXIMATE_HEADER, Boolean.TRUE.toString());
+        }
+        return headers;
+    }
+
 }
@@ -320,6 +320,46 @@ public class SimlifePropertiesTest {
         assertThat(obj.isUseBinaryProtocol()).isEqualTo(val);
     }
 
+    @Test
+    public void testCacheTokenCacheEnabled() {
+        SimlifeProperties.Cache.TokenCache obj = properties.getCache().getTokenCache();
+        boolean val = SimlifeDefaults.Cache.TokenCache.enabled;
+        assertThat(obj.isEnabled()).isEqualTo(val);
+        val = !val;
+        obj.setEnabled(val);
+        assertThat(obj.isEnabled()).isEqualTo(val);
+    }
+
+    @Test
+    public void testCacheTokenCacheTimeToLiveSeconds() {
+        SimlifeProperties.Cache.TokenCache obj = properties.getCache().getTokenCache();
+        int val = SimlifeDefaults.Cache.TokenCache.timeToLiveSeconds;
+        assertThat(obj.getTimeToLiveSeconds()).isEqualTo(val);
+        val++;
+        obj.setTimeToLiveSeconds(val);
+        assertThat(obj.getTimeToLiveSeconds()).isEqualTo(val);
+    }
+
+    @Test
+    public void testCacheTokenCacheMaxEntries() {
+        SimlifeProperties.Cache.TokenCache obj = properties.getCache().getTokenCache();
+        int val = SimlifeDefaults.Cache.TokenCache.maxEntries;
+        assertThat(obj.getMaxEntries()).isEqualTo(val);
+        val++;
+        obj.setMaxEntries(val);
+        assertThat(obj.getMaxEntries()).isEqualTo(val);
+    }
+
+    @Test
+    public void testCacheTokenCacheCacheName() {
+        SimlifeProperties.Cache.TokenCache obj = properties.getCache().getTokenCache();
+        String val = SimlifeDefaults.Cache.TokenCache.cacheName;
+        assertThat(obj.getCacheName()).isEqualTo(val);
+        val = "1" + val;
+        obj.setCacheName(val);
+        assertThat(obj.getCacheName()).isEqualTo(val);
+    }
+
     @Test
     public void testMailFrom() {
         SimlifeProperties.Mail obj = properties.getMail();
@@ -38,6 +38,8 @@ import org.springframework.web.method.HandlerMethod;
 
 import com.fasterxml.classmate.TypeResolver;
 
+import io.github.simlife.service.KeysetCursor;
+
 import springfox.documentation.RequestHandler;
 import springfox.documentation.builders.OperationBuilder;
 import springfox.documentation.schema.JacksonEnumTypeDeterminer;
@@ -127,7 +129,34 @@ public class PageableParameterBuilderPluginTest {
         assertThat(parameter2.isAllowMultiple()).isEqualTo(true);
     }
 
+    @Test
+    public void testApplyWithCursor() throws Exception {
+        Method method = this.getClass().getMethod("testCursor", new Class<?>[] { KeysetCursor.class });
+        RequestHandler handler = new WebMvcRequestHandler(new HandlerMethodResolver(resolver), null, new
+            HandlerMethod(this, method));
+        RequestMappingContext reqContext = new RequestMappingContext(mock(DocumentationContext.class), handler);
+        OperationBuilder cursorBuilder = spy(new OperationBuilder(null));
+        OperationContext cursorContext = new OperationContext(cursorBuilder, RequestMethod.GET, reqContext, 0);
+
+        plugin.apply(cursorContext);
+        verify(cursorBuilder).parameters(captor.capture());
+
+        List<Parameter> parameters = captor.getValue();
+        assertThat(parameters).hasSize(1);
+
+        Parameter parameter0 = parameters.get(0);
+        assertThat(parameter0.getParamType()).isEqualTo(PageableParameterBuilderPlugin.CURSOR_TYPE);
+        assertThat(parameter0.getName()).isEqualTo(PageableParameterBuilderPlugin.DEFAULT_CURSOR_NAME);
+        assertThat(parameter0.getDescription()).isEqualTo(PageableParameterBuilderPlugin.CURSOR_DESCRIPTION);
+        assertThat(parameter0.getModelRef().getType()).isEqualTo("string");
+        assertThat(parameter0.isRequired()).isEqualTo(false);
+    }
+
     public void test(Pageable yes, Integer no) {
         // noop
     }
+
+    public void testCursor(KeysetCursor cursor) {
+        // noop
+    }
 }
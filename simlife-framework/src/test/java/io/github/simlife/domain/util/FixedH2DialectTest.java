@@ -41,7 +41,7 @@ public class FixedH2DialectTest {
 
         Map<Integer, String> registered = new LinkedHashMap<>();
 
-        new FixedH2Dialect() {
+        Dialect dialect = new FixedH2Dialect() {
 
             @Override
             protected void registerColumnType(int code, String name) {
@@ -52,6 +52,7 @@ public class FixedH2DialectTest {
         };
 
         assertThat(registered.get(Types.FLOAT)).isEqualTo("real");
+        assertThat(dialect.getFunctions()).containsKey(FixedPostgreSQL82Dialect.ILIKE_FUNCTION);
 
         recorders.forEach(LogbackRecorder::release);
     }
@@ -72,6 +72,19 @@ public class FixedPostgreSQL82DialectTest {
         assertThat(descriptor).isEqualTo(BinaryTypeDescriptor.INSTANCE);
     }
 
+    @Test
+    public void testArrayAnyFunctionsRegister() {
+        for (String type : FixedPostgreSQL82Dialect.ARRAY_ANY_TYPES) {
+            assertThat(dialect.getFunctions()).containsKey(FixedPostgreSQL82Dialect.ARRAY_ANY_FUNCTION_PREFIX + type);
+        }
+    }
+
+    @Test
+    public void testTextMatchFunctionsRegister() {
+        assertThat(dialect.getFunctions()).containsKey(FixedPostgreSQL82Dialect.ILIKE_FUNCTION);
+        assertThat(dialect.getFunctions()).containsKey(FixedPostgreSQL82Dialect.SIMILAR_FUNCTION);
+    }
+
     @Test
     public void testOtherTypeRemap() {
         SqlTypeDescriptor descriptor = dialect.remapSqlTypeDescriptor(BooleanTypeDescriptor.INSTANCE);
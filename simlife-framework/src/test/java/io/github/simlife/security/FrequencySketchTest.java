@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        assertThat(sketch.frequency("key")).isEqualTo(0);
+        sketch.increment("key");
+        sketch.increment("key");
+        assertThat(sketch.frequency("key")).isEqualTo(2);
+    }
+
+    @Test
+    public void testSaturates() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("key");
+        }
+        assertThat(sketch.frequency("key")).isEqualTo(15);
+    }
+
+    @Test
+    public void testReset() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("key");
+        }
+        // Ends the sample of 640 additions, which halves the counters
+        for (int i = 0; i < 640; i++) {
+            sketch.increment("other" + i);
+        }
+        assertThat(sketch.frequency("key")).isEqualTo(5);
+    }
+}
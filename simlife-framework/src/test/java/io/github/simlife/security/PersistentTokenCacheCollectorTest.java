@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentTokenCacheCollectorTest {
+
+    @Test
+    public void testCollect() {
+        PersistentTokenCache<String> bounded = new PersistentTokenCache<>(60_000l, 1);
+        bounded.put("first", "val");
+        bounded.put("second", "val");
+        bounded.get("second");
+        bounded.get("absent");
+        PersistentTokenCache<String> unbounded = new PersistentTokenCache<>(60_000l);
+        unbounded.put("key", "val");
+
+        CollectorRegistry registry = new CollectorRegistry();
+        new PersistentTokenCacheCollector()
+            .addCache("bounded", bounded)
+            .addCache("unbounded", unbounded)
+            .register(registry);
+
+        String[] labelNames = {"cache"};
+        String[] labels = {"bounded"};
+        assertThat(registry.getSampleValue("simlife_token_cache_hits_total", labelNames, labels)).isEqualTo(1.0);
+        assertThat(registry.getSampleValue("simlife_token_cache_misses_total", labelNames, labels)).isEqualTo(1.0);
+        assertThat(registry.getSampleValue("simlife_token_cache_evictions_total", labelNames, labels)).isEqualTo(1.0);
+        assertThat(registry.getSampleValue("simlife_token_cache_expirations_total", labelNames, labels)).isEqualTo(0.0);
+        assertThat(registry.getSampleValue("simlife_token_cache_size", labelNames, labels)).isEqualTo(1.0);
+        assertThat(registry.getSampleValue("simlife_token_cache_maximum_size", labelNames, labels)).isEqualTo(1.0);
+        assertThat(registry.getSampleValue("simlife_token_cache_size", labelNames, new String[]{"unbounded"}))
+            .isEqualTo(1.0);
+        assertThat(registry.getSampleValue("simlife_token_cache_maximum_size", labelNames, new String[]{"unbounded"}))
+            .isNull();
+    }
+}
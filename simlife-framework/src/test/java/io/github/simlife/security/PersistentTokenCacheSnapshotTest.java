@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentTokenCacheSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setup() {
+        file = folder.getRoot().toPath().resolve("tokens.bin");
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        cache.put("key", "val");
+        cache.put("clé", "token");
+        assertThat(snapshot(cache).save()).isEqualTo(2);
+        assertThat(file).exists();
+
+        PersistentTokenCache<String> restored = new PersistentTokenCache<>(60_000l);
+        assertThat(snapshot(restored).load()).isEqualTo(2);
+        assertThat(restored.get("key")).isEqualTo("val");
+        assertThat(restored.get("clé")).isEqualTo("token");
+        // Not restored twice
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void testMissingSnapshot() throws IOException {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        assertThat(snapshot(cache).load()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExpiredTokensAreSkipped() throws Exception {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(200l);
+        cache.put("key", "val");
+        assertThat(snapshot(cache).save()).isEqualTo(1);
+        Thread.sleep(300l);
+
+        PersistentTokenCache<String> restored = new PersistentTokenCache<>(60_000l);
+        assertThat(snapshot(restored).load()).isEqualTo(0);
+        assertThat(restored.size()).isEqualTo(0);
+        assertThat(snapshot(restored).save()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExpirationIsKept() throws Exception {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(300l);
+        cache.put("key", "val");
+        snapshot(cache).save();
+
+        PersistentTokenCache<String> restored = new PersistentTokenCache<>(60_000l);
+        snapshot(restored).load();
+        assertThat(restored.get("key")).isEqualTo("val");
+        Thread.sleep(400l);
+        assertThat(restored.get("key")).isNull();
+    }
+
+    @Test
+    public void testInvalidSnapshotIsIgnored() throws IOException {
+        Files.write(file, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        assertThat(snapshot(cache).load()).isEqualTo(0);
+        // Not reported again on the next startup
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsIgnored() throws IOException {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        cache.put("key", "val");
+        snapshot(cache).save();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+
+        PersistentTokenCache<String> restored = new PersistentTokenCache<>(60_000l);
+        assertThat(snapshot(restored).load()).isEqualTo(0);
+        assertThat(restored.size()).isEqualTo(0);
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void testUndeserializableTokenIsSkipped() throws IOException {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        cache.put("key", "val");
+        cache.put("other", "invalid");
+        snapshot(cache).save();
+
+        PersistentTokenCache<String> restored = new PersistentTokenCache<>(60_000l);
+        PersistentTokenCacheSnapshot<String> snapshot = new PersistentTokenCacheSnapshot<>(restored, file,
+            token -> token.getBytes(StandardCharsets.UTF_8), bytes -> {
+                String token = new String(bytes, StandardCharsets.UTF_8);
+                if (token.equals("invalid")) {
+                    throw new IllegalArgumentException("invalid token");
+                }
+                return token;
+            });
+        assertThat(snapshot.load()).isEqualTo(1);
+        assertThat(restored.get("key")).isEqualTo("val");
+        assertThat(restored.get("other")).isNull();
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void testSnapshotIsOwnerOnly() throws IOException {
+        Assume.assumeTrue(file.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        // A leftover temporary file readable by others is replaced
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createFile(temporary, PosixFilePermissions.asFileAttribute(
+            PosixFilePermissions.fromString("rw-r--r--")));
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        cache.put("key", "val");
+        snapshot(cache).save();
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-------");
+    }
+
+    @Test
+    public void testLifecycle() {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        cache.put("key", "val");
+        snapshot(cache).destroy();
+
+        PersistentTokenCache<String> restored = new PersistentTokenCache<>(60_000l);
+        snapshot(restored).afterPropertiesSet();
+        assertThat(restored.get("key")).isEqualTo("val");
+    }
+
+    private PersistentTokenCacheSnapshot<String> snapshot(PersistentTokenCache<String> cache) {
+        return new PersistentTokenCacheSnapshot<>(cache, file, token -> token.getBytes(StandardCharsets.UTF_8),
+            bytes -> new String(bytes, StandardCharsets.UTF_8));
+    }
+}
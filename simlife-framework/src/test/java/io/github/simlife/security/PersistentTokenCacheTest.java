@@ -19,6 +19,14 @@
 
 package io.github.simlife.security;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -54,6 +62,15 @@ public class PersistentTokenCacheTest {
         assertThat(cache.get("key")).isEqualTo("foo");
     }
 
+    @Test
+    public void testRemove() {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(100l);
+        cache.put("key", "val");
+        cache.remove("key");
+        assertThat(cache.get("key")).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
     @Test
     public void testExpires() {
         PersistentTokenCache<String> cache = new PersistentTokenCache<>(1l);
@@ -82,4 +99,265 @@ public class PersistentTokenCacheTest {
         assertThat(cache.size()).isEqualTo(0);
     }
 
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        PersistentTokenCache<Integer> cache = new PersistentTokenCache<>(60_000l);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int offset = thread * 1000;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < offset + 1000; i++) {
+                        cache.put("key" + i, i);
+                        assertThat(cache.get("key" + i)).isEqualTo(i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(cache.size()).isEqualTo(8000);
+    }
+
+    @Test
+    public void testConcurrentBoundedAccess() throws Exception {
+        PersistentTokenCache<Integer> cache = new PersistentTokenCache<>(60_000l, 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int offset = thread * 1000;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < offset + 1000; i++) {
+                        cache.put("key" + i, i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // The buffered puts have all been drained into the eviction policy
+        assertThat(cache.size()).isEqualTo(1000);
+        assertThat(cache.getEvictionCount()).isEqualTo(7000);
+    }
+
+    @Test
+    public void testBackgroundPurge() throws InterruptedException {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(1l);
+        cache.put("key", "val");
+        long deadline = System.currentTimeMillis() + 5_000l;
+        while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50l);
+        }
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testBackgroundPurgeSurvivesFailures() throws InterruptedException {
+        AtomicInteger purges = new AtomicInteger();
+        PersistentTokenCache<String> cache = new PersistentTokenCache<String>(1l) {
+            @Override
+            public void purge() {
+                if (purges.incrementAndGet() == 1) {
+                    throw new IllegalStateException("failure");
+                }
+                super.purge();
+            }
+        };
+        cache.put("key", "val");
+        long deadline = System.currentTimeMillis() + 5_000l;
+        while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50l);
+        }
+        assertThat(purges.get()).isGreaterThan(1);
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDestroy() throws InterruptedException {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(1l);
+        cache.destroy();
+        cache.put("key", "val");
+        Thread.sleep(1_500l);
+        // Not purged in the background any more
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get("key")).isNull();
+        cache.purge();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSweeperThreadIsShared() {
+        List<PersistentTokenCache<String>> caches = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            caches.add(new PersistentTokenCache<>(60_000l));
+        }
+        long sweepers = Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("persistent-token-cache-sweeper"))
+            .count();
+        assertThat(sweepers).isEqualTo(1);
+        caches.forEach(PersistentTokenCache::destroy);
+    }
+
+    @Test
+    public void testMaximumSizeThrows() {
+        Throwable caught = catchThrowable(() -> new PersistentTokenCache<String>(100l, 0));
+        assertThat(caught).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testMaximumSize() {
+        PersistentTokenCache<Integer> cache = new PersistentTokenCache<>(60_000l, 100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, i);
+        }
+        assertThat(cache.size()).isEqualTo(100);
+        assertThat(cache.getEvictionCount()).isEqualTo(900);
+        // The most recent token is always admitted
+        assertThat(cache.get("key999")).isEqualTo(999);
+    }
+
+    @Test
+    public void testFrequentTokensAreKept() {
+        PersistentTokenCache<Integer> cache = new PersistentTokenCache<>(60_000l, 100);
+        for (int i = 0; i < 100; i++) {
+            cache.put("hot" + i, i);
+        }
+        for (int access = 0; access < 5; access++) {
+            for (int i = 0; i < 100; i++) {
+                cache.get("hot" + i);
+            }
+        }
+        // A burst of tokens used once does not flush the ones in use
+        for (int i = 0; i < 1000; i++) {
+            cache.put("cold" + i, i);
+        }
+        int kept = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.get("hot" + i) != null) {
+                kept++;
+            }
+        }
+        assertThat(kept).isGreaterThanOrEqualTo(95);
+        assertThat(cache.size()).isEqualTo(100);
+    }
+
+    @Test
+    public void testReplaceDoesNotEvict() {
+        PersistentTokenCache<Integer> cache = new PersistentTokenCache<>(60_000l, 10);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, i);
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + (i % 10), i);
+        }
+        assertThat(cache.size()).isEqualTo(10);
+        assertThat(cache.getEvictionCount()).isEqualTo(0);
+        assertThat(cache.get("key9")).isEqualTo(99);
+    }
+
+    @Test
+    public void testStatistics() throws InterruptedException {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(1l, 100);
+        assertThat(cache.getMaximumSize()).isEqualTo(100);
+        cache.put("key", "val");
+        cache.get("absent");
+        Thread.sleep(100l);
+        cache.get("key");
+        cache.purge();
+        assertThat(cache.getHitCount()).isEqualTo(0);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getExpirationCount()).isEqualTo(1);
+        assertThat(cache.getEvictionCount()).isEqualTo(0);
+
+        PersistentTokenCache<String> unbounded = new PersistentTokenCache<>(60_000l);
+        unbounded.put("key", "val");
+        unbounded.get("key");
+        assertThat(unbounded.getHitCount()).isEqualTo(1);
+        assertThat(unbounded.getMaximumSize()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testLoad() {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        assertThat(cache.get("key", key -> "loaded")).isEqualTo("loaded");
+        assertThat(cache.get("key", key -> "other")).isEqualTo("loaded");
+        assertThat(cache.get("key")).isEqualTo("loaded");
+        assertThat(cache.getLoadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testLoadNull() {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        assertThat(cache.get("key", key -> null)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLoadFailure() {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(60_000l);
+        Throwable caught = catchThrowable(() -> cache.get("key", key -> {
+            throw new IllegalStateException("failure");
+        }));
+        assertThat(caught).isInstanceOf(IllegalStateException.class).hasMessage("failure");
+        assertThat(cache.getLoadFailureCount()).isEqualTo(1);
+        // The failure is not cached
+        assertThat(cache.get("key", key -> "loaded")).isEqualTo("loaded");
+    }
+
+    @Test
+    public void testConcurrentLoadsAreCoalesced() throws Exception {
+        PersistentTokenCache<Integer> cache = new PersistentTokenCache<>(60_000l);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> cache.get("key", key -> {
+                    try {
+                        Thread.sleep(200l);
+                    } catch (InterruptedException x) {
+                        throw new IllegalStateException(x);
+                    }
+                    return loads.incrementAndGet();
+                })));
+            }
+            for (Future<Integer> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefreshAhead() throws InterruptedException {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(1_000l);
+        cache.setRefreshAhead(900l, Runnable::run);
+        cache.put("key", "old");
+        assertThat(cache.get("key", key -> "new")).isEqualTo("old");
+        Thread.sleep(200l);
+        // Within the refresh-ahead window, the current token is returned while it is reloaded
+        assertThat(cache.get("key", key -> "new")).isEqualTo("old");
+        assertThat(cache.get("key")).isEqualTo("new");
+        assertThat(cache.getLoadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefreshAheadThrows() {
+        PersistentTokenCache<String> cache = new PersistentTokenCache<>(1_000l);
+        assertThat(catchThrowable(() -> cache.setRefreshAhead(1_000l, Runnable::run)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(catchThrowable(() -> cache.setRefreshAhead(100l, null)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.simlife.config.SimlifeProperties;
+
+public class TokenCacheAutoConfigurationTest {
+
+    private SimlifeProperties properties;
+    private CacheManager cacheManager;
+    private TokenCacheAutoConfiguration config;
+    private PersistentTokenCache<String> local;
+
+    @Before
+    public void setup() {
+        properties = new SimlifeProperties();
+        properties.getCache().getTokenCache().setTimeToLiveSeconds(30);
+        properties.getCache().getTokenCache().setMaxEntries(500);
+        properties.getCache().getTokenCache().setCacheName("rememberMeTokens");
+        cacheManager = mock(CacheManager.class);
+        config = new TokenCacheAutoConfiguration(properties);
+        local = config.localTokenCache();
+    }
+
+    @After
+    public void teardown() {
+        local.destroy();
+    }
+
+    @Test
+    public void testLocalTokenCache() {
+        assertThat(local.getMaximumSize()).isEqualTo(500);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTokenCache() {
+        Cache<String, String> distributed = mock(Cache.class);
+        when(cacheManager.<String, String>getCache("rememberMeTokens")).thenReturn(distributed);
+        TwoTierTokenCache<String> tokenCache = config.tokenCache(local, cacheManager);
+        assertThat(tokenCache.getLocalCache()).isSameAs(local);
+        verify(distributed).registerCacheEntryListener(any());
+    }
+
+    @Test
+    public void testTokenCacheNotConfigured() {
+        Throwable caught = catchThrowable(() -> config.tokenCache(local, cacheManager));
+        assertThat(caught).isInstanceOf(IllegalStateException.class).hasMessageContaining("rememberMeTokens");
+    }
+}
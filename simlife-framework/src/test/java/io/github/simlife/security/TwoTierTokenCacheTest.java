@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016-2018 the original author or authors from the Simlife project.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.event.EventType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TwoTierTokenCacheTest {
+
+    private Map<String, String> entries;
+    private List<CacheEntryListener<? super String, ? super String>> listeners;
+    private Cache<String, String> distributed;
+    private AtomicInteger loads;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        entries = new HashMap<>();
+        listeners = new ArrayList<>();
+        loads = new AtomicInteger();
+        distributed = mock(Cache.class);
+        doAnswer(invocation -> {
+            CacheEntryListenerConfiguration<String, String> configuration = invocation.getArgument(0);
+            assertThat(configuration.isSynchronous()).isFalse();
+            listeners.add(configuration.getCacheEntryListenerFactory().create());
+            return null;
+        }).when(distributed).registerCacheEntryListener(any());
+        when(distributed.get(anyString())).thenAnswer(invocation -> entries.get(invocation.<String>getArgument(0)));
+        when(distributed.putIfAbsent(anyString(), anyString())).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            if (entries.putIfAbsent(key, invocation.getArgument(1)) != null) {
+                return false;
+            }
+            for (CacheEntryListener<? super String, ? super String> listener : listeners) {
+                ((CacheEntryCreatedListener<String, String>) listener).onCreated(event(key, EventType.CREATED));
+            }
+            return true;
+        });
+        doAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            if (entries.put(key, invocation.getArgument(1)) != null) {
+                for (CacheEntryListener<? super String, ? super String> listener : listeners) {
+                    ((CacheEntryUpdatedListener<String, String>) listener).onUpdated(event(key, EventType.UPDATED));
+                }
+            }
+            return null;
+        }).when(distributed).put(anyString(), anyString());
+        when(distributed.remove(anyString())).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            if (entries.remove(key) == null) {
+                return false;
+            }
+            for (CacheEntryListener<? super String, ? super String> listener : listeners) {
+                ((CacheEntryRemovedListener<String, String>) listener).onRemoved(event(key, EventType.REMOVED));
+            }
+            return true;
+        });
+    }
+
+    @Test
+    public void testMissFallsToDistributedCache() {
+        TwoTierTokenCache<String> first = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        TwoTierTokenCache<String> second = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        assertThat(first.get("key", this::load)).isEqualTo("token1");
+        assertThat(second.get("key", this::load)).isEqualTo("token1");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(second.getLocalCache().get("key")).isEqualTo("token1");
+    }
+
+    @Test
+    public void testGetWithoutLoader() {
+        TwoTierTokenCache<String> cache = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        assertThat(cache.get("key")).isNull();
+        entries.put("key", "token");
+        assertThat(cache.get("key")).isEqualTo("token");
+    }
+
+    @Test
+    public void testUpdateInvalidatesOtherNodes() {
+        TwoTierTokenCache<String> first = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        TwoTierTokenCache<String> second = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        first.get("key", this::load);
+        second.get("key", this::load);
+        first.put("key", "updated");
+        assertThat(first.getLocalCache().get("key")).isEqualTo("updated");
+        assertThat(second.getLocalCache().get("key")).isNull();
+        assertThat(second.get("key", this::load)).isEqualTo("updated");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCreationInvalidatesOtherNodes() {
+        TwoTierTokenCache<String> first = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        TwoTierTokenCache<String> second = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        // Like a token still cached locally after it was evicted from the distributed cache
+        second.getLocalCache().put("key", "stale");
+        assertThat(first.get("key", this::load)).isEqualTo("token1");
+        assertThat(second.getLocalCache().get("key")).isNull();
+        assertThat(second.get("key", this::load)).isEqualTo("token1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLateEventOnlyCausesReload() {
+        TwoTierTokenCache<String> cache = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        cache.put("key", "token");
+        // The asynchronous event of the put is received once the token is already in the local cache
+        ((CacheEntryUpdatedListener<String, String>) listeners.get(0)).onUpdated(event("key", EventType.UPDATED));
+        assertThat(cache.getLocalCache().get("key")).isNull();
+        assertThat(cache.get("key", this::load)).isEqualTo("token");
+        assertThat(loads.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRemoveIsConsistent() {
+        TwoTierTokenCache<String> first = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        TwoTierTokenCache<String> second = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        first.get("key", this::load);
+        second.get("key", this::load);
+        second.remove("key");
+        assertThat(first.get("key")).isNull();
+        assertThat(second.get("key")).isNull();
+    }
+
+    @Test
+    public void testDistributedCacheUnavailable() {
+        when(distributed.get(anyString())).thenThrow(new CacheException("unavailable"));
+        when(distributed.putIfAbsent(anyString(), anyString())).thenThrow(new CacheException("unavailable"));
+        TwoTierTokenCache<String> cache = new TwoTierTokenCache<>(new PersistentTokenCache<>(60_000l), distributed);
+        assertThat(cache.get("key", this::load)).isEqualTo("token1");
+        assertThat(cache.get("key", this::load)).isEqualTo("token1");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    private String load(String key) {
+        return "token" + loads.incrementAndGet();
+    }
+
+    private Iterable<CacheEntryEvent<? extends String, ? extends String>> event(String key, EventType type) {
+        return Collections.singletonList(new CacheEntryEvent<String, String>(distributed, type) {
+
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public String getValue() {
+                return entries.get(key);
+            }
+
+            @Override
+            public String getOldValue() {
+                return null;
+            }
+
+            @Override
+            public boolean isOldValueAvailable() {
+                return false;
+            }
+
+            @Override
+            public <U> U unwrap(Class<U> clazz) {
+                throw new IllegalArgumentException();
+            }
+        });
+    }
+}
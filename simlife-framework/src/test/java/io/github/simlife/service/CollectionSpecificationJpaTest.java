@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.github.simlife.service;
+
+import static io.github.simlife.service.JpaTestSupport.inTransaction;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import io.github.simlife.service.domain.Employee_;
+import io.github.simlife.service.domain.Project;
+import io.github.simlife.service.domain.Project_;
+import io.github.simlife.service.filter.IntegerFilter;
+import io.github.simlife.service.filter.LongFilter;
+
+/**
+ * Check that the conditions on a one-to-many reference have the same semantics with joins, with <code>EXISTS</code>
+ * subqueries and with {@link PredicateCompiler}, see {@link QueryService#collectionSpecification}.
+ */
+public class CollectionSpecificationJpaTest {
+
+    private ProjectQueryService service;
+
+    @Before
+    public void setup() {
+        service = JpaTestSupport.init(new ProjectQueryService());
+    }
+
+    @Test
+    public void testRangeWithJoin() {
+        // Apollo has employees aged 24 and 26, each matching one of the bounds, but none aged 25
+        assertThat(findAll(range())).containsOnly(2L);
+    }
+
+    @Test
+    public void testRangeWithExists() {
+        service.existsForCollections = true;
+        assertThat(findAll(range())).containsExactly(2L);
+    }
+
+    @Test
+    public void testRangeWithPredicateCompiler() {
+        assertThat(filter(new PredicateCompiler<Project>()
+            .range(ageRange(), Project_.employees, Employee_.age).compile())).containsExactly(2L);
+    }
+
+    @Test
+    public void testSeparateFiltersWithJoin() {
+        // Employee 2 is not aged 26, but employee 20 of the same project is
+        assertThat(findAll(separateFilters())).containsOnly(1L);
+    }
+
+    @Test
+    public void testSeparateFiltersWithExists() {
+        service.existsForCollections = true;
+        assertThat(findAll(separateFilters())).containsExactly(1L);
+    }
+
+    @Test
+    public void testSeparateFiltersWithPredicateCompiler() {
+        assertThat(filter(new PredicateCompiler<Project>()
+            .filter(new LongFilter().setEquals(2L), Project_.employees, Employee_.id)
+            .range(new IntegerFilter().setGreaterOrEqualThan(26), Project_.employees, Employee_.age)
+            .compile())).containsExactly(1L);
+    }
+
+    private IntegerFilter ageRange() {
+        // Distinct bounds, which RangeInterval does not fold into a single value, so both are applied to the same join
+        IntegerFilter filter = new IntegerFilter();
+        filter.setGreaterThan(24);
+        filter.setLessThan(26);
+        return filter;
+    }
+
+    private Specification<Project> range() {
+        return service.buildReferringEntitySpecification(ageRange(), Project_.employees, Employee_.age);
+    }
+
+    private Specification<Project> separateFilters() {
+        return Specification.where(service.buildReferringEntitySpecification(new LongFilter().setEquals(2L),
+            Project_.employees, Employee_.id))
+            .and(service.buildReferringEntitySpecification(new IntegerFilter().setGreaterOrEqualThan(26),
+                Project_.employees, Employee_.age));
+    }
+
+    private List<Long> findAll(Specification<Project> specification) {
+        return inTransaction(() -> service.findAll(specification, PageRequest.of(0, 50, Sort.by("id")),
+            CountMode.EXACT).getContent().stream().map(Project::getId).collect(Collectors.toList()));
+    }
+
+    private List<Long> filter(Predicate<Project> predicate) {
+        return inTransaction(() -> JpaTestSupport.getEntityManager()
+            .createQuery("select p from Project p order by p.id", Project.class).getResultList().stream()
+            .filter(predicate).map(Project::getId).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.simlife.service.filter.BigDecimalFilter;
+import io.github.simlife.service.filter.BooleanFilter;
+import io.github.simlife.service.filter.IntegerFilter;
+import io.github.simlife.service.filter.LocalDateFilter;
+import io.github.simlife.service.filter.LongFilter;
+import io.github.simlife.service.filter.SortedLongList;
+import io.github.simlife.service.filter.StringFilter;
+
+public class ColumnarSnapshotTest {
+
+    private SingularAttribute<City, Long> id;
+    private SingularAttribute<City, String> name;
+    private SingularAttribute<City, Integer> population;
+    private SingularAttribute<City, Boolean> capital;
+    private SingularAttribute<City, LocalDate> founded;
+    private SingularAttribute<City, BigDecimal> area;
+
+    private ColumnarSnapshot<City> snapshot;
+
+    @Before
+    public void setup() throws NoSuchMethodException {
+        id = attribute("id", Long.class);
+        name = attribute("name", String.class);
+        population = attribute("population", Integer.class);
+        capital = attribute("capital", Boolean.class);
+        founded = attribute("founded", LocalDate.class);
+        area = attribute("area", BigDecimal.class);
+        // Typed, as the diamond inference of Java 8 ignores the @SafeVarargs of the constructor
+        snapshot = new ColumnarSnapshot<City>(City.class, id, name, population, capital, founded, area);
+        snapshot.load(Arrays.asList(
+            new City(1L, "Paris", 2_100_000, true, LocalDate.of(-250, 1, 1), new BigDecimal("105.4")),
+            new City(2L, "Lyon", 515_000, false, LocalDate.of(-43, 10, 9), new BigDecimal("47.87")),
+            new City(3L, "Berlin", 3_600_000, true, LocalDate.of(1237, 1, 1), null),
+            new City(4L, "Hamburg", null, null, null, new BigDecimal("755.2"))));
+    }
+
+    @Test
+    public void testEmptyQueryMatchesEverything() {
+        assertThat(snapshot.size()).isEqualTo(4);
+        assertThat(snapshot.query().ids()).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(snapshot.query().string(null, name).range(new IntegerFilter(), population).count()).isEqualTo(4);
+    }
+
+    @Test
+    public void testRange() {
+        SortedLongList ids = snapshot.query()
+            .range(new IntegerFilter().setGreaterThan(515_000).setLessOrEqualThan(3_600_000), population)
+            .ids();
+        assertThat(ids).containsExactly(1L, 3L);
+        assertThat(snapshot.query().range(new LocalDateFilter().setLessThan(LocalDate.of(1, 1, 1)), founded).ids())
+            .containsExactly(1L, 2L);
+        assertThat(snapshot.query().range(new BigDecimalFilter().setGreaterOrEqualThan(new BigDecimal("100")), area)
+            .ids()).containsExactly(1L, 4L);
+    }
+
+    @Test
+    public void testValuesAndNulls() {
+        assertThat(snapshot.query().filter(new LongFilter().setIn(Arrays.asList(4L, 2L, 9L)), id).ids())
+            .containsExactly(2L, 4L);
+        assertThat(snapshot.query().range((BigDecimalFilter) new BigDecimalFilter()
+            .setEquals(new BigDecimal("47.870")), area).ids()).containsExactly(2L);
+        assertThat(snapshot.query().filter(new BooleanFilter().setEquals(false), capital).ids()).containsExactly(2L);
+        assertThat(snapshot.query().filter(new BooleanFilter().setSpecified(false), capital).ids())
+            .containsExactly(4L);
+        assertThat(snapshot.query().range((IntegerFilter) new IntegerFilter().setSpecified(true), population).count()).isEqualTo(3);
+    }
+
+    @Test
+    public void testStrings() {
+        assertThat(snapshot.query().string(new StringFilter().setContains("R"), name).ids())
+            .containsExactly(1L, 3L, 4L);
+        assertThat(snapshot.query().string(new StringFilter().setStartsWith("ly"), name).ids()).containsExactly(2L);
+        assertThat(snapshot.query().string((StringFilter) new StringFilter().setEquals("Lyon"), name).ids())
+            .containsExactly(2L);
+    }
+
+    @Test
+    public void testFiltersAreIntersected() {
+        assertThat(snapshot.query()
+            .filter(new BooleanFilter().setEquals(true), capital)
+            .string(new StringFilter().setContains("in"), name)
+            .ids()).containsExactly(3L);
+        assertThat(snapshot.query()
+            .range(new IntegerFilter().setGreaterThan(10).setLessThan(5), population)
+            .count()).isZero();
+    }
+
+    @Test
+    public void testChangesAreApplied() {
+        snapshot.upsert(new City(2L, "Lyon", 520_000, false, null, null));
+        snapshot.upsert(new City(5L, "Munich", 1_500_000, false, null, null));
+        snapshot.remove(1L);
+        assertThat(snapshot.size()).isEqualTo(4);
+        assertThat(snapshot.query().range(new IntegerFilter().setGreaterThan(516_000), population).ids())
+            .containsExactly(2L, 3L, 5L);
+        assertThat(snapshot.query().range((LocalDateFilter) new LocalDateFilter().setSpecified(false), founded).ids())
+            .containsExactly(2L, 4L, 5L);
+    }
+
+    @Test
+    public void testManyRows() {
+        List<City> cities = new ArrayList<>();
+        for (long i = 0; i < 10_000; i++) {
+            cities.add(new City(i * 3, "city" + (i % 100), (int) i, i % 2 == 0, null, null));
+        }
+        assertThat(snapshot.load(cities)).isEqualTo(10_000);
+        assertThat(snapshot.query()
+            .range(new IntegerFilter().setGreaterOrEqualThan(100).setLessThan(200), population)
+            .filter(new BooleanFilter().setEquals(true), capital)
+            .string((StringFilter) new StringFilter().setIn(Arrays.asList("city10", "city12")), name)
+            .ids()).containsExactly(330L, 336L);
+    }
+
+    @Test
+    public void testUnknownColumnThrows() throws NoSuchMethodException {
+        ColumnarSnapshot<City> narrow = new ColumnarSnapshot<City>(City.class, id, name);
+        Throwable caught = catchThrowable(() -> narrow.query().range(new IntegerFilter(), population));
+        assertThat(caught).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <X> SingularAttribute<City, X> attribute(String name, Class<X> type) throws NoSuchMethodException {
+        SingularAttribute<City, X> attribute = mock(SingularAttribute.class);
+        when(attribute.getName()).thenReturn(name);
+        when(attribute.getJavaType()).thenReturn(type);
+        String getter = (type == Boolean.class ? "is" : "get") + Character.toUpperCase(name.charAt(0))
+            + name.substring(1);
+        when(attribute.getJavaMember()).thenReturn(City.class.getMethod(getter));
+        return attribute;
+    }
+
+    public static class City {
+
+        private final Long id;
+        private final String name;
+        private final Integer population;
+        private final Boolean capital;
+        private final LocalDate founded;
+        private final BigDecimal area;
+
+        City(Long id, String name, Integer population, Boolean capital, LocalDate founded, BigDecimal area) {
+            this.id = id;
+            this.name = name;
+            this.population = population;
+            this.capital = capital;
+            this.founded = founded;
+            this.area = area;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Integer getPopulation() {
+            return population;
+        }
+
+        public Boolean isCapital() {
+            return capital;
+        }
+
+        public LocalDate getFounded() {
+            return founded;
+        }
+
+        public BigDecimal getArea() {
+            return area;
+        }
+    }
+}
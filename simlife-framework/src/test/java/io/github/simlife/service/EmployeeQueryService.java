@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import io.github.simlife.service.domain.Employee;
+
+/**
+ * Query service of the JPA tests, whose protected methods are called directly by the tests of the package.
+ */
+public class EmployeeQueryService extends QueryService<Employee> {
+
+    boolean existsForCollections;
+
+    @Override
+    protected boolean useExistsForCollections() {
+        return existsForCollections;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class EstimatedCountCacheTest {
+
+    @Test
+    public void testCountIsReused() {
+        EstimatedCountCache cache = new EstimatedCountCache(10);
+        AtomicInteger loads = new AtomicInteger();
+        assertThat(cache.get("key", 60_000L, () -> 10L + loads.incrementAndGet())).isEqualTo(11L);
+        assertThat(cache.get("key", 60_000L, () -> 10L + loads.incrementAndGet())).isEqualTo(11L);
+        assertThat(cache.get("other", 60_000L, () -> 10L + loads.incrementAndGet())).isEqualTo(12L);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testTimeToLiveIsReadOnEachLookup() throws InterruptedException {
+        EstimatedCountCache cache = new EstimatedCountCache(10);
+        assertThat(cache.get("key", 60_000L, () -> 1L)).isEqualTo(1L);
+        Thread.sleep(20L);
+        // A shorter time to live applies to the counts already cached
+        assertThat(cache.get("key", 10L, () -> 2L)).isEqualTo(2L);
+        assertThat(cache.get("key", 60_000L, () -> 3L)).isEqualTo(2L);
+    }
+
+    @Test
+    public void testMaximumSize() throws InterruptedException {
+        EstimatedCountCache cache = new EstimatedCountCache(10);
+        for (int i = 0; i < 100; i++) {
+            cache.get("key" + i, 60_000L, () -> 1L);
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+
+        // The expired counts are removed first
+        Thread.sleep(20L);
+        cache.get("new", 10L, () -> 1L);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailureIsNotCached() {
+        EstimatedCountCache cache = new EstimatedCountCache(10);
+        Throwable caught = catchThrowable(() -> cache.get("key", 60_000L, () -> {
+            throw new IllegalStateException("failure");
+        }));
+        assertThat(caught).isInstanceOf(IllegalStateException.class).hasMessage("failure");
+        assertThat(cache.get("key", 60_000L, () -> 1L)).isEqualTo(1L);
+    }
+
+    @Test
+    public void testConcurrentCountsAreCoalesced() throws Exception {
+        EstimatedCountCache cache = new EstimatedCountCache(10);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> cache.get("key", 60_000L, () -> {
+                    try {
+                        Thread.sleep(200L);
+                    } catch (InterruptedException x) {
+                        throw new IllegalStateException(x);
+                    }
+                    return loads.incrementAndGet();
+                })));
+            }
+            for (Future<Long> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS)).isEqualTo(1L);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+}
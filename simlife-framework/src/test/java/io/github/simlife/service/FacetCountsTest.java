@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.junit.Test;
+
+public class FacetCountsTest {
+
+    @Test
+    public void testFromGroups() {
+        FacetCounts counts = FacetCounts.fromGroups(Arrays.asList("status", "category"), Arrays.asList(
+            new Object[]{"OPEN", "A", 3L},
+            new Object[]{"OPEN", "B", 5L},
+            new Object[]{"CLOSED", "A", 1L},
+            new Object[]{"CLOSED", null, 2L}));
+        assertThat(counts.getTotal()).isEqualTo(11L);
+        assertThat(counts.getCounts("status")).containsExactly(entry("OPEN", 8L), entry("CLOSED", 3L));
+        assertThat(counts.getCounts("category")).containsExactly(entry("B", 5L), entry("A", 4L), entry(null, 2L));
+        assertThat(counts.getCounts("unknown")).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCountsByAttribute() {
+        SingularAttribute<Object, String> status = mock(SingularAttribute.class);
+        when(status.getName()).thenReturn("status");
+        FacetCounts counts = FacetCounts.fromGroups(Collections.singletonList("status"),
+            Collections.singletonList(new Object[]{"OPEN", 5L}));
+        Map<String, Long> statusCounts = counts.getCounts(status);
+        assertThat(statusCounts).containsEntry("OPEN", 5L);
+    }
+
+    @Test
+    public void testNoGroup() {
+        FacetCounts counts = FacetCounts.fromGroups(Collections.singletonList("status"), Collections.emptyList());
+        assertThat(counts.getTotal()).isEqualTo(0L);
+        assertThat(counts.getCounts("status")).isEmpty();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.persistence.AttributeNode;
+import javax.persistence.EntityGraph;
+import javax.persistence.Subgraph;
+import javax.persistence.metamodel.SetAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.junit.Test;
+
+public class FetchPlanTest {
+
+    @Test
+    public void testOfPaths() {
+        FetchPlan plan = FetchPlan.of("project", "project.manager").and("tags");
+        assertThat(plan.getPaths()).containsExactly("project", "project.manager", "tags");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOfAttributes() {
+        SingularAttribute<Object, Object> project = mock(SingularAttribute.class);
+        when(project.getName()).thenReturn("project");
+        SetAttribute<Object, Object> tags = mock(SetAttribute.class);
+        when(tags.getName()).thenReturn("tags");
+        assertThat(FetchPlan.of(project, tags).getPaths()).containsExactly("project", "tags");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOfEntityGraph() {
+        AttributeNode<Object> manager = mock(AttributeNode.class);
+        when(manager.getAttributeName()).thenReturn("manager");
+        Subgraph<Object> projectGraph = mock(Subgraph.class);
+        when(projectGraph.getAttributeNodes()).thenReturn(Collections.singletonList(manager));
+        AttributeNode<Object> project = mock(AttributeNode.class);
+        when(project.getAttributeName()).thenReturn("project");
+        when(project.getSubgraphs()).thenReturn(Collections.singletonMap(Object.class, projectGraph));
+        AttributeNode<Object> tags = mock(AttributeNode.class);
+        when(tags.getAttributeName()).thenReturn("tags");
+        EntityGraph<Object> graph = mock(EntityGraph.class);
+        when(graph.getAttributeNodes()).thenReturn(Arrays.asList(project, tags));
+        assertThat(FetchPlan.of(graph).getPaths()).containsExactly("project", "project.manager", "tags");
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import io.github.simlife.service.filter.SortedIntList;
+import io.github.simlife.service.filter.SortedLongList;
+
+public class InListSupportTest {
+
+    @Test
+    public void testPadToPowerOfTwo() {
+        assertThat(InListSupport.pad(Collections.singletonList(1L))).containsExactly(1L);
+        assertThat(InListSupport.pad(Arrays.asList(1L, 2L))).containsExactly(1L, 2L);
+        assertThat(InListSupport.pad(Arrays.asList(1L, 2L, 3L))).containsExactly(1L, 2L, 3L, 3L);
+        assertThat(InListSupport.pad(Arrays.asList(1L, 2L, 3L, 4L, 5L))).hasSize(8).endsWith(5L, 5L, 5L, 5L);
+    }
+
+    @Test
+    public void testPadIsCappedAtChunkSize() {
+        assertThat(InListSupport.pad(range(700))).hasSize(InListSupport.CHUNK_SIZE);
+    }
+
+    @Test
+    public void testPartitionEmpty() {
+        assertThat(InListSupport.partition(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void testPartitionInChunks() {
+        List<List<Long>> chunks = InListSupport.partition(range(2500));
+        assertThat(chunks).hasSize(3);
+        assertThat(chunks.get(0)).hasSize(1000);
+        assertThat(chunks.get(1)).hasSize(1000);
+        assertThat(chunks.get(2)).hasSize(512).startsWith(2000L).endsWith(2499L);
+    }
+
+    @Test
+    public void testArrayFunction() {
+        assertThat(InListSupport.arrayFunction(Long.class)).isEqualTo("simlife_any_bigint");
+        assertThat(InListSupport.arrayFunction(String.class)).isEqualTo("simlife_any_text");
+        assertThat(InListSupport.arrayFunction(UUID.class)).isEqualTo("simlife_any_uuid");
+        assertThat(InListSupport.arrayFunction(Instant.class)).isNull();
+    }
+
+    @Test
+    public void testArrayLiteral() {
+        assertThat(InListSupport.toArrayLiteral(Arrays.asList(1L, 2L, null))).isEqualTo("{1,2,NULL}");
+        assertThat(InListSupport.toArrayLiteral(Collections.singletonList(new BigDecimal("1E+3"))))
+            .isEqualTo("{1000}");
+        assertThat(InListSupport.toArrayLiteral(Arrays.asList("a", "b\"c", "d\\e", "f,g")))
+            .isEqualTo("{\"a\",\"b\\\"c\",\"d\\\\e\",\"f,g\"}");
+    }
+
+    @Test
+    public void testPrimitiveArrayLiteral() {
+        assertThat(InListSupport.toArrayLiteral(SortedLongList.of(3L, 1L, 2L))).isEqualTo("{1,2,3}");
+        assertThat(InListSupport.toArrayLiteral(SortedIntList.of(5, -1))).isEqualTo("{-1,5}");
+        assertThat(InListSupport.toArrayLiteral(SortedLongList.of())).isEqualTo("{}");
+    }
+
+    private static List<Long> range(int size) {
+        List<Long> values = new ArrayList<>(size);
+        for (long i = 0; i < size; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JCacheQueryResultCacheTest {
+
+    private Map<Object, Object> employees;
+    private Map<Object, Object> projects;
+    private JCacheQueryResultCache queryResultCache;
+    private AtomicInteger loads;
+
+    @Before
+    public void setup() {
+        employees = new HashMap<>();
+        projects = new HashMap<>();
+        CacheManager cacheManager = mock(CacheManager.class);
+        Cache<Object, Object> employeeCache = mockCache(employees);
+        Cache<Object, Object> projectCache = mockCache(projects);
+        when(cacheManager.getCache(JCacheQueryResultCache.getCacheName(Employee.class))).thenReturn(employeeCache);
+        when(cacheManager.getCache(JCacheQueryResultCache.getCacheName(Project.class))).thenReturn(projectCache);
+        queryResultCache = new JCacheQueryResultCache(cacheManager);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void testCacheName() {
+        assertThat(JCacheQueryResultCache.getCacheName(Employee.class))
+            .isEqualTo(Employee.class.getName() + ".queryResults");
+    }
+
+    @Test
+    public void testHit() {
+        assertThat(queryResultCache.get(Employee.class, "key", this::load)).isEqualTo("result1");
+        assertThat(queryResultCache.get(Employee.class, "key", this::load)).isEqualTo("result1");
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testWithoutCache() {
+        assertThat(queryResultCache.get(Object.class, "key", this::load)).isEqualTo("result1");
+        assertThat(queryResultCache.get(Object.class, "key", this::load)).isEqualTo("result2");
+    }
+
+    @Test
+    public void testInvalidate() {
+        queryResultCache.get(Employee.class, "key", this::load);
+        queryResultCache.get(Project.class, "key", this::load);
+        queryResultCache.invalidate(Employee.class);
+        assertThat(employees).isEmpty();
+        assertThat(projects).isNotEmpty();
+    }
+
+    @Test
+    public void testInvalidateSubclass() {
+        queryResultCache.get(Employee.class, "key", this::load);
+        queryResultCache.invalidate(Manager.class);
+        assertThat(employees).isEmpty();
+    }
+
+    @Test
+    public void testInvalidateDependencies() {
+        queryResultCache.addDependencies(Employee.class, Project.class);
+        queryResultCache.get(Employee.class, "key", this::load);
+        queryResultCache.get(Project.class, "key", this::load);
+        queryResultCache.invalidate(Project.class);
+        assertThat(employees).isEmpty();
+        assertThat(projects).isEmpty();
+    }
+
+    @Test
+    public void testResultLoadedDuringInvalidationIsNotCached() {
+        String result = queryResultCache.get(Employee.class, "key", () -> {
+            queryResultCache.invalidate(Employee.class);
+            return load();
+        });
+        assertThat(result).isEqualTo("result1");
+        assertThat(employees).isEmpty();
+    }
+
+    private String load() {
+        return "result" + loads.incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cache<Object, Object> mockCache(Map<Object, Object> content) {
+        Cache<Object, Object> cache = mock(Cache.class);
+        when(cache.get(any())).thenAnswer(invocation -> content.get(invocation.getArgument(0)));
+        doAnswer(invocation -> content.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(cache).put(any(), any());
+        doAnswer(invocation -> content.remove(invocation.getArgument(0))).when(cache).remove(any());
+        doAnswer(invocation -> {
+            content.clear();
+            return null;
+        }).when(cache).clear();
+        return cache;
+    }
+
+    private static class Employee {
+    }
+
+    private static class Manager extends Employee {
+    }
+
+    private static class Project {
+    }
+}
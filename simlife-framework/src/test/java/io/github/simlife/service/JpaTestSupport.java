@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.github.simlife.domain.util.FixedH2Dialect;
+import io.github.simlife.service.domain.Employee;
+import io.github.simlife.service.domain.Project;
+import io.github.simlife.service.domain.Tag;
+
+/**
+ * An in-memory H2 database, mapped with Hibernate, to run the queries of the query services in the tests. It holds:
+ * <ul>
+ * <li>the projects 1 "Apollo", 2 "Gemini" and 3 "Mercury", which has no employee,</li>
+ * <li>the tags 1 "java" (weight 10) and 2 "sql" (weight 20),</li>
+ * <li>the employees 1 to 20, see {@link #employee(long)}.</li>
+ * </ul>
+ * The data is created once and must not be modified by the tests. The SQL statements executed by the current thread
+ * are recorded, see {@link #getStatements()}.
+ */
+public final class JpaTestSupport {
+
+    public static final int EMPLOYEE_COUNT = 20;
+
+    public static final Instant HIRE_DATE = Instant.parse("2018-01-01T00:00:00Z");
+
+    private static final ThreadLocal<List<String>> STATEMENTS = ThreadLocal.withInitial(ArrayList::new);
+
+    private static final EntityManagerFactory ENTITY_MANAGER_FACTORY;
+
+    private static final JpaTransactionManager TRANSACTION_MANAGER;
+
+    private static final EntityManager ENTITY_MANAGER;
+
+    static {
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(new SimpleDriverDataSource(new org.h2.Driver(),
+            "jdbc:h2:mem:query-service;DB_CLOSE_DELAY=-1"));
+        factory.setPackagesToScan(Employee.class.getPackage().getName());
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        Properties properties = new Properties();
+        properties.setProperty("hibernate.dialect", FixedH2Dialect.class.getName());
+        properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        properties.setProperty("hibernate.session_factory.statement_inspector", Recorder.class.getName());
+        factory.setJpaProperties(properties);
+        factory.afterPropertiesSet();
+        ENTITY_MANAGER_FACTORY = factory.getObject();
+        TRANSACTION_MANAGER = new JpaTransactionManager(ENTITY_MANAGER_FACTORY);
+        ENTITY_MANAGER = SharedEntityManagerCreator.createSharedEntityManager(ENTITY_MANAGER_FACTORY);
+        seed();
+    }
+
+    private JpaTestSupport() {
+    }
+
+    /**
+     * Return the seeded values of an employee:
+     * <ul>
+     * <li>name "name{id}", age 20 + id % 7, active if the id is even,</li>
+     * <li>hired on {@link #HIRE_DATE} + id % 5 days, starting at 2018-01-01T08:00 + id % 4 hours, born on 1980-01-01
+     * + id % 6 years, with a salary of 1000.00 + 500 * (id % 3),</li>
+     * <li>in no project if the id is a multiple of 3, else in "Apollo" if it is even, or "Gemini" if it is odd,</li>
+     * <li>tagged "java" and "sql" if id % 4 == 0, "java" if id % 4 == 1, and not tagged otherwise.</li>
+     * </ul>
+     *
+     * @param id the id of the employee, from 1 to {@link #EMPLOYEE_COUNT}.
+     * @return a detached employee, without project and tags.
+     */
+    public static Employee employee(long id) {
+        return new Employee()
+            .id(id)
+            .name("name" + id)
+            .age((int) (20 + id % 7))
+            .hireDate(HIRE_DATE.plus(id % 5, ChronoUnit.DAYS))
+            .startTime(LocalDateTime.of(2018, 1, 1, 8, 0).plusHours(id % 4))
+            .birthDate(LocalDate.of(1980, 1, 1).plusYears(id % 6))
+            .salary(new BigDecimal("1000.00").add(BigDecimal.valueOf(500 * (id % 3))))
+            .active(id % 2 == 0);
+    }
+
+    private static void seed() {
+        inTransaction(() -> {
+            Project apollo = new Project().id(1L).name("Apollo");
+            Project gemini = new Project().id(2L).name("Gemini");
+            ENTITY_MANAGER.persist(apollo);
+            ENTITY_MANAGER.persist(gemini);
+            ENTITY_MANAGER.persist(new Project().id(3L).name("Mercury"));
+            Tag java = new Tag().id(1L).name("java").weight(10);
+            Tag sql = new Tag().id(2L).name("sql").weight(20);
+            ENTITY_MANAGER.persist(java);
+            ENTITY_MANAGER.persist(sql);
+            for (long id = 1; id <= EMPLOYEE_COUNT; id++) {
+                Employee employee = employee(id).project(id % 3 == 0 ? null : id % 2 == 0 ? apollo : gemini);
+                if (id % 4 == 0) {
+                    employee.getTags().add(java);
+                    employee.getTags().add(sql);
+                } else if (id % 4 == 1) {
+                    employee.getTags().add(java);
+                }
+                ENTITY_MANAGER.persist(employee);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return the shared entity manager, bound to the current transaction.
+     */
+    public static EntityManager getEntityManager() {
+        return ENTITY_MANAGER;
+    }
+
+    public static PlatformTransactionManager getTransactionManager() {
+        return TRANSACTION_MANAGER;
+    }
+
+    /**
+     * Set the entity manager and the transaction manager of a service.
+     *
+     * @param service the service.
+     * @param <S>     the type of the service.
+     * @return the service.
+     */
+    public static <S extends QueryService<?>> S init(S service) {
+        service.setEntityManager(ENTITY_MANAGER);
+        service.setTransactionManager(TRANSACTION_MANAGER);
+        return service;
+    }
+
+    /**
+     * Run the callback in a transaction, which is committed.
+     *
+     * @param callback the callback.
+     * @param <T>      the type of the result.
+     * @return the result of the callback.
+     */
+    public static <T> T inTransaction(Supplier<T> callback) {
+        return new TransactionTemplate(TRANSACTION_MANAGER).execute(status -> callback.get());
+    }
+
+    /**
+     * Run the callback in a transaction, and return the SQL statements it executed in the current thread.
+     *
+     * @param callback the callback.
+     * @return the statements.
+     */
+    public static List<String> recordStatements(Runnable callback) {
+        STATEMENTS.get().clear();
+        inTransaction(() -> {
+            callback.run();
+            return null;
+        });
+        List<String> statements = new ArrayList<>(STATEMENTS.get());
+        STATEMENTS.get().clear();
+        return Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * Records the SQL statements prepared by Hibernate, per thread.
+     */
+    public static class Recorder implements StatementInspector {
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.get().add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class KeysetCursorTest {
+
+    @Test
+    public void testRoundTrip() {
+        Instant hireDate = Instant.parse("2018-06-30T12:00:00Z");
+        KeysetCursor cursor = KeysetCursor.of(hireDate, 42L);
+        KeysetCursor decoded = KeysetCursor.valueOf(cursor.toString());
+        assertThat(decoded).isEqualTo(cursor);
+        assertThat(decoded.hasSortValue()).isTrue();
+        assertThat(decoded.getSortValue(Instant.class)).isEqualTo(hireDate);
+        assertThat(decoded.getId(Long.class)).isEqualTo(42L);
+    }
+
+    @Test
+    public void testSortValueTypes() {
+        LocalDateTime dateTime = LocalDateTime.of(2018, 6, 30, 12, 0, 30, 500_000_000);
+        assertRoundTrip(dateTime, LocalDateTime.class);
+        assertRoundTrip(dateTime.toLocalDate(), LocalDate.class);
+        assertRoundTrip(dateTime.toLocalTime(), LocalTime.class);
+        assertRoundTrip(dateTime.atOffset(ZoneOffset.ofHours(2)), OffsetDateTime.class);
+        assertRoundTrip(OffsetTime.of(dateTime.toLocalTime(), ZoneOffset.UTC), OffsetTime.class);
+        assertRoundTrip(dateTime.atZone(ZoneId.of("Europe/Paris")), ZonedDateTime.class);
+        assertRoundTrip(dateTime.toInstant(ZoneOffset.UTC), Instant.class);
+        assertRoundTrip(Year.of(2018), Year.class);
+        assertRoundTrip(YearMonth.of(2018, 6), YearMonth.class);
+        assertRoundTrip(Duration.ofMinutes(90), Duration.class);
+        assertRoundTrip(new BigDecimal("1000.50"), BigDecimal.class);
+        assertRoundTrip(42, Integer.class);
+        assertRoundTrip(true, Boolean.class);
+        assertRoundTrip(UUID.randomUUID(), UUID.class);
+    }
+
+    private static <X> void assertRoundTrip(X sortValue, Class<X> type) {
+        KeysetCursor decoded = KeysetCursor.valueOf(KeysetCursor.of(sortValue, 1L).toString());
+        assertThat(decoded.getSortValue(type)).isEqualTo(sortValue);
+    }
+
+    @Test
+    public void testIdOnly() {
+        UUID id = UUID.randomUUID();
+        KeysetCursor decoded = KeysetCursor.valueOf(KeysetCursor.of(null, id).toString());
+        assertThat(decoded.hasSortValue()).isFalse();
+        assertThat(decoded.getSortValue(String.class)).isNull();
+        assertThat(decoded.getId(UUID.class)).isEqualTo(id);
+    }
+
+    @Test
+    public void testTokenIsUrlSafe() {
+        String token = KeysetCursor.of("a/b+c?d=e", 1).toString();
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+        assertThat(KeysetCursor.valueOf(token).getSortValue(String.class)).isEqualTo("a/b+c?d=e");
+    }
+
+    @Test
+    public void testNullIdThrows() {
+        Throwable caught = catchThrowable(() -> KeysetCursor.of("value", null));
+        assertThat(caught).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testMalformedTokenThrows() {
+        Throwable caught = catchThrowable(() -> KeysetCursor.valueOf("not a token"));
+        assertThat(caught).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.persistence.metamodel.SetAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.simlife.service.filter.BigDecimalFilter;
+import io.github.simlife.service.filter.IntegerFilter;
+import io.github.simlife.service.filter.LongFilter;
+import io.github.simlife.service.filter.StringFilter;
+
+public class PredicateCompilerTest {
+
+    private SingularAttribute<Person, Long> id;
+    private SingularAttribute<Person, String> name;
+    private SingularAttribute<Person, Integer> age;
+    private SingularAttribute<Person, BigDecimal> salary;
+    private SingularAttribute<Person, Person> manager;
+    private SetAttribute<Person, Person> friends;
+
+    private Person alice;
+    private Person bob;
+    private Person carol;
+
+    @Before
+    public void setup() throws NoSuchMethodException {
+        id = attribute("getId");
+        name = attribute("getName");
+        age = attribute("getAge");
+        salary = attribute("getSalary");
+        manager = attribute("getManager");
+        friends = setAttribute("getFriends");
+
+        alice = new Person(1L, "Alice", 42, new BigDecimal("1000.00"), null);
+        bob = new Person(2L, "Bob", 30, null, alice);
+        carol = new Person(3L, "Carol", null, new BigDecimal("2500"), alice);
+        bob.getFriends().add(carol);
+        carol.getFriends().add(alice);
+        carol.getFriends().add(bob);
+    }
+
+    @Test
+    public void testEmptyCompilerMatchesEverything() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .string(null, name)
+            .range(new IntegerFilter(), age)
+            .compile();
+        assertThat(predicate.test(alice)).isTrue();
+        assertThat(predicate.test(carol)).isTrue();
+    }
+
+    @Test
+    public void testEqualsIsIntersectedWithBounds() {
+        Predicate<Person> contradictory = new PredicateCompiler<Person>()
+            .range((LongFilter) new LongFilter().setLessThan(2L).setEquals(3L), id)
+            .compile();
+        assertThat(contradictory.test(alice)).isFalse();
+        assertThat(contradictory.test(carol)).isFalse();
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .range((LongFilter) new LongFilter().setLessThan(4L).setEquals(3L), id)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(carol)).isTrue();
+    }
+
+    @Test
+    public void testIn() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .filter(new LongFilter().setIn(Arrays.asList(1L, 3L)), id)
+            .compile();
+        assertThat(predicate.test(alice)).isTrue();
+        assertThat(predicate.test(bob)).isFalse();
+        assertThat(predicate.test(carol)).isTrue();
+    }
+
+    @Test
+    public void testRangeNeverMatchesNull() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .range(new IntegerFilter().setGreaterOrEqualThan(30).setLessThan(42), age)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(bob)).isTrue();
+        assertThat(predicate.test(carol)).isFalse();
+    }
+
+    @Test
+    public void testRangeComparesLikeTheDatabase() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .range((BigDecimalFilter) new BigDecimalFilter().setEquals(new BigDecimal("1000")), salary)
+            .compile();
+        assertThat(predicate.test(alice)).isTrue();
+    }
+
+    @Test
+    public void testBigDecimalEqualsComparesLikeTheDatabase() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .filter(new BigDecimalFilter().setEquals(new BigDecimal("2500.00")), salary)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(bob)).isFalse();
+        assertThat(predicate.test(carol)).isTrue();
+    }
+
+    @Test
+    public void testBigDecimalInComparesLikeTheDatabase() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .filter(new BigDecimalFilter().setIn(Arrays.asList(new BigDecimal("1000"), null)), salary)
+            .compile();
+        assertThat(predicate.test(alice)).isTrue();
+        assertThat(predicate.test(bob)).isFalse();
+        assertThat(predicate.test(carol)).isFalse();
+    }
+
+    @Test
+    public void testCollectionEqualsComparesLikeTheDatabase() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .filter(new BigDecimalFilter().setEquals(new BigDecimal("1000.0")), friends, salary)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(bob)).isFalse();
+        assertThat(predicate.test(carol)).isTrue();
+    }
+
+    @Test
+    public void testEmptyCollectionNeverMatches() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .range((LongFilter) new LongFilter().setSpecified(true), friends, id)
+            .filter(new LongFilter().setEquals(3L), friends, id)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(bob)).isTrue();
+    }
+
+    @Test
+    public void testSpecified() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .range((IntegerFilter) new IntegerFilter().setSpecified(false), age)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(carol)).isTrue();
+    }
+
+    @Test
+    public void testContainsIgnoresCase() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .string(new StringFilter().setContains("aRo"), name)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(carol)).isTrue();
+    }
+
+    @Test
+    public void testStartsWith() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .string(new StringFilter().setStartsWith("b"), Person::getName)
+            .compile();
+        assertThat(predicate.test(bob)).isTrue();
+        assertThat(predicate.test(carol)).isFalse();
+    }
+
+    @Test
+    public void testReference() {
+        Predicate<Person> byManager = new PredicateCompiler<Person>()
+            .range((LongFilter) new LongFilter().setEquals(1L), manager, id)
+            .compile();
+        assertThat(byManager.test(alice)).isFalse();
+        assertThat(byManager.test(bob)).isTrue();
+
+        Predicate<Person> withoutManager = new PredicateCompiler<Person>()
+            .filter((LongFilter) new LongFilter().setSpecified(false), manager, id)
+            .compile();
+        assertThat(withoutManager.test(alice)).isTrue();
+        assertThat(withoutManager.test(bob)).isFalse();
+    }
+
+    @Test
+    public void testCollectionBoundsApplyToTheSameElement() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .range(new LongFilter().setGreaterThan(1L).setLessThan(3L), friends, id)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(bob)).isFalse();
+        assertThat(predicate.test(carol)).isTrue();
+    }
+
+    @Test
+    public void testCombinedFilters() {
+        Predicate<Person> predicate = new PredicateCompiler<Person>()
+            .string(new StringFilter().setContains("o"), name)
+            .range((LongFilter) new LongFilter().setSpecified(true), manager, id)
+            .range(new IntegerFilter().setLessThan(40), age)
+            .compile();
+        assertThat(predicate.test(alice)).isFalse();
+        assertThat(predicate.test(bob)).isTrue();
+        assertThat(predicate.test(carol)).isFalse();
+    }
+
+    @Test
+    public void testContainsIgnoreCase() {
+        assertThat(PredicateCompiler.containsIgnoreCase("Simlife", "LIFE")).isTrue();
+        assertThat(PredicateCompiler.containsIgnoreCase("Simlife", "")).isTrue();
+        assertThat(PredicateCompiler.containsIgnoreCase("Sim", "Simlife")).isFalse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <X> SingularAttribute<Person, X> attribute(String getter) throws NoSuchMethodException {
+        SingularAttribute<Person, X> attribute = mock(SingularAttribute.class);
+        when(attribute.getJavaMember()).thenReturn(Person.class.getMethod(getter));
+        return attribute;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <X> SetAttribute<Person, X> setAttribute(String getter) throws NoSuchMethodException {
+        SetAttribute<Person, X> attribute = mock(SetAttribute.class);
+        when(attribute.getJavaMember()).thenReturn(Person.class.getMethod(getter));
+        return attribute;
+    }
+
+    public static class Person {
+
+        private final Long id;
+        private final String name;
+        private final Integer age;
+        private final BigDecimal salary;
+        private final Person manager;
+        private final Set<Person> friends = new HashSet<>();
+
+        Person(Long id, String name, Integer age, BigDecimal salary, Person manager) {
+            this.id = id;
+            this.name = name;
+            this.age = age;
+            this.salary = salary;
+            this.manager = manager;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public BigDecimal getSalary() {
+            return salary;
+        }
+
+        public Person getManager() {
+            return manager;
+        }
+
+        public Set<Person> getFriends() {
+            return friends;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.prometheus.client.CollectorRegistry;
+
+public class PrometheusQueryMetricsTest {
+
+    private CollectorRegistry registry;
+    private PrometheusQueryMetrics metrics;
+
+    @Before
+    public void setup() {
+        registry = new CollectorRegistry();
+        metrics = new PrometheusQueryMetrics(registry, 100);
+    }
+
+    @Test
+    public void testRecordQuery() {
+        metrics.recordQuery(String.class, "shape", 2_000_000L, 20);
+        metrics.recordQuery(String.class, "shape", 4_000_000L, 30);
+        String shapeId = metrics.getShapeId(String.class, "shape");
+        String[] labels = {"entity", "shape", "type"};
+        assertThat(registry.getSampleValue("simlife_query_duration_seconds_count", labels,
+            new String[]{"String", shapeId, "select"})).isEqualTo(2.0);
+        assertThat(registry.getSampleValue("simlife_query_duration_seconds_sum", labels,
+            new String[]{"String", shapeId, "select"})).isCloseTo(0.006, offset(1e-9));
+        assertThat(registry.getSampleValue("simlife_query_rows_sum", new String[]{"entity", "shape"},
+            new String[]{"String", shapeId})).isEqualTo(50.0);
+    }
+
+    @Test
+    public void testRecordCount() {
+        metrics.recordCount(String.class, "shape", 200_000_000L);
+        String shapeId = metrics.getShapeId(String.class, "shape");
+        assertThat(registry.getSampleValue("simlife_query_duration_seconds_count",
+            new String[]{"entity", "shape", "type"}, new String[]{"String", shapeId, "count"})).isEqualTo(1.0);
+        assertThat(registry.getSampleValue("simlife_query_rows_count",
+            new String[]{"entity", "shape"}, new String[]{"String", shapeId})).isNull();
+    }
+
+    @Test
+    public void testShapesAreCapped() {
+        for (int i = 0; i < PrometheusQueryMetrics.MAX_SHAPES; i++) {
+            assertThat(metrics.getShapeId(String.class, "shape" + i)).isNotEqualTo(PrometheusQueryMetrics.OTHER_SHAPE);
+        }
+        assertThat(metrics.getShapeId(String.class, "shape0")).isEqualTo(metrics.getShapeId(String.class, "shape0"));
+        assertThat(metrics.getShapeId(String.class, "one more")).isEqualTo(PrometheusQueryMetrics.OTHER_SHAPE);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+public class QueryBatchTest {
+
+    @Test
+    public void testQueriesRunConcurrently() {
+        CountDownLatch latch = new CountDownLatch(3);
+        QueryBatch batch = new QueryBatch(new SimpleAsyncTaskExecutor(), null);
+        Supplier<Boolean> first = batch.add(() -> await(latch));
+        Supplier<Boolean> second = batch.add(() -> await(latch));
+        Supplier<Boolean> third = batch.add(() -> await(latch));
+        batch.execute();
+        assertThat(first.get()).isTrue();
+        assertThat(second.get()).isTrue();
+        assertThat(third.get()).isTrue();
+    }
+
+    @Test
+    public void testWithoutExecutor() {
+        QueryBatch batch = new QueryBatch(null, null);
+        Supplier<String> thread = batch.add(() -> Thread.currentThread().getName());
+        Supplier<Integer> answer = batch.add(() -> 42);
+        batch.execute();
+        assertThat(thread.get()).isEqualTo(Thread.currentThread().getName());
+        assertThat(answer.get()).isEqualTo(42);
+    }
+
+    @Test
+    public void testFailureIsRethrown() {
+        QueryBatch batch = new QueryBatch(new SimpleAsyncTaskExecutor(), null);
+        batch.add(() -> 1);
+        batch.add(() -> {
+            throw new IllegalArgumentException("boom");
+        });
+        Throwable caught = catchThrowable(batch::execute);
+        assertThat(caught).isInstanceOf(IllegalArgumentException.class).hasMessage("boom");
+    }
+
+    @Test
+    public void testFirstFailureIsRethrown() {
+        QueryBatch batch = new QueryBatch(new SimpleAsyncTaskExecutor(), null);
+        batch.add(() -> 1);
+        batch.add(() -> {
+            // Submitted first, but fails once cancelled by the other query
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("late");
+        });
+        batch.add(() -> {
+            throw new IllegalArgumentException("boom");
+        });
+        Throwable caught = catchThrowable(batch::execute);
+        assertThat(caught).isInstanceOf(IllegalArgumentException.class).hasMessage("boom");
+    }
+
+    @Test
+    public void testFailureCancelsSlowQueries() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        QueryBatch batch = new QueryBatch(new SimpleAsyncTaskExecutor(), null);
+        batch.add(() -> 1);
+        batch.add(() -> {
+            started.countDown();
+            try {
+                return never.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                return false;
+            }
+        });
+        batch.add(() -> {
+            // Fail once the slow query is running, otherwise it is cancelled before it starts and never interrupted
+            try {
+                started.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalArgumentException("boom");
+        });
+        long start = System.nanoTime();
+        Throwable caught = catchThrowable(batch::execute);
+        assertThat(caught).isInstanceOf(IllegalArgumentException.class).hasMessage("boom");
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(5);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testResultBeforeExecuteThrows() {
+        QueryBatch batch = new QueryBatch(null, null);
+        Supplier<Integer> result = batch.add(() -> 1);
+        assertThat(catchThrowable(result::get)).isInstanceOf(IllegalStateException.class);
+        batch.execute();
+        assertThat(catchThrowable(batch::execute)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class QueryMetricsTest {
+
+    @Test
+    public void testShapeIgnoresValues() {
+        String first = QueryMetrics.shapeOf("select generatedAlias0 from Employee as generatedAlias0 "
+            + "where ( generatedAlias0.age>=18 ) and ( generatedAlias0.name like :param0 )");
+        String second = QueryMetrics.shapeOf("select generatedAlias0 from Employee as generatedAlias0 "
+            + "where ( generatedAlias0.age>=-42.5 ) and ( generatedAlias0.name like :param3 )");
+        assertThat(first).isEqualTo(second);
+        assertThat(first).isEqualTo("select generatedAlias0 from Employee as generatedAlias0 "
+            + "where ( generatedAlias0.age>=? ) and ( generatedAlias0.name like ? )");
+    }
+
+    @Test
+    public void testShapeCollapsesLists() {
+        String shape = QueryMetrics.shapeOf("select e from Employee as e where e.id in (:param0, :param1, :param2) "
+            + "and e.status in ('A', 'B''s')");
+        assertThat(shape).isEqualTo("select e from Employee as e where e.id in (?...) and e.status in (?...)");
+    }
+
+    @Test
+    public void testShapeKeepsIdentifiers() {
+        String shape = QueryMetrics.shapeOf("select generatedAlias1.col_0 from Employee2 as generatedAlias1");
+        assertThat(shape).isEqualTo("select generatedAlias1.col_0 from Employee2 as generatedAlias1");
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service;
+
+import static io.github.simlife.service.JpaTestSupport.inTransaction;
+import static io.github.simlife.service.JpaTestSupport.recordStatements;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import javax.persistence.Tuple;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.jpa.domain.Specification;
+
+import io.github.simlife.service.domain.Employee;
+import io.github.simlife.service.domain.Employee_;
+import io.github.simlife.service.domain.Project_;
+import io.github.simlife.service.domain.Tag_;
+import io.github.simlife.service.filter.InstantFilter;
+import io.github.simlife.service.filter.LongFilter;
+import io.github.simlife.service.filter.StringFilter;
+
+/**
+ * Run the queries of {@link QueryService} on an H2 database, see {@link JpaTestSupport}.
+ */
+public class QueryServiceJpaTest {
+
+    private EmployeeQueryService service;
+
+    @Before
+    public void setup() {
+        service = JpaTestSupport.init(new EmployeeQueryService());
+    }
+
+    @Test
+    public void testTemplate() {
+        Pageable pageable = PageRequest.of(0, 3, Sort.by("id"));
+        Page<Employee> page = inTransaction(() -> service.findAll(service.queryTemplate()
+            .range(new LongFilter().setGreaterOrEqualThan(2L).setLessOrEqualThan(15L), Employee_.id)
+            .string(new StringFilter().setContains("1"), Employee_.name), pageable));
+        assertThat(page.getContent()).extracting(Employee::getId).containsExactly(10L, 11L, 12L);
+        assertThat(page.getTotalElements()).isEqualTo(6);
+
+        // Same shape, so the cached JPQL is executed with the new values
+        page = inTransaction(() -> service.findAll(service.queryTemplate()
+            .range(new LongFilter().setGreaterOrEqualThan(1L).setLessOrEqualThan(9L), Employee_.id)
+            .string(new StringFilter().setContains("1"), Employee_.name), pageable));
+        assertThat(page.getContent()).extracting(Employee::getId).containsExactly(1L);
+        assertThat(page.getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    public void testTemplateRendersTheSameStatement() {
+        List<String> first = recordStatements(() -> service.findAll(service.queryTemplate()
+            .range(new LongFilter().setLessThan(5L), Employee_.id)
+            .filter(new LongFilter().setEquals(1L), Employee_.project, Project_.id), Sort.by("id")));
+        List<String> second = recordStatements(() -> service.findAll(service.queryTemplate()
+            .range(new LongFilter().setLessThan(15L), Employee_.id)
+            .filter(new LongFilter().setEquals(2L), Employee_.project, Project_.id), Sort.by("id")));
+        assertThat(first).hasSize(1).isEqualTo(second);
+        assertThat(inTransaction(() -> service.findAll(service.queryTemplate()
+            .range(new LongFilter().setLessThan(15L), Employee_.id)
+            .filter(new LongFilter().setEquals(2L), Employee_.project, Project_.id), Sort.by("id"))))
+            .extracting(Employee::getId).containsExactly(1L, 5L, 7L, 11L, 13L);
+    }
+
+    @Test
+    public void testTemplateCount() {
+        assertThat(inTransaction(() -> service.count(service.queryTemplate()
+            .string(new StringFilter().setContains("2"), Employee_.name)))).isEqualTo(3);
+    }
+
+    @Test
+    public void testInListStatementIsPadded() {
+        List<String> five = recordStatements(() -> assertThat(findAll(
+            service.valueIn(Employee_.id, Arrays.asList(1L, 2L, 3L, 4L, 5L))))
+            .extracting(Employee::getId).containsExactly(1L, 2L, 3L, 4L, 5L));
+        List<String> seven = recordStatements(() -> assertThat(findAll(
+            service.valueIn(Employee_.id, Arrays.asList(11L, 12L, 13L, 14L, 15L, 16L, 17L))))
+            .extracting(Employee::getId).containsExactly(11L, 12L, 13L, 14L, 15L, 16L, 17L));
+        assertThat(five).hasSize(1).isEqualTo(seven);
+        assertThat(five.get(0)).contains("in (? , ? , ? , ? , ? , ? , ? , ?)");
+    }
+
+    @Test
+    public void testReferenceInListStatementIsPadded() {
+        List<String> one = recordStatements(() -> assertThat(findAll(
+            service.valueIn(Employee_.project, Project_.id, Arrays.asList(1L)))).hasSize(7));
+        List<String> two = recordStatements(() -> assertThat(findAll(
+            service.valueIn(Employee_.project, Project_.id, Arrays.asList(2L, 3L)))).hasSize(7));
+        List<String> collection = recordStatements(() -> assertThat(findAll(
+            service.valueIn(Employee_.tags, Tag_.id, Arrays.asList(2L, 3L)))).hasSize(5));
+        assertThat(one).hasSize(1);
+        assertThat(two).hasSize(1);
+        assertThat(one.get(0)).contains("in (?)");
+        assertThat(two.get(0)).contains("in (? , ?)");
+        assertThat(collection.get(0)).contains("in (? , ?)");
+    }
+
+    @Test
+    public void testEstimatedCountWithInList() {
+        Pageable pageable = PageRequest.of(0, 2, Sort.by("id"));
+        assertThat(inTransaction(() -> service.findAll(service.valueIn(Employee_.id, Arrays.asList(1L, 2L, 3L)),
+            pageable, CountMode.ESTIMATED)).getTotalElements()).isEqualTo(3);
+        assertThat(inTransaction(() -> service.findAll(service.valueIn(Employee_.id, Arrays.asList(4L, 5L, 6L, 7L)),
+            pageable, CountMode.ESTIMATED)).getTotalElements()).isEqualTo(4);
+    }
+
+    private List<Employee> findAll(Specification<Employee> specification) {
+        return service.findAll(specification, PageRequest.of(0, 50, Sort.by("id")), CountMode.EXACT).getContent();
+    }
+
+    @Test
+    public void testCountFacets() {
+        FacetCounts facets = inTransaction(() -> service.countFacets(null, Arrays.asList(Employee_.active,
+            Employee_.age)));
+        assertThat(facets.getTotal()).isEqualTo(20);
+        assertThat(facets.getCounts(Employee_.active)).containsEntry(true, 10L).containsEntry(false, 10L);
+        assertThat(facets.getCounts(Employee_.age)).containsEntry(20, 2L).containsEntry(21, 3L).hasSize(7);
+    }
+
+    @Test
+    public void testCountFacetsOnJoinedCollection() {
+        // Employees tagged "java" or "sql", each counted once
+        FacetCounts facets = inTransaction(() -> service.countFacets(
+            service.valueIn(Employee_.tags, Tag_.id, Arrays.asList(1L, 2L)),
+            Arrays.asList(Employee_.active)));
+        assertThat(facets.getTotal()).isEqualTo(10);
+        assertThat(facets.getCounts(Employee_.active)).containsEntry(true, 5L).containsEntry(false, 5L);
+    }
+
+    @Test
+    public void testExactCount() {
+        Page<Employee> page = inTransaction(() -> service.findAll(null, PageRequest.of(1, 5, Sort.by("id")),
+            CountMode.EXACT));
+        assertThat(page.getContent()).extracting(Employee::getId).containsExactly(6L, 7L, 8L, 9L, 10L);
+        assertThat(page.getTotalElements()).isEqualTo(20);
+        assertThat(page).isNotInstanceOf(ApproximatePage.class);
+    }
+
+    @Test
+    public void testSliceCount() {
+        List<String> statements = recordStatements(() -> {
+            Page<Employee> page = service.findAll(null, PageRequest.of(1, 5, Sort.by("id")), CountMode.SLICE);
+            assertThat(page).isInstanceOf(ApproximatePage.class);
+            assertThat(page.getContent()).hasSize(5);
+            assertThat(page.getTotalElements()).isEqualTo(11);
+            assertThat(page.hasNext()).isTrue();
+        });
+        assertThat(statements).hasSize(1);
+    }
+
+    @Test
+    public void testEstimatedCount() {
+        Pageable pageable = PageRequest.of(0, 5, Sort.by("id"));
+        List<String> first = recordStatements(() -> assertThat(service.findAll(null, pageable, CountMode.ESTIMATED)
+            .getTotalElements()).isEqualTo(20));
+        List<String> second = recordStatements(() -> assertThat(service.findAll(null, pageable, CountMode.ESTIMATED)
+            .getTotalElements()).isEqualTo(20));
+        assertThat(first).hasSize(2);
+        // The count is reused
+        assertThat(second).hasSize(1);
+    }
+
+    @Test
+    public void testFetchPlan() {
+        Page<Employee> page = inTransaction(() -> service.findAll(null, PageRequest.of(0, 4, Sort.by("id")),
+            CountMode.EXACT, FetchPlan.of("project", "tags")));
+        assertThat(page.getContent()).extracting(Employee::getId).containsExactly(1L, 2L, 3L, 4L);
+        for (Employee employee : page.getContent()) {
+            assertThat(Hibernate.isInitialized(employee.getProject())).isTrue();
+            assertThat(Hibernate.isInitialized(employee.getTags())).isTrue();
+        }
+        assertThat(page.getContent().get(0).getProject().getName()).isEqualTo("Gemini");
+        assertThat(page.getContent().get(3).getTags()).hasSize(2);
+    }
+
+    @Test
+    public void testTimeRange() {
+        InstantFilter filter = new InstantFilter();
+        filter.setGreaterOrEqualThan(JpaTestSupport.HIRE_DATE.plus(3, ChronoUnit.DAYS));
+        Page<Employee> page = inTransaction(() -> service.findAll(service.buildTimeRangeSpecification(filter,
+            Employee_.hireDate), PageRequest.of(0, 20, Sort.by("id")), CountMode.EXACT));
+        assertThat(page.getContent()).extracting(Employee::getId)
+            .containsExactly(3L, 4L, 8L, 9L, 13L, 14L, 18L, 19L);
+    }
+
+    @Test
+    public void testKeysetPagination() {
+        assertKeysetPages(Sort.Direction.ASC, null, Employee::getId);
+        assertKeysetPages(Sort.Direction.ASC, Employee_.name, Employee::getName);
+        assertKeysetPages(Sort.Direction.ASC, Employee_.age, Employee::getAge);
+        assertKeysetPages(Sort.Direction.ASC, Employee_.hireDate, Employee::getHireDate);
+        assertKeysetPages(Sort.Direction.ASC, Employee_.startTime, Employee::getStartTime);
+        assertKeysetPages(Sort.Direction.ASC, Employee_.birthDate, Employee::getBirthDate);
+        assertKeysetPages(Sort.Direction.ASC, Employee_.salary, Employee::getSalary);
+        assertKeysetPages(Sort.Direction.ASC, Employee_.active, Employee::getActive);
+        assertKeysetPages(Sort.Direction.DESC, Employee_.startTime, Employee::getStartTime);
+    }
+
+    /**
+     * Fetch all the employees by slices of 3, passing the cursor through its token like a frontend, and check that
+     * every employee is returned once, in the order of the sort attribute and of the id.
+     */
+    private <S extends Comparable<? super S>> void assertKeysetPages(Sort.Direction direction,
+                                                                     SingularAttribute<Employee, S> sortField,
+                                                                     Function<Employee, S> getter) {
+        Comparator<Employee> comparator = Comparator.comparing(getter).thenComparing(Employee::getId);
+        List<Long> expected = LongStream.rangeClosed(1, JpaTestSupport.EMPLOYEE_COUNT)
+            .mapToObj(JpaTestSupport::employee)
+            .sorted(direction.isAscending() ? comparator : comparator.reversed())
+            .map(Employee::getId)
+            .collect(Collectors.toList());
+        List<Long> ids = new ArrayList<>();
+        String token = null;
+        do {
+            KeysetCursor cursor = token == null ? null : KeysetCursor.valueOf(token);
+            KeysetSlice<Employee> slice = inTransaction(() -> service.findAllByKeyset(null, cursor, 3, direction,
+                sortField, Employee_.id));
+            slice.getContent().forEach(employee -> ids.add(employee.getId()));
+            token = slice.hasNext() ? slice.getNextCursor().toString() : null;
+        } while (token != null);
+        assertThat(ids).as("sorted by %s", sortField == null ? "id" : sortField.getName())
+            .containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void testStreamAll() {
+        List<Long> ids = new ArrayList<>();
+        inTransaction(() -> {
+            assertThat(service.streamAll(service.buildRangeSpecification(new LongFilter().setLessOrEqualThan(12L),
+                Employee_.id), Sort.by("id"), employee -> ids.add(employee.getId()))).isEqualTo(12);
+            // The cursor has been closed
+            assertThat(hasOpenResources()).isFalse();
+            return null;
+        });
+        assertThat(ids).containsExactlyElementsOf(LongStream.rangeClosed(1, 12).boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testStreamAllIsClosedWithTheStream() {
+        inTransaction(() -> {
+            try (Stream<Employee> stream = service.streamAll(null, Sort.by("id"), 5)) {
+                Iterator<Employee> employees = stream.iterator();
+                assertThat(employees.next().getId()).isEqualTo(1L);
+                assertThat(hasOpenResources()).isTrue();
+            }
+            assertThat(hasOpenResources()).isFalse();
+            return null;
+        });
+    }
+
+    private static boolean hasOpenResources() {
+        return JpaTestSupport.getEntityManager().unwrap(SessionImplementor.class).getJdbcCoordinator()
+            .getLogicalConnection().getResourceRegistry().hasRegisteredResources();
+    }
+
+    @Test
+    public void testFindAllTuples() {
+        Page<Tuple> page = inTransaction(() -> service.findAllTuples(null, Arrays.asList(Employee_.id,
+            Employee_.name), PageRequest.of(1, 3, Sort.by("id"))));
+        assertThat(page.getTotalElements()).isEqualTo(20);
+        assertThat(page.getContent()).hasSize(3);
+        Tuple tuple = page.getContent().get(0);
+        assertThat(tuple.getElements()).hasSize(2);
+        assertThat(tuple.get(0)).isEqualTo(4L);
+        assertThat(tuple.get(Employee_.name.getName(), String.class)).isEqualTo("name4");
+    }
+
+    @Test
+    public void testFindAllProjected() {
+        Page<EmployeeSummary> page = inTransaction(() -> service.findAllProjected(
+            service.buildRangeSpecification(new LongFilter().setLessThan(3L), Employee_.id), EmployeeSummary.class,
+            Arrays.asList(Employee_.id, Employee_.name), PageRequest.of(0, 10, Sort.by("id"))));
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        assertThat(page.getContent()).extracting(summary -> summary.id).containsExactly(1L, 2L);
+        assertThat(page.getContent()).extracting(summary -> summary.name).containsExactly("name1", "name2");
+    }
+
+    /**
+     * DTO of {@link #testFindAllProjected()}.
+     */
+    public static class EmployeeSummary {
+
+        private final Long id;
+
+        private final String name;
+
+        public EmployeeSummary(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    @Test
+    public void testStreamAllPartitioned() {
+        List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+        service.setTaskExecutor(new SimpleAsyncTaskExecutor());
+        assertThat(service.streamAllPartitioned(null, Employee_.id, 3, employee -> ids.add(employee.getId())))
+            .isEqualTo(20);
+        // Every id exactly once
+        assertThat(ids).containsExactlyInAnyOrderElementsOf(
+            LongStream.rangeClosed(1, 20).boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testPartitionBounds() {
+        assertThat(QueryService.partitionBounds(1, 20, 3))
+            .containsExactly(new long[]{1, 6}, new long[]{7, 13}, new long[]{14, 20});
+        // Never more partitions than ids
+        assertThat(QueryService.partitionBounds(5, 7, 8))
+            .containsExactly(new long[]{5, 5}, new long[]{6, 6}, new long[]{7, 7});
+        assertThat(QueryService.partitionBounds(5, 5, 0)).containsExactly(new long[]{5, 5});
+    }
+
+    @Test
+    public void testPartitionBoundsOfTheWholeLongRange() {
+        List<long[]> bounds = QueryService.partitionBounds(Long.MIN_VALUE, Long.MAX_VALUE, 4);
+        assertThat(bounds).hasSize(4);
+        assertThat(bounds.get(0)[0]).isEqualTo(Long.MIN_VALUE);
+        assertThat(bounds.get(3)[1]).isEqualTo(Long.MAX_VALUE);
+        for (int i = 0; i < bounds.size(); i++) {
+            assertThat(bounds.get(i)[0]).isLessThanOrEqualTo(bounds.get(i)[1]);
+            if (i > 0) {
+                // Contiguous, so every id is in exactly one partition
+                assertThat(bounds.get(i)[0]).isEqualTo(bounds.get(i - 1)[1] + 1);
+            }
+        }
+        assertThat(bounds.get(2)[0]).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.simlife.service.filter.LongFilter;
+import io.github.simlife.service.filter.StringFilter;
+
+public class QueryTemplateTest {
+
+    private SingularAttribute<Object, Long> id;
+    private SingularAttribute<Object, String> name;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        id = mock(SingularAttribute.class);
+        when(id.getName()).thenReturn("id");
+        when(id.getJavaType()).thenReturn(Long.class);
+        name = mock(SingularAttribute.class);
+        when(name.getName()).thenReturn("name");
+        when(name.getJavaType()).thenReturn(String.class);
+    }
+
+    @Test
+    public void testEmptyShape() {
+        QueryTemplate<Object> template = new QueryTemplate<>(Object.class)
+            .range(null, id)
+            .string(new StringFilter(), name);
+        assertThat(template.getShape()).isEqualTo("java.lang.Object");
+    }
+
+    @Test
+    public void testShapeIgnoresValues() {
+        QueryTemplate<Object> first = new QueryTemplate<>(Object.class)
+            .range(new LongFilter().setGreaterThan(1L).setLessThan(10L), id)
+            .string(new StringFilter().setContains("foo"), name);
+        QueryTemplate<Object> second = new QueryTemplate<>(Object.class)
+            .range(new LongFilter().setGreaterThan(5L).setLessThan(50L), id)
+            .string(new StringFilter().setContains("bar"), name);
+        assertThat(first.getShape()).isEqualTo(second.getShape());
+        assertThat(first.getShape()).isEqualTo("java.lang.Object[id:GREATER_THAN,id:LESS_THAN,name:CONTAINS]");
+    }
+
+    @Test
+    public void testShapeDependsOnOperators() {
+        QueryTemplate<Object> in = new QueryTemplate<>(Object.class)
+            .range((LongFilter) new LongFilter().setIn(Arrays.asList(1L, 2L)), id);
+        QueryTemplate<Object> specified = new QueryTemplate<>(Object.class)
+            .range((LongFilter) new LongFilter().setSpecified(true), id);
+        QueryTemplate<Object> notSpecified = new QueryTemplate<>(Object.class)
+            .range((LongFilter) new LongFilter().setSpecified(false), id);
+        assertThat(in.getShape()).isEqualTo("java.lang.Object[id:IN]");
+        assertThat(specified.getShape()).isEqualTo("java.lang.Object[id:SPECIFIED]");
+        assertThat(notSpecified.getShape()).isEqualTo("java.lang.Object[id:NOT_SPECIFIED]");
+    }
+
+    @Test
+    public void testEqualsTakesPrecedence() {
+        QueryTemplate<Object> template = new QueryTemplate<>(Object.class)
+            .string((StringFilter) new StringFilter().setContains("foo").setEquals("bar"), name);
+        assertThat(template.getShape()).isEqualTo("java.lang.Object[name:EQUALS]");
+    }
+
+    @Test
+    public void testStartsWithShape() {
+        QueryTemplate<Object> template = new QueryTemplate<>(Object.class)
+            .string(new StringFilter().setStartsWith("fo"), name);
+        assertThat(template.getShape()).isEqualTo("java.lang.Object[name:STARTS_WITH]");
+    }
+
+    @Test
+    public void testRangeIsNormalized() {
+        QueryTemplate<Object> template = new QueryTemplate<>(Object.class)
+            .range(new LongFilter().setGreaterThan(1L).setGreaterOrEqualThan(2L).setLessOrEqualThan(2L), id);
+        assertThat(template.getShape()).isEqualTo("java.lang.Object[id:EQUALS]");
+        assertThat(template.isEmpty()).isFalse();
+    }
+
+    @Test
+    public void testContradictoryRangeIsEmpty() {
+        QueryTemplate<Object> template = new QueryTemplate<>(Object.class)
+            .range(new LongFilter().setGreaterThan(10L).setLessThan(5L), id);
+        assertThat(template.isEmpty()).isTrue();
+    }
+}
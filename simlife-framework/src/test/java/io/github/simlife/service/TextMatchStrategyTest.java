@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class TextMatchStrategyTest {
+
+    @Test
+    public void testEscapeLike() {
+        assertThat(TextMatchStrategy.escapeLike("50%_a\\b")).isEqualTo("50\\%\\_a\\\\b");
+        assertThat(TextMatchStrategy.escapeLike("plain")).isEqualTo("plain");
+    }
+
+    @Test
+    public void testPatterns() {
+        assertThat(StandardTextMatchStrategy.LIKE_UPPER.toPattern("foo")).isEqualTo("%FOO%");
+        assertThat(StandardTextMatchStrategy.ILIKE.toPattern("f%o")).isEqualTo("%f\\%o%");
+        assertThat(StandardTextMatchStrategy.TRIGRAM_SIMILARITY.toPattern("foo")).isEqualTo("foo");
+    }
+}
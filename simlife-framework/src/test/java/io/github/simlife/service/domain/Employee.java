@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+
+/**
+ * Entity of the JPA tests of the query services.
+ */
+@Entity
+public class Employee {
+
+    @Id
+    private Long id;
+
+    private String name;
+
+    private Integer age;
+
+    private Instant hireDate;
+
+    private LocalDateTime startTime;
+
+    private LocalDate birthDate;
+
+    private BigDecimal salary;
+
+    private Boolean active;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Project project;
+
+    @ManyToMany
+    private Set<Tag> tags = new HashSet<>();
+
+    public Long getId() {
+        return id;
+    }
+
+    public Employee id(Long id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Employee name(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public Integer getAge() {
+        return age;
+    }
+
+    public Employee age(Integer age) {
+        this.age = age;
+        return this;
+    }
+
+    public Instant getHireDate() {
+        return hireDate;
+    }
+
+    public Employee hireDate(Instant hireDate) {
+        this.hireDate = hireDate;
+        return this;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public Employee startTime(LocalDateTime startTime) {
+        this.startTime = startTime;
+        return this;
+    }
+
+    public LocalDate getBirthDate() {
+        return birthDate;
+    }
+
+    public Employee birthDate(LocalDate birthDate) {
+        this.birthDate = birthDate;
+        return this;
+    }
+
+    public BigDecimal getSalary() {
+        return salary;
+    }
+
+    public Employee salary(BigDecimal salary) {
+        this.salary = salary;
+        return this;
+    }
+
+    public Boolean getActive() {
+        return active;
+    }
+
+    public Employee active(Boolean active) {
+        this.active = active;
+        return this;
+    }
+
+    public Project getProject() {
+        return project;
+    }
+
+    public Employee project(Project project) {
+        this.project = project;
+        return this;
+    }
+
+    public Set<Tag> getTags() {
+        return tags;
+    }
+
+    @Override
+    public String toString() {
+        return "Employee{id=" + id + "}";
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import javax.persistence.metamodel.SetAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.StaticMetamodel;
+
+@StaticMetamodel(Employee.class)
+public abstract class Employee_ {
+
+    public static volatile SingularAttribute<Employee, Long> id;
+    public static volatile SingularAttribute<Employee, String> name;
+    public static volatile SingularAttribute<Employee, Integer> age;
+    public static volatile SingularAttribute<Employee, Instant> hireDate;
+    public static volatile SingularAttribute<Employee, LocalDateTime> startTime;
+    public static volatile SingularAttribute<Employee, LocalDate> birthDate;
+    public static volatile SingularAttribute<Employee, BigDecimal> salary;
+    public static volatile SingularAttribute<Employee, Boolean> active;
+    public static volatile SingularAttribute<Employee, Project> project;
+    public static volatile SetAttribute<Employee, Tag> tags;
+}
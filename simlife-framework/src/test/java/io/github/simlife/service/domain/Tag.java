@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.simlife.service.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Entity of the JPA tests of the query services.
+ */
+@Entity
+public class Tag {
+
+    @Id
+    private Long id;
+
+    private String name;
+
+    private Integer weight;
+
+    public Long getId() {
+        return id;
+    }
+
+    public Tag id(Long id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Tag name(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public Integer getWeight() {
+        return weight;
+    }
+
+    public Tag weight(Integer weight) {
+        this.weight = weight;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "Tag{id=" + id + "}";
+    }
+}
@@ -21,6 +21,7 @@ package io.github.simlife.service.filter;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -80,4 +81,18 @@ public class FilterTest {
         filter.setIn(new LinkedList<>());
         assertThat(filter.toString()).isEqualTo("Filter [equals={}, in=[], specified=true]");
     }
+
+    @Test
+    public void testEquals() {
+        Filter<Object> other = new Filter<>();
+        assertThat(filter).isEqualTo(other);
+        filter.setEquals(value).setIn(Arrays.asList(value)).setSpecified(true);
+        other.setEquals(value).setIn(Arrays.asList(value)).setSpecified(true);
+        assertThat(filter).isEqualTo(other);
+        assertThat(filter.hashCode()).isEqualTo(other.hashCode());
+        other.setSpecified(false);
+        assertThat(filter).isNotEqualTo(other);
+        assertThat(filter).isNotEqualTo(new StringFilter());
+        assertThat(filter).isNotEqualTo(null);
+    }
 }
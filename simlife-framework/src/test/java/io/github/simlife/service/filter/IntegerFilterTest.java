@@ -21,11 +21,15 @@ package io.github.simlife.service.filter;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.validation.DataBinder;
 
 public class IntegerFilterTest {
 
@@ -100,6 +104,48 @@ public class IntegerFilterTest {
         assertThat(filter.getIn()).isEqualTo(list);
     }
 
+    @Test
+    public void testInIsSortedAndDistinctInTheInterval() {
+        filter.setIn(Arrays.asList(3, 1, 3, null));
+        assertThat(RangeInterval.of(filter).getValues()).isInstanceOf(SortedIntList.class).containsExactly(1, 3);
+    }
+
+    @Test
+    public void testInIsModifiable() {
+        filter.setIn(new ArrayList<>(Arrays.asList(3)));
+        filter.getIn().add(1);
+        assertThat(filter.getIn()).containsExactly(3, 1);
+        assertThat(RangeInterval.of(filter).getValues()).containsExactly(1, 3);
+    }
+
+    @Test
+    public void testIndexedBinding() {
+        Criteria criteria = new Criteria();
+        DataBinder binder = new DataBinder(criteria);
+        MutablePropertyValues values = new MutablePropertyValues();
+        values.add("id.in[0]", "3");
+        values.add("id.in[1]", "1");
+        binder.bind(values);
+        assertThat(binder.getBindingResult().hasErrors()).isFalse();
+        assertThat(criteria.getId().getIn()).containsExactly(3, 1);
+    }
+
+    /**
+     * Criteria of {@link #testIndexedBinding()}.
+     */
+    public static class Criteria {
+
+        private IntegerFilter id;
+
+        public IntegerFilter getId() {
+            return id;
+        }
+
+        public void setId(IntegerFilter id) {
+            this.id = id;
+        }
+    }
+
     @Test
     public void testToString() {
         filter.setEquals(value);
@@ -21,11 +21,15 @@ package io.github.simlife.service.filter;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.validation.DataBinder;
 
 public class LongFilterTest {
 
@@ -100,6 +104,48 @@ public class LongFilterTest {
         assertThat(filter.getIn()).isEqualTo(list);
     }
 
+    @Test
+    public void testInIsSortedAndDistinctInTheInterval() {
+        filter.setIn(Arrays.asList(3L, 1L, 3L, null));
+        assertThat(RangeInterval.of(filter).getValues()).isInstanceOf(SortedLongList.class).containsExactly(1L, 3L);
+    }
+
+    @Test
+    public void testInIsModifiable() {
+        filter.setIn(new ArrayList<>(Arrays.asList(3L)));
+        filter.getIn().add(1L);
+        assertThat(filter.getIn()).containsExactly(3L, 1L);
+        assertThat(RangeInterval.of(filter).getValues()).containsExactly(1L, 3L);
+    }
+
+    @Test
+    public void testIndexedBinding() {
+        Criteria criteria = new Criteria();
+        DataBinder binder = new DataBinder(criteria);
+        MutablePropertyValues values = new MutablePropertyValues();
+        values.add("id.in[0]", "3");
+        values.add("id.in[1]", "1");
+        binder.bind(values);
+        assertThat(binder.getBindingResult().hasErrors()).isFalse();
+        assertThat(criteria.getId().getIn()).containsExactly(3L, 1L);
+    }
+
+    /**
+     * Criteria of {@link #testIndexedBinding()}.
+     */
+    public static class Criteria {
+
+        private LongFilter id;
+
+        public LongFilter getId() {
+            return id;
+        }
+
+        public void setId(LongFilter id) {
+            this.id = id;
+        }
+    }
+
     @Test
     public void testToString() {
         filter.setEquals(value);
@@ -113,4 +113,18 @@ public class RangeFilterTest {
             + "[greaterThan=42, greaterOrEqualThan=42, lessThan=42, "
             + "lessOrEqualThan=42, equals=42, specified=true, in=[]]");
     }
+
+    @Test
+    public void testEquals() {
+        RangeFilter<Short> other = new RangeFilter<>();
+        filter.setGreaterThan(value).setLessOrEqualThan(value).setEquals(value);
+        other.setGreaterThan(value).setLessOrEqualThan(value).setEquals(value);
+        assertThat(filter).isEqualTo(other);
+        assertThat(filter.hashCode()).isEqualTo(other.hashCode());
+        other.setLessOrEqualThan(null);
+        assertThat(filter).isNotEqualTo(other);
+        other.setLessOrEqualThan(value).setEquals(null);
+        assertThat(filter).isNotEqualTo(other);
+        assertThat(new IntegerFilter()).isNotEqualTo(new LongFilter());
+    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RangeIntervalTest {
+
+    @Test
+    public void testNullFilter() {
+        RangeInterval<Long> interval = RangeInterval.of(null);
+        assertThat(interval.isEmpty()).isFalse();
+        assertThat(interval.isUnrestricted()).isTrue();
+        assertThat(interval.contains(null)).isTrue();
+    }
+
+    @Test
+    public void testRedundantBoundsAreDropped() {
+        RangeInterval<Long> interval = RangeInterval.of(new LongFilter()
+            .setGreaterThan(5L).setGreaterOrEqualThan(3L).setLessThan(20L).setLessOrEqualThan(10L));
+        assertThat(interval.getLower()).isEqualTo(5L);
+        assertThat(interval.isLowerInclusive()).isFalse();
+        assertThat(interval.getUpper()).isEqualTo(10L);
+        assertThat(interval.isUpperInclusive()).isTrue();
+        assertThat(interval.getValues()).isNull();
+    }
+
+    @Test
+    public void testInclusiveBoundWinsOnTie() {
+        RangeInterval<Long> interval = RangeInterval.of(new LongFilter()
+            .setGreaterThan(5L).setGreaterOrEqualThan(5L));
+        assertThat(interval.getLower()).isEqualTo(5L);
+        assertThat(interval.isLowerInclusive()).isFalse();
+    }
+
+    @Test
+    public void testContradictoryBoundsAreEmpty() {
+        assertThat(RangeInterval.of(new LongFilter().setGreaterThan(10L).setLessThan(5L)).isEmpty()).isTrue();
+        assertThat(RangeInterval.of(new LongFilter().setGreaterThan(5L).setLessOrEqualThan(5L)).isEmpty()).isTrue();
+        assertThat(RangeInterval.of(new LongFilter().setGreaterOrEqualThan(5L).setLessThan(5L)).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testPointIsFoldedToValue() {
+        RangeInterval<Long> interval = RangeInterval.of(new LongFilter()
+            .setGreaterOrEqualThan(5L).setLessOrEqualThan(5L));
+        assertThat(interval.getValues()).containsExactly(5L);
+        assertThat(interval.getLower()).isNull();
+        assertThat(interval.getUpper()).isNull();
+    }
+
+    @Test
+    public void testValuesAreRestrictedToBounds() {
+        RangeInterval<Long> interval = RangeInterval.of((LongFilter) new LongFilter()
+            .setGreaterThan(1L).setLessThan(4L).setIn(Arrays.asList(4L, 3L, null, 1L, 2L, 3L)));
+        assertThat(interval.getValues()).containsExactly(2L, 3L);
+        assertThat(interval.getLower()).isNull();
+        assertThat(interval.getUpper()).isNull();
+    }
+
+    @Test
+    public void testEqualsIsIntersectedWithIn() {
+        assertThat(RangeInterval.of((LongFilter) new LongFilter().setEquals(2L).setIn(Arrays.asList(1L, 2L)))
+            .getValues()).containsExactly(2L);
+        assertThat(RangeInterval.of((LongFilter) new LongFilter().setEquals(3L).setIn(Arrays.asList(1L, 2L)))
+            .isEmpty()).isTrue();
+        assertThat(RangeInterval.of((LongFilter) new LongFilter().setGreaterThan(3L).setEquals(3L))
+            .isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testSpecified() {
+        RangeInterval<Long> specified = RangeInterval.of((LongFilter) new LongFilter().setSpecified(true));
+        assertThat(specified.getSpecified()).isTrue();
+        assertThat(specified.contains(null)).isFalse();
+        assertThat(specified.contains(1L)).isTrue();
+
+        RangeInterval<Long> notSpecified = RangeInterval.of((LongFilter) new LongFilter().setSpecified(false));
+        assertThat(notSpecified.getSpecified()).isFalse();
+        assertThat(notSpecified.contains(null)).isTrue();
+        assertThat(notSpecified.contains(1L)).isFalse();
+
+        assertThat(RangeInterval.of((LongFilter) new LongFilter().setGreaterThan(1L).setSpecified(true))
+            .getSpecified()).isNull();
+        assertThat(RangeInterval.of((LongFilter) new LongFilter().setGreaterThan(1L).setSpecified(false))
+            .isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testContains() {
+        RangeInterval<Long> bounded = RangeInterval.of(new LongFilter().setGreaterThan(1L).setLessOrEqualThan(3L));
+        assertThat(bounded.contains(1L)).isFalse();
+        assertThat(bounded.contains(3L)).isTrue();
+        assertThat(bounded.contains(4L)).isFalse();
+        assertThat(bounded.contains(null)).isFalse();
+
+        RangeInterval<Long> values = RangeInterval.of((LongFilter) new LongFilter().setIn(Arrays.asList(5L, 1L)));
+        assertThat(values.contains(1L)).isTrue();
+        assertThat(values.contains(2L)).isFalse();
+        assertThat(values.contains(null)).isFalse();
+
+        RangeInterval<Long> empty = RangeInterval.of(new LongFilter().setGreaterThan(3L).setLessThan(1L));
+        assertThat(empty.contains(2L)).isFalse();
+        assertThat(empty.contains(null)).isFalse();
+    }
+
+    @Test
+    public void testPrimitiveValuesAreRestrictedToBounds() {
+        LongFilter filter = new LongFilter().setIn(Arrays.asList(5L, 1L, 3L, 2L, 4L));
+        filter.setGreaterThan(1L).setLessOrEqualThan(4L);
+        RangeInterval<Long> interval = RangeInterval.of(filter);
+        assertThat(interval.getValues()).isInstanceOf(SortedLongList.class).containsExactly(2L, 3L, 4L);
+        assertThat(interval.contains(4L)).isTrue();
+        assertThat(interval.contains(5L)).isFalse();
+        filter.setLessOrEqualThan(1L);
+        assertThat(RangeInterval.of(filter).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testPrimitiveValuesAreRestrictedToEquals() {
+        IntegerFilter filter = new IntegerFilter().setIn(SortedIntList.of(5, 1, 3));
+        filter.setEquals(3);
+        assertThat(RangeInterval.of(filter).getValues()).containsExactly(3);
+        filter.setGreaterThan(3);
+        assertThat(RangeInterval.of(filter).isEmpty()).isTrue();
+        filter.setGreaterThan(null).setEquals(2);
+        assertThat(RangeInterval.of(filter).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testDefaultLower() {
+        RangeInterval<Long> unbounded = RangeInterval.of(new LongFilter()).withDefaultLower(10L);
+        assertThat(unbounded.getLower()).isEqualTo(10L);
+        assertThat(unbounded.isLowerInclusive()).isTrue();
+        assertThat(unbounded.getUpper()).isNull();
+
+        RangeInterval<Long> upper = RangeInterval.of(new LongFilter().setLessThan(20L)).withDefaultLower(10L);
+        assertThat(upper.getLower()).isEqualTo(10L);
+        assertThat(upper.getUpper()).isEqualTo(20L);
+
+        assertThat(RangeInterval.of(new LongFilter().setLessThan(10L)).withDefaultLower(10L).isEmpty()).isTrue();
+        assertThat(RangeInterval.of(new LongFilter().setLessOrEqualThan(10L)).withDefaultLower(10L).getValues())
+            .containsExactly(10L);
+    }
+
+    @Test
+    public void testDefaultLowerKeepsExistingRestrictions() {
+        RangeInterval<Long> lower = RangeInterval.of(new LongFilter().setGreaterThan(1L));
+        assertThat(lower.withDefaultLower(10L)).isSameAs(lower);
+        RangeInterval<Long> values = RangeInterval.of((LongFilter) new LongFilter().setEquals(1L));
+        assertThat(values.withDefaultLower(10L)).isSameAs(values);
+        RangeInterval<Long> nulls = RangeInterval.of((LongFilter) new LongFilter().setSpecified(false));
+        assertThat(nulls.withDefaultLower(10L)).isSameAs(nulls);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SortedIntListTest {
+
+    @Test
+    public void testSortedAndDistinct() {
+        SortedIntList list = SortedIntList.of(Arrays.asList(3, 1, null, 3, 2, 1));
+        assertThat(list).containsExactly(1, 2, 3);
+        assertThat(list.getInt(2)).isEqualTo(3);
+        assertThat(list.toIntArray()).containsExactly(1, 2, 3);
+        assertThat(list.toString()).isEqualTo("[1, 2, 3]");
+    }
+
+    @Test
+    public void testFromPrimitives() {
+        int[] values = {5, -1, 5};
+        SortedIntList list = SortedIntList.of(values);
+        assertThat(list).containsExactly(-1, 5);
+        assertThat(values).containsExactly(5, -1, 5);
+        assertThat(SortedIntList.of()).isEmpty();
+    }
+
+    @Test
+    public void testContains() {
+        SortedIntList list = SortedIntList.of(10, 20, 30);
+        assertThat(list.contains(20)).isTrue();
+        assertThat(list.contains(25)).isFalse();
+        assertThat(list.contains(20L)).isFalse();
+        assertThat(list.indexOf(30)).isEqualTo(2);
+        assertThat(list.subList(1, 3).indexOf(30)).isEqualTo(1);
+        assertThat(list.subList(1, 3).contains(10)).isFalse();
+    }
+
+    @Test
+    public void testSubList() {
+        SortedIntList list = SortedIntList.of(1, 2, 3, 4);
+        SortedIntList subList = list.subList(1, 3);
+        assertThat(subList).containsExactly(2, 3);
+        assertThat(subList.toIntArray()).containsExactly(2, 3);
+        assertThat(catchThrowable(() -> subList.get(2))).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        List<Integer> boxed = new ArrayList<>(Arrays.asList(1, 2, 3));
+        SortedIntList list = SortedIntList.of(3, 2, 1);
+        assertThat(list).isEqualTo(boxed);
+        assertThat(boxed).isEqualTo(list);
+        assertThat(list.hashCode()).isEqualTo(boxed.hashCode());
+        assertThat(list).isEqualTo(SortedIntList.of(0, 1, 2, 3).subList(1, 4));
+        assertThat(list).isNotEqualTo(SortedIntList.of(1, 2));
+    }
+
+    @Test
+    public void testImmutable() {
+        SortedIntList list = SortedIntList.of(1);
+        assertThat(catchThrowable(() -> list.add(2))).isInstanceOf(UnsupportedOperationException.class);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.service.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SortedLongListTest {
+
+    @Test
+    public void testSortedAndDistinct() {
+        SortedLongList list = SortedLongList.of(Arrays.asList(3L, 1L, null, 3L, 2L, 1L));
+        assertThat(list).containsExactly(1L, 2L, 3L);
+        assertThat(list.getLong(2)).isEqualTo(3L);
+        assertThat(list.toLongArray()).containsExactly(1L, 2L, 3L);
+        assertThat(list.toString()).isEqualTo("[1, 2, 3]");
+    }
+
+    @Test
+    public void testFromPrimitives() {
+        long[] values = {5L, -1L, 5L};
+        SortedLongList list = SortedLongList.of(values);
+        assertThat(list).containsExactly(-1L, 5L);
+        assertThat(values).containsExactly(5L, -1L, 5L);
+        assertThat(SortedLongList.of()).isEmpty();
+    }
+
+    @Test
+    public void testContains() {
+        SortedLongList list = SortedLongList.of(10L, 20L, 30L);
+        assertThat(list.contains(20L)).isTrue();
+        assertThat(list.contains(25L)).isFalse();
+        assertThat(list.contains(20)).isFalse();
+        assertThat(list.indexOf(30L)).isEqualTo(2);
+        assertThat(list.subList(1, 3).indexOf(30L)).isEqualTo(1);
+        assertThat(list.subList(1, 3).contains(10L)).isFalse();
+    }
+
+    @Test
+    public void testSubList() {
+        SortedLongList list = SortedLongList.of(1L, 2L, 3L, 4L);
+        SortedLongList subList = list.subList(1, 3);
+        assertThat(subList).containsExactly(2L, 3L);
+        assertThat(subList.toLongArray()).containsExactly(2L, 3L);
+        assertThat(catchThrowable(() -> subList.get(2))).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        List<Long> boxed = new ArrayList<>(Arrays.asList(1L, 2L, 3L));
+        SortedLongList list = SortedLongList.of(3L, 2L, 1L);
+        assertThat(list).isEqualTo(boxed);
+        assertThat(boxed).isEqualTo(list);
+        assertThat(list.hashCode()).isEqualTo(boxed.hashCode());
+        assertThat(list).isEqualTo(SortedLongList.of(0L, 1L, 2L, 3L).subList(1, 4));
+        assertThat(list).isNotEqualTo(SortedLongList.of(1L, 2L));
+    }
+
+    @Test
+    public void testImmutable() {
+        SortedLongList list = SortedLongList.of(1L);
+        assertThat(catchThrowable(() -> list.add(2L))).isInstanceOf(UnsupportedOperationException.class);
+    }
+}
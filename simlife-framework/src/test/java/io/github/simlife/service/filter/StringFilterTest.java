@@ -42,6 +42,7 @@ public class StringFilterTest {
     public void testConstructor() {
         assertThat(filter.getEquals()).isNull();
         assertThat(filter.getContains()).isNull();
+        assertThat(filter.getStartsWith()).isNull();
         assertThat(filter.getSpecified()).isNull();
         assertThat(filter.getIn()).isNull();
         assertThat(filter.toString()).isEqualTo("StringFilter []");
@@ -61,6 +62,13 @@ public class StringFilterTest {
         assertThat(filter.getContains()).isEqualTo(value);
     }
 
+    @Test
+    public void testSetStartsWith() {
+        Filter<String> chain = filter.setStartsWith(value);
+        assertThat(chain).isEqualTo(filter);
+        assertThat(filter.getStartsWith()).isEqualTo(value);
+    }
+
     @Test
     public void testSetSpecified() {
         Filter<String> chain = filter.setSpecified(true);
@@ -84,4 +92,21 @@ public class StringFilterTest {
         filter.setIn(new LinkedList<>());
         assertThat(filter.toString()).isEqualTo("StringFilter [contains=foo, equals=foo, specified=true]");
     }
+
+    @Test
+    public void testToStringWithStartsWith() {
+        filter.setStartsWith(value);
+        assertThat(filter.toString()).isEqualTo("StringFilter [startsWith=foo, ]");
+    }
+
+    @Test
+    public void testEquals() {
+        StringFilter other = new StringFilter();
+        filter.setContains(value).setEquals(value);
+        other.setContains(value).setEquals(value);
+        assertThat(filter).isEqualTo(other);
+        assertThat(filter.hashCode()).isEqualTo(other.hashCode());
+        other.setStartsWith(value);
+        assertThat(filter).isNotEqualTo(other);
+    }
 }
@@ -21,7 +21,10 @@ package io.github.simlife.service.filter;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -115,4 +118,20 @@ public class ZonedDateTimeFilterTest {
             + "[greaterThan=" + str + ", greaterOrEqualThan=" + str + ", lessThan=" + str + ", "
             + "lessOrEqualThan=" + str + ", equals=" + str + ", specified=true, in=[]]");
     }
+
+    @Test
+    public void testWithZoneSameInstant() {
+        ZonedDateTime paris = ZonedDateTime.of(2018, 6, 30, 14, 0, 0, 0, ZoneId.of("Europe/Paris"));
+        ZonedDateTime utc = ZonedDateTime.of(2018, 6, 30, 12, 0, 0, 0, ZoneOffset.UTC);
+        filter.setGreaterThan(paris).setLessOrEqualThan(paris).setIn(Arrays.asList(paris, utc));
+        filter.setSpecified(true);
+        ZonedDateTimeFilter converted = filter.withZoneSameInstant(ZoneOffset.UTC);
+        assertThat(converted).isNotSameAs(filter);
+        assertThat(converted.getGreaterThan()).isEqualTo(utc);
+        assertThat(converted.getLessOrEqualThan()).isEqualTo(utc);
+        assertThat(converted.getIn()).containsExactly(utc, utc);
+        assertThat(converted.getEquals()).isNull();
+        assertThat(converted.getSpecified()).isTrue();
+        assertThat(filter.getGreaterThan()).isEqualTo(paris);
+    }
 }
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016-2018 the original author or authors.
+ *
+ * This file is part of the Simlife project, see https://www.simlife.tech/
+ * for more information.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.simlife.web.bind;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import javax.validation.Valid;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.MethodParameter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+
+import io.github.simlife.service.filter.BigDecimalFilter;
+import io.github.simlife.service.filter.BooleanFilter;
+import io.github.simlife.service.filter.Filter;
+import io.github.simlife.service.filter.InstantFilter;
+import io.github.simlife.service.filter.IntegerFilter;
+import io.github.simlife.service.filter.LocalDateFilter;
+import io.github.simlife.service.filter.LongFilter;
+import io.github.simlife.service.filter.SortedLongList;
+import io.github.simlife.service.filter.StringFilter;
+
+public class CriteriaArgumentResolverTest {
+
+    private CriteriaArgumentResolver resolver;
+    private MockHttpServletRequest request;
+
+    @Before
+    public void setup() {
+        resolver = new CriteriaArgumentResolver(TestCriteria.class);
+        request = new MockHttpServletRequest();
+    }
+
+    @Test
+    public void testSupportsCriteria() throws Exception {
+        assertThat(resolver.supportsParameter(parameter("criteria", TestCriteria.class))).isTrue();
+        assertThat(resolver.supportsParameter(parameter("valid", TestCriteria.class))).isFalse();
+        assertThat(resolver.supportsParameter(parameter("mixed", MixedCriteria.class))).isFalse();
+        assertThat(resolver.supportsParameter(parameter("string", String.class))).isFalse();
+    }
+
+    @Test
+    public void testBindsFilters() throws Exception {
+        request.addParameter("id.in", "3,1", "2");
+        request.addParameter("name.contains", "foo");
+        request.addParameter("age.greaterOrEqualThan", " 18 ");
+        request.addParameter("age.lessThan", "65");
+        request.addParameter("salary.equals", "1234.50");
+        request.addParameter("hireDate.greaterThan", "2018-06-30T12:00:00Z");
+        request.addParameter("birthDate.lessOrEqualThan", "2000-01-01");
+        request.addParameter("active.specified", "yes");
+        request.addParameter("status.in", "ACTIVE,RETIRED");
+        request.addParameter("unknown.equals", "ignored");
+        TestCriteria criteria = resolve();
+        assertThat(criteria.getId().getIn()).isInstanceOf(SortedLongList.class).containsExactly(1L, 2L, 3L);
+        assertThat(criteria.getName().getContains()).isEqualTo("foo");
+        assertThat(criteria.getAge().getGreaterOrEqualThan()).isEqualTo(18);
+        assertThat(criteria.getAge().getLessThan()).isEqualTo(65);
+        assertThat(criteria.getSalary().getEquals()).isEqualTo(new BigDecimal("1234.50"));
+        assertThat(criteria.getHireDate().getGreaterThan()).isEqualTo(Instant.parse("2018-06-30T12:00:00Z"));
+        assertThat(criteria.getBirthDate().getLessOrEqualThan()).isEqualTo(LocalDate.of(2000, 1, 1));
+        assertThat(criteria.getActive().getSpecified()).isTrue();
+        assertThat(criteria.getStatus().getIn()).containsExactly(Status.ACTIVE, Status.RETIRED);
+    }
+
+    @Test
+    public void testUnsetFiltersStayNull() throws Exception {
+        request.addParameter("age.equals", "");
+        TestCriteria criteria = resolve();
+        assertThat(criteria.getAge()).isNotNull();
+        assertThat(criteria.getAge().getEquals()).isNull();
+        assertThat(criteria.getId()).isNull();
+        assertThat(criteria.getName()).isNull();
+    }
+
+    @Test
+    public void testInvalidValueIsTypeMismatch() throws Exception {
+        request.addParameter("age.greaterThan", "old");
+        Throwable caught = catchThrowable(this::resolve);
+        assertThat(caught).isInstanceOf(MethodArgumentTypeMismatchException.class);
+        MethodArgumentTypeMismatchException mismatch = (MethodArgumentTypeMismatchException) caught;
+        assertThat(mismatch.getName()).isEqualTo("age.greaterThan");
+        assertThat(mismatch.getValue()).isEqualTo("old");
+        assertThat(mismatch.getRequiredType()).isEqualTo(Integer.class);
+    }
+
+    @Test
+    public void testInvalidDateIsTypeMismatch() throws Exception {
+        request.addParameter("birthDate.equals", "2000-13-01");
+        assertThat(catchThrowable(this::resolve)).isInstanceOf(MethodArgumentTypeMismatchException.class);
+    }
+
+    private TestCriteria resolve() throws Exception {
+        MethodParameter parameter = parameter("criteria", TestCriteria.class);
+        return (TestCriteria) resolver.resolveArgument(parameter, null, new ServletWebRequest(request), null);
+    }
+
+    private static MethodParameter parameter(String name, Class<?> type) throws NoSuchMethodException {
+        Method method = TestController.class.getMethod(name, type);
+        return new MethodParameter(method, 0);
+    }
+
+    public enum Status {
+        ACTIVE, RETIRED
+    }
+
+    public static class StatusFilter extends Filter<Status> {
+    }
+
+    public static class TestCriteria {
+
+        private LongFilter id;
+        private StringFilter name;
+        private IntegerFilter age;
+        private BigDecimalFilter salary;
+        private InstantFilter hireDate;
+        private LocalDateFilter birthDate;
+        private BooleanFilter active;
+        private StatusFilter status;
+
+        public LongFilter getId() {
+            return id;
+        }
+
+        public void setId(LongFilter id) {
+            this.id = id;
+        }
+
+        public StringFilter getName() {
+            return name;
+        }
+
+        public void setName(StringFilter name) {
+            this.name = name;
+        }
+
+        public IntegerFilter getAge() {
+            return age;
+        }
+
+        public void setAge(IntegerFilter age) {
+            this.age = age;
+        }
+
+        public BigDecimalFilter getSalary() {
+            return salary;
+        }
+
+        public void setSalary(BigDecimalFilter salary) {
+            this.salary = salary;
+        }
+
+        public InstantFilter getHireDate() {
+            return hireDate;
+        }
+
+        public void setHireDate(InstantFilter hireDate) {
+            this.hireDate = hireDate;
+        }
+
+        public LocalDateFilter getBirthDate() {
+            return birthDate;
+        }
+
+        public void setBirthDate(LocalDateFilter birthDate) {
+            this.birthDate = birthDate;
+        }
+
+        public BooleanFilter getActive() {
+            return active;
+        }
+
+        public void setActive(BooleanFilter active) {
+            this.active = active;
+        }
+
+        public StatusFilter getStatus() {
+            return status;
+        }
+
+        public void setStatus(StatusFilter status) {
+            this.status = status;
+        }
+    }
+
+    public static class MixedCriteria {
+
+        private LongFilter id;
+        private String text;
+
+        public LongFilter getId() {
+            return id;
+        }
+
+        public void setId(LongFilter id) {
+            this.id = id;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    public static class TestController {
+
+        public void criteria(TestCriteria criteria) {
+        }
+
+        public void valid(@Valid TestCriteria criteria) {
+        }
+
+        public void mixed(MixedCriteria criteria) {
+        }
+
+        public void string(String criteria) {
+        }
+    }
+}
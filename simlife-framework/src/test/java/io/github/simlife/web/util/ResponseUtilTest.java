@@ -21,12 +21,18 @@ package io.github.simlife.web.util;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Arrays;
 import java.util.Optional;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.*;
 
+import io.github.simlife.service.ApproximatePage;
+import io.github.simlife.service.CountMode;
+
 public class ResponseUtilTest {
 
     private static final String HEADER_NAME = "X-Test";
@@ -77,4 +83,20 @@ public class ResponseUtilTest {
         assertThat(response.getBody()).isNull();
         assertThat(response.getHeaders()).isEmpty();
     }
+
+    @Test
+    public void testExactTotalCountHeaders() {
+        HttpHeaders totalCount = ResponseUtil.totalCountHeaders(
+            new PageImpl<>(Arrays.asList(1, 2), PageRequest.of(0, 2), 10));
+        assertThat(totalCount.getFirst(ResponseUtil.TOTAL_COUNT_HEADER)).isEqualTo("10");
+        assertThat(totalCount.containsKey(ResponseUtil.TOTAL_COUNT_APPROXIMATE_HEADER)).isFalse();
+    }
+
+    @Test
+    public void testApproximateTotalCountHeaders() {
+        HttpHeaders totalCount = ResponseUtil.totalCountHeaders(
+            new ApproximatePage<>(Arrays.asList(1, 2), PageRequest.of(0, 2), 3, CountMode.SLICE));
+        assertThat(totalCount.getFirst(ResponseUtil.TOTAL_COUNT_HEADER)).isEqualTo("3");
+        assertThat(totalCount.getFirst(ResponseUtil.TOTAL_COUNT_APPROXIMATE_HEADER)).isEqualTo("true");
+    }
 }